@@ -0,0 +1,89 @@
+package com.example.blueteeth;
+
+/**
+ * 自适应采样频率控制：
+ * - 屏幕关闭或没有界面订阅时降低下位机采样频率
+ * - 出现阈值事件（如低氧）时提高采样频率并保持一段时间
+ * 只在目标频率变化时才向下位机发送命令
+ */
+public class AdaptiveRateController {
+
+    // 各档位采样频率(Hz)
+    public static final int RATE_IDLE_HZ = 1;
+    public static final int RATE_NORMAL_HZ = 5;
+    public static final int RATE_ALERT_HZ = 10;
+
+    // 阈值事件后保持高频采样的时间(毫秒)
+    private static final long ALERT_HOLD_MILLIS = 60_000;
+
+    /**
+     * 频率变化时的回调，由服务负责把命令写入蓝牙
+     */
+    public interface RateSink {
+        void onRateChanged(int rateHz);
+    }
+
+    private final RateSink sink;
+    private boolean screenOn = true;
+    private int subscriberCount = 0;
+    private long alertUntilMillis = 0;
+    private int currentRateHz = -1; // -1 表示尚未下发过频率
+
+    public AdaptiveRateController(RateSink sink) {
+        this.sink = sink;
+    }
+
+    public synchronized void setScreenOn(boolean screenOn, long nowMillis) {
+        this.screenOn = screenOn;
+        evaluate(nowMillis);
+    }
+
+    public synchronized void addSubscriber(long nowMillis) {
+        subscriberCount++;
+        evaluate(nowMillis);
+    }
+
+    public synchronized void removeSubscriber(long nowMillis) {
+        subscriberCount = Math.max(0, subscriberCount - 1);
+        evaluate(nowMillis);
+    }
+
+    // 发生阈值事件，进入高频采样
+    public synchronized void onThresholdEvent(long nowMillis) {
+        alertUntilMillis = nowMillis + ALERT_HOLD_MILLIS;
+        evaluate(nowMillis);
+    }
+
+    // 每个采样点调用一次，用于检查高频保持时间是否已过
+    public synchronized void onSample(long nowMillis) {
+        if (currentRateHz == RATE_ALERT_HZ && nowMillis >= alertUntilMillis) {
+            evaluate(nowMillis);
+        }
+    }
+
+    // 重新建立连接后需要重新下发当前频率
+    public synchronized void reset(long nowMillis) {
+        currentRateHz = -1;
+        evaluate(nowMillis);
+    }
+
+    public synchronized int getCurrentRateHz() {
+        return currentRateHz;
+    }
+
+    private void evaluate(long nowMillis) {
+        int target;
+        if (nowMillis < alertUntilMillis) {
+            target = RATE_ALERT_HZ;
+        } else if (!screenOn || subscriberCount == 0) {
+            target = RATE_IDLE_HZ;
+        } else {
+            target = RATE_NORMAL_HZ;
+        }
+
+        if (target != currentRateHz) {
+            currentRateHz = target;
+            sink.onRateChanged(target);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.blueteeth;
+
+/**
+ * 按时间分桶的聚合结果（由SQLite计算）
+ */
+public class AggregateBucket {
+    public final long bucketStartMillis;
+    public final int count;
+    public final float average;
+    public final float min;
+    public final float max;
+
+    public AggregateBucket(long bucketStartMillis, int count, float average, float min, float max) {
+        this.bucketStartMillis = bucketStartMillis;
+        this.count = count;
+        this.average = average;
+        this.min = min;
+        this.max = max;
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.blueteeth;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 报警评估引擎：在读取线程中对每个采样逐条评估该通道的报警规则。
+ * 规则按通道预先分组，每个采样只遍历本通道的规则，评估过程不分配对象；
+ * 只有报警触发或解除时才回调Listener。
+ *
+ * onSample只能由一个线程调用（读取线程）；setRules可在任意线程调用，
+ * 规则和评估状态作为一个整体原子替换，新规则从未报警状态开始评估。
+ */
+public class AlarmEngine {
+    private static final int CHANNEL_COUNT = 3; // DataPoint.TYPE_RAW / TYPE_PERCENTAGE / TYPE_VOLTAGE
+
+    /**
+     * 报警回调，在调用onSample的线程中执行，应尽快返回
+     */
+    public interface Listener {
+        void onAlarmRaised(AlarmRule rule, long timeMillis, float value);
+
+        void onAlarmCleared(AlarmRule rule, long timeMillis, float value);
+    }
+
+    // 规则及其评估状态
+    private static final class RuleSet {
+        final AlarmRule[] rules;
+        final int[][] rulesByType; // 每个通道的规则下标
+        final boolean[] active;
+        final long[] conditionSince; // 条件开始成立的时间，-1表示不成立
+        final long[] lastTimeByType; // 每个通道上一个采样，用于计算变化率
+        final float[] lastValueByType;
+        final boolean[] hasLastByType = new boolean[CHANNEL_COUNT];
+        volatile int activeCount = 0; // 只由读取线程修改
+
+        RuleSet(AlarmRule[] rules) {
+            this.rules = rules;
+            this.active = new boolean[rules.length];
+            this.conditionSince = new long[rules.length];
+            Arrays.fill(conditionSince, -1);
+            this.lastTimeByType = new long[CHANNEL_COUNT];
+            this.lastValueByType = new float[CHANNEL_COUNT];
+
+            rulesByType = new int[CHANNEL_COUNT][];
+            for (int type = 0; type < CHANNEL_COUNT; type++) {
+                int count = 0;
+                for (AlarmRule rule : rules) {
+                    if (rule.dataType == type) {
+                        count++;
+                    }
+                }
+                rulesByType[type] = new int[count];
+                int next = 0;
+                for (int i = 0; i < rules.length; i++) {
+                    if (rules[i].dataType == type) {
+                        rulesByType[type][next++] = i;
+                    }
+                }
+            }
+        }
+    }
+
+    private final Listener listener;
+    private volatile RuleSet ruleSet;
+
+    public AlarmEngine(Listener listener, AlarmRule... rules) {
+        this.listener = listener;
+        this.ruleSet = new RuleSet(rules.clone());
+    }
+
+    // 替换全部规则，正在报警的状态被丢弃（不回调解除）
+    public void setRules(List<AlarmRule> rules) {
+        ruleSet = new RuleSet(rules.toArray(new AlarmRule[0]));
+    }
+
+    public List<AlarmRule> getRules() {
+        return Arrays.asList(ruleSet.rules.clone());
+    }
+
+    // 按编号查找规则，找不到时返回null
+    public AlarmRule getRule(int ruleId) {
+        for (AlarmRule rule : ruleSet.rules) {
+            if (rule.id == ruleId) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    // 是否有规则正处于报警状态
+    public boolean hasActiveAlarm() {
+        return ruleSet.activeCount > 0;
+    }
+
+    public boolean isActive(int ruleId) {
+        RuleSet set = ruleSet;
+        for (int i = 0; i < set.rules.length; i++) {
+            if (set.rules[i].id == ruleId) {
+                return set.active[i];
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 评估一个采样（在读取线程调用，不分配对象）
+     */
+    public void onSample(int type, long timeMillis, float value) {
+        if (type < 0 || type >= CHANNEL_COUNT) {
+            return;
+        }
+        RuleSet set = ruleSet;
+
+        // 本通道相对上一个采样的每秒变化量
+        float ratePerSecond = Float.NaN;
+        if (set.hasLastByType[type] && timeMillis > set.lastTimeByType[type]) {
+            ratePerSecond = Math.abs(value - set.lastValueByType[type]) * 1000f
+                    / (timeMillis - set.lastTimeByType[type]);
+        }
+        set.lastTimeByType[type] = timeMillis;
+        set.lastValueByType[type] = value;
+        set.hasLastByType[type] = true;
+
+        int[] indices = set.rulesByType[type];
+        for (int n = 0; n < indices.length; n++) {
+            int i = indices[n];
+            AlarmRule rule = set.rules[i];
+            if (!set.active[i]) {
+                if (isTriggered(rule, value, ratePerSecond)) {
+                    if (set.conditionSince[i] < 0) {
+                        set.conditionSince[i] = timeMillis;
+                    }
+                    if (timeMillis - set.conditionSince[i] >= rule.sustainMillis) {
+                        set.active[i] = true;
+                        set.activeCount++;
+                        listener.onAlarmRaised(rule, timeMillis, value);
+                    }
+                } else {
+                    set.conditionSince[i] = -1;
+                }
+            } else if (isCleared(rule, value, ratePerSecond)) {
+                set.active[i] = false;
+                set.conditionSince[i] = -1;
+                set.activeCount--;
+                listener.onAlarmCleared(rule, timeMillis, value);
+            }
+        }
+    }
+
+    /**
+     * 清除所有评估状态（例如断开连接后），不回调解除
+     */
+    public void reset() {
+        ruleSet = new RuleSet(ruleSet.rules);
+    }
+
+    private static boolean isTriggered(AlarmRule rule, float value, float ratePerSecond) {
+        switch (rule.kind) {
+            case AlarmRule.KIND_BELOW:
+                return value < rule.threshold;
+            case AlarmRule.KIND_ABOVE:
+                return value > rule.threshold;
+            case AlarmRule.KIND_RATE_OF_CHANGE:
+                return !Float.isNaN(ratePerSecond) && ratePerSecond > rule.threshold;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isCleared(AlarmRule rule, float value, float ratePerSecond) {
+        switch (rule.kind) {
+            case AlarmRule.KIND_BELOW:
+                return value >= rule.threshold + rule.hysteresis;
+            case AlarmRule.KIND_ABOVE:
+                return value <= rule.threshold - rule.hysteresis;
+            case AlarmRule.KIND_RATE_OF_CHANGE:
+                return !Float.isNaN(ratePerSecond) && ratePerSecond <= rule.threshold - rule.hysteresis;
+            default:
+                return true;
+        }
+    }
+}
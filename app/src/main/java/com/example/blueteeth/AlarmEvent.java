@@ -0,0 +1,59 @@
+package com.example.blueteeth;
+
+/**
+ * 报警事件记录，对应 alarm_events 表的一行
+ */
+public class AlarmEvent {
+    public static final int EVENT_CLEARED = 0;
+    public static final int EVENT_RAISED = 1;
+
+    private final long id;
+    private final int ruleId;
+    private final String ruleName;
+    private final int dataType; // DataPoint.TYPE_*
+    private final int event; // EVENT_RAISED / EVENT_CLEARED
+    private final float value; // 触发或解除时的采样值
+    private final long timeMillis;
+
+    public AlarmEvent(long id, int ruleId, String ruleName, int dataType, int event, float value, long timeMillis) {
+        this.id = id;
+        this.ruleId = ruleId;
+        this.ruleName = ruleName;
+        this.dataType = dataType;
+        this.event = event;
+        this.value = value;
+        this.timeMillis = timeMillis;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getRuleId() {
+        return ruleId;
+    }
+
+    public String getRuleName() {
+        return ruleName;
+    }
+
+    public int getDataType() {
+        return dataType;
+    }
+
+    public int getEvent() {
+        return event;
+    }
+
+    public boolean isRaised() {
+        return event == EVENT_RAISED;
+    }
+
+    public float getValue() {
+        return value;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.blueteeth;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * 报警规则（不可变）。支持三种条件：
+ * 低于阈值、高于阈值（都带回差，避免数值在阈值附近抖动时反复报警和解除），
+ * 以及变化率超限（每秒变化量的绝对值）。任意规则都可以要求条件持续一段时间后才报警。
+ * 可序列化，多进程模式下随报警回调传给界面进程。
+ */
+public final class AlarmRule implements Parcelable {
+    public static final int KIND_BELOW = 0;
+    public static final int KIND_ABOVE = 1;
+    public static final int KIND_RATE_OF_CHANGE = 2;
+
+    // 默认低氧阈值，界面上的低氧着色和统计也使用这个值
+    public static final float DEFAULT_LOW_OXYGEN_THRESHOLD = 16.0f;
+
+    // 默认规则编号
+    public static final int ID_LOW_OXYGEN = 1;
+    public static final int ID_OXYGEN_DEFICIENT_SUSTAINED = 2;
+    public static final int ID_OXYGEN_RAPID_CHANGE = 3;
+
+    public final int id;
+    public final String name;
+    public final int dataType; // DataPoint.TYPE_*
+    public final int kind;
+    public final float threshold; // 阈值；变化率规则为每秒最大变化量
+    public final float hysteresis; // 解除报警需要回到阈值另一侧的距离
+    public final long sustainMillis; // 条件需持续的时长，0表示立即报警
+
+    private AlarmRule(int id, String name, int dataType, int kind, float threshold,
+            float hysteresis, long sustainMillis) {
+        if (hysteresis < 0 || sustainMillis < 0) {
+            throw new IllegalArgumentException("回差和持续时间不能为负");
+        }
+        this.id = id;
+        this.name = name;
+        this.dataType = dataType;
+        this.kind = kind;
+        this.threshold = threshold;
+        this.hysteresis = hysteresis;
+        this.sustainMillis = sustainMillis;
+    }
+
+    // 数值低于threshold时报警，回到threshold + hysteresis及以上时解除
+    public static AlarmRule below(int id, String name, int dataType, float threshold, float hysteresis) {
+        return new AlarmRule(id, name, dataType, KIND_BELOW, threshold, hysteresis, 0);
+    }
+
+    // 数值高于threshold时报警，回到threshold - hysteresis及以下时解除
+    public static AlarmRule above(int id, String name, int dataType, float threshold, float hysteresis) {
+        return new AlarmRule(id, name, dataType, KIND_ABOVE, threshold, hysteresis, 0);
+    }
+
+    // 每秒变化量的绝对值超过maxPerSecond时报警，降到maxPerSecond - hysteresis及以下时解除
+    public static AlarmRule rateOfChange(int id, String name, int dataType, float maxPerSecond, float hysteresis) {
+        return new AlarmRule(id, name, dataType, KIND_RATE_OF_CHANGE, maxPerSecond, hysteresis, 0);
+    }
+
+    // 返回要求条件持续sustainMillis后才报警的规则副本
+    public AlarmRule sustainedFor(long sustainMillis) {
+        return new AlarmRule(id, name, dataType, kind, threshold, hysteresis, sustainMillis);
+    }
+
+    /**
+     * 默认规则：氧浓度低于16%立即报警；低于19.5%（缺氧环境）持续1分钟报警；氧浓度每秒变化超过2%报警
+     */
+    public static AlarmRule[] defaultRules() {
+        return new AlarmRule[] {
+                below(ID_LOW_OXYGEN, "低氧", DataPoint.TYPE_PERCENTAGE, DEFAULT_LOW_OXYGEN_THRESHOLD, 0.5f),
+                below(ID_OXYGEN_DEFICIENT_SUSTAINED, "持续缺氧", DataPoint.TYPE_PERCENTAGE, 19.5f, 0.3f)
+                        .sustainedFor(60_000),
+                rateOfChange(ID_OXYGEN_RAPID_CHANGE, "氧浓度骤变", DataPoint.TYPE_PERCENTAGE, 2.0f, 0.5f)
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "AlarmRule{" + id + " " + name + "}";
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(id);
+        dest.writeString(name);
+        dest.writeInt(dataType);
+        dest.writeInt(kind);
+        dest.writeFloat(threshold);
+        dest.writeFloat(hysteresis);
+        dest.writeLong(sustainMillis);
+    }
+
+    public static final Creator<AlarmRule> CREATOR = new Creator<AlarmRule>() {
+        @Override
+        public AlarmRule createFromParcel(Parcel in) {
+            return new AlarmRule(in.readInt(), in.readString(), in.readInt(), in.readInt(),
+                    in.readFloat(), in.readFloat(), in.readLong());
+        }
+
+        @Override
+        public AlarmRule[] newArray(int size) {
+            return new AlarmRule[size];
+        }
+    };
+}
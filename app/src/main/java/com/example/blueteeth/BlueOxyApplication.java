@@ -0,0 +1,53 @@
+package com.example.blueteeth;
+
+import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.os.StrictMode;
+
+/**
+ * 应用入口：debug构建（可调试）下启用StrictMode，主线程上的任何磁盘读写都会直接崩溃，
+ * 尽早暴露绕过DbExecutor的数据库访问。release构建不受影响。
+ */
+public class BlueOxyApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // 采集模式的设置需要读取SharedPreferences（磁盘），在启用StrictMode之前读取并缓存
+        IngestConnection.init(this);
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            enableStrictMode();
+        }
+
+        // 系统时区变化后重建共享的时间格式化器
+        registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                TimeFormatter.resetDefault();
+            }
+        }, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+
+        // 空闲或充电时压缩数据库
+        DbCompactionJobService.schedule(this);
+    }
+
+    private static void enableStrictMode() {
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .detectCustomSlowCalls()
+                .penaltyLog()
+                .penaltyDeath()
+                .build());
+        // 未关闭的Cursor/数据库等只记录日志
+        StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                .detectLeakedSqlLiteObjects()
+                .detectLeakedClosableObjects()
+                .penaltyLog()
+                .build());
+    }
+}
@@ -10,82 +10,233 @@ import android.app.Service;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothSocket;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.os.Binder;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.Message;
+import android.os.PowerManager;
+import android.os.Process;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 import androidx.core.app.ActivityCompat;
 import androidx.core.app.NotificationCompat;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class BluetoothService extends Service {
     private static final String TAG = "BluetoothService";
 
     // 蓝牙连接状态常量
-    public static final int STATE_DISCONNECTED = 0;
-    public static final int STATE_CONNECTING = 1;
-    public static final int STATE_CONNECTED = 2;
-    public static final int STATE_CONNECTION_FAILED = 3;
+    public static final int STATE_DISCONNECTED = ConnectionStateMachine.STATE_DISCONNECTED;
+    public static final int STATE_CONNECTING = ConnectionStateMachine.STATE_CONNECTING;
+    public static final int STATE_CONNECTED = ConnectionStateMachine.STATE_CONNECTED;
+    public static final int STATE_CONNECTION_FAILED = ConnectionStateMachine.STATE_CONNECTION_FAILED;
 
-    // 消息类型
-    private static final int MESSAGE_READ = 1;
-    private static final int MESSAGE_STATUS = 2;
+    // 消息类型（批量数据消息见 UiBatchDispatcher.MESSAGE_DATA_BATCH）
+    public static final int MESSAGE_STATUS = 2; // arg1: STATE_*
+    public static final int MESSAGE_ALARM = 4; // arg1: 规则编号，arg2: AlarmEvent.EVENT_*，obj: AlarmRule
 
     // 前台服务相关常量
     private static final int NOTIFICATION_ID = 1001;
     private static final String CHANNEL_ID = "BluetoothServiceChannel";
+    private static final String ALARM_CHANNEL_ID = "OxygenAlarmChannel"; // 报警通知使用高重要性通道
+    private static final int ALARM_NOTIFICATION_ID_BASE = 2000; // 报警通知ID = 基数 + 规则编号
 
     // 重连相关常量
     private static final int MAX_RECONNECT_ATTEMPTS = 3; // 最大重连次数
     private static final long RECONNECT_DELAY = 3000; // 重连延迟时间(毫秒)
-    private int reconnectAttempts = 0; // 当前重连尝试次数
-    private String lastConnectedDeviceAddress; // 最后连接的设备地址
-    private boolean autoReconnect = true; // 是否开启自动重连
+    private int reconnectAttempts = 0; // 当前重连尝试次数（仅控制线程访问）
+    private String lastConnectedDeviceAddress; // 最后连接的设备地址（仅控制线程访问）
+    private volatile boolean autoReconnect = true; // 是否开启自动重连
 
     // 蓝牙UUID - 使用SPP（串口）协议的UUID
     private static final UUID MY_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
+    private static final int DEFAULT_RFCOMM_CHANNEL = 1; // 反射方式创建Socket时的默认通道
+
+    // 已知设备缓存，用于跳过扫描和SDP查询快速重连
+    private KnownDeviceCache knownDeviceCache;
+    private volatile boolean autoConnectOnStart = true; // 服务启动时是否自动连接上次使用的设备
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     private final IBinder binder = new LocalBinder();
     private BluetoothAdapter bluetoothAdapter;
-    private BluetoothSocket socket;
-    private ConnectThread connectThread;
-    private ConnectedThread connectedThread;
-    private Handler handler;
-    private int state;
-    
+    private volatile Handler handler;
+    // 界面是否可见、屏幕是否点亮，决定是否产生界面批次和是否批量落库；同时统计各来源的唤醒次数
+    private final VisibilityBudget visibilityBudget = new VisibilityBudget(System.currentTimeMillis());
+    private final UiBatchDispatcher uiDispatcher = new UiBatchDispatcher(visibilityBudget); // 按帧合并发往UI的数据
+    private NotificationController notificationController; // 前台通知，合并更新并显示实时数值
+
+    // 线程运行时：各处理阶段使用命名的有界线程池，Socket读取优先级最高，持久化在后台优先级运行
+    private final IngestRuntime runtime = new IngestRuntime("blueoxy", false, stage -> Process.setThreadPriority(stage.priority));
+    private final ExecutorService controlExecutor = runtime.register(
+            new IngestRuntime.Stage("control", 1, 256, Process.THREAD_PRIORITY_DEFAULT));
+    // 连接和读取任务：读取任务在整个连接期间占用一个线程，旧连接的读取任务退出前新连接可能已开始
+    private final ExecutorService ioExecutor = runtime.register(
+            new IngestRuntime.Stage("io", 3, 4, Process.THREAD_PRIORITY_DISPLAY));
+    private final ExecutorService commandExecutor = runtime.register(
+            new IngestRuntime.Stage("command", 1, 64, Process.THREAD_PRIORITY_FOREGROUND)); // 命令写入，避免在UI线程写socket
+    private final ExecutorService dbWriteExecutor = runtime.register(
+            new IngestRuntime.Stage("persist", 1, 256, Process.THREAD_PRIORITY_BACKGROUND)); // 数据库写入
+
+    // 连接状态：状态机负责原子转换，连接/断开等控制操作及其副作用统一在控制线程中串行执行
+    private final ConnectionStateMachine stateMachine = new ConnectionStateMachine();
+    private ConnectTask connectTask; // 仅控制线程访问
+    private volatile ConnectedTask connectedTask; // 控制线程写入，命令发送时读取
+    private int publishedState = -1; // 最近一次发布给UI和通知的状态（仅控制线程访问）
+    private boolean publishedMeasuring = false;
+
     // 数据管理相关
-    private boolean isMeasuring = false;
-    private ArrayList<DataPoint> dataPoints = new ArrayList<>();
-    private static final int MAX_DATA_POINTS = 1000; // 最大数据点数量限制
+    // 每个通道独立的实时窗口（按DataPoint.TYPE_*索引），活跃的通道不会挤掉其他通道的数据
+    static final long DEFAULT_LIVE_WINDOW_MILLIS = 10 * 60 * 1000; // 默认保留最近10分钟
+    static final int MAX_LIVE_WINDOW_SAMPLES = (int) (DEFAULT_LIVE_WINDOW_MILLIS / 1000) * DeviceCommand.MAX_RATE_HZ;
+    private final ChannelWindow[] liveWindows = {
+            new ChannelWindow(DEFAULT_LIVE_WINDOW_MILLIS, MAX_LIVE_WINDOW_SAMPLES), // TYPE_RAW
+            new ChannelWindow(DEFAULT_LIVE_WINDOW_MILLIS, MAX_LIVE_WINDOW_SAMPLES), // TYPE_PERCENTAGE
+            new ChannelWindow(DEFAULT_LIVE_WINDOW_MILLIS, MAX_LIVE_WINDOW_SAMPLES)  // TYPE_VOLTAGE
+    };
+    // 多进程模式下每个采样同时写入的共享内存环形缓冲区，单进程模式为null
+    private volatile SampleRing sampleRing;
     private DataDBHelper dbHelper; // 数据库帮助类
 
+    // 预写溢出日志相关：采样点先写入日志，再由写入线程异步批量落库
+    private static final String SPILL_LOG_FILE = "spill.log";
+    private static final int SPILL_LOG_CAPACITY = 65536; // 最多缓存的未落库记录数
+    private static final int DRAIN_BATCH_SIZE = 500; // 每个事务写入的最大记录数
+    private static final long RETENTION_INTERVAL = 5 * 60_000; // 执行保留策略的最小间隔(毫秒)，需统计各类型行数
+    // 熄屏时的批量落库：日志中的记录每隔这么久写入一次，积压超过上限时立即写入
+    private static final long BATCH_FLUSH_INTERVAL = 60_000;
+    private static final int BATCH_FLUSH_MAX_PENDING = 4096;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean delayedDrainScheduled = new AtomicBoolean(false);
+    private volatile SpillLog spillLog;
+    private volatile int connectedDeviceId = DataPoint.NO_DEVICE; // 当前设备在设备表中的行号，写入数据点
+    private long lastCleanupMillis = 0; // 仅写入线程使用
+
+    // 下位机控制命令相关
+    private AdaptiveRateController rateController;
+
+    // 报警规则引擎：在读取线程中逐个采样评估，不依赖界面轮询
+    private final AlarmEngine alarmEngine = new AlarmEngine(new AlarmEngine.Listener() {
+        @Override
+        public void onAlarmRaised(AlarmRule rule, long timeMillis, float value) {
+            onAlarmEvent(rule, AlarmEvent.EVENT_RAISED, timeMillis, value);
+        }
+
+        @Override
+        public void onAlarmCleared(AlarmRule rule, long timeMillis, float value) {
+            onAlarmEvent(rule, AlarmEvent.EVENT_CLEARED, timeMillis, value);
+        }
+    }, AlarmRule.defaultRules());
+
+    // 异常段检测：与报警规则使用相同的范围，结束的异常段异步写入数据库
+    private final EpisodeDetector episodeDetector = new EpisodeDetector(this::onEpisodeClosed, AlarmRule.defaultRules());
+
+    // 屏幕开关广播，屏幕关闭时降低采样频率并切换到批量落库
+    private final BroadcastReceiver screenReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            boolean screenOn = Intent.ACTION_SCREEN_ON.equals(intent.getAction());
+            long now = System.currentTimeMillis();
+            rateController.setScreenOn(screenOn, now);
+            VisibilityBudget.Stats finished = visibilityBudget.setScreenOn(screenOn, now);
+            if (finished != null) {
+                Log.i(TAG, "唤醒统计 " + finished);
+            }
+            if (screenOn) {
+                // 亮屏后界面可能马上查询历史，先把熄屏期间积压的记录落库
+                submitDrain();
+                notificationController.refresh();
+            }
+        }
+    };
+
     @Override
     public void onCreate() {
         super.onCreate();
         bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
-        state = STATE_DISCONNECTED;
+        stateMachine.setListener((oldState, newState, measuring) -> executeControl(this::publishState));
+        runtime.setListener(new IngestRuntime.Listener() {
+            @Override
+            public void onThreadStarted(IngestRuntime.Stage stage, String threadName) {
+                Log.d(TAG, "线程启动: " + threadName);
+            }
+
+            @Override
+            public void onThreadFinished(IngestRuntime.Stage stage, String threadName) {
+                Log.d(TAG, "线程退出: " + threadName);
+            }
+        });
         dbHelper = DataDBHelper.getInstance(this);
+        // 只创建对象，存储由控制线程上的getMostRecent首次打开，主线程不读文件
+        knownDeviceCache = KnownDeviceCache.getInstance(this);
+
+        // 在写入线程打开溢出日志，并回放上次进程退出前未落库的数据
+        dbWriteExecutor.execute(this::openSpillLog);
+
+        // 初始化自适应采样频率控制
+        rateController = new AdaptiveRateController(rateHz -> sendCommand(DeviceCommand.setRate(rateHz)));
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        boolean screenOn = powerManager == null || powerManager.isInteractive();
+        rateController.setScreenOn(screenOn, System.currentTimeMillis());
+        visibilityBudget.setScreenOn(screenOn, System.currentTimeMillis());
+        IntentFilter screenFilter = new IntentFilter();
+        screenFilter.addAction(Intent.ACTION_SCREEN_ON);
+        screenFilter.addAction(Intent.ACTION_SCREEN_OFF);
+        registerReceiver(screenReceiver, screenFilter);
         
         // 创建通知通道（仅在Android 8.0及以上需要）
         createNotificationChannel();
         
         // 启动前台服务
-        startForeground(NOTIFICATION_ID, createNotification("蓝牙服务正在运行", "未连接设备"));
+        notificationController = new NotificationController(this, CHANNEL_ID, NOTIFICATION_ID, "蓝牙服务正在运行",
+                visibilityBudget);
+        startForeground(NOTIFICATION_ID, notificationController.start("未连接设备"));
+
+        // 在控制线程读取已知设备缓存，直接连接上次使用的传感器，无需等待扫描
+        executeControl(() -> {
+            KnownDeviceCache.KnownDevice knownDevice = knownDeviceCache.getMostRecent();
+            if (knownDevice != null) {
+                connectToKnownDevice(knownDevice.address);
+            }
+        });
+    }
+
+    // 从缓存自动连接（仅在服务启动后尚未发起过连接时执行，在控制线程调用）
+    private void connectToKnownDevice(String address) {
+        if (!autoConnectOnStart || lastConnectedDeviceAddress != null
+                || stateMachine.getState() != STATE_DISCONNECTED) {
+            return;
+        }
+        if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled()) {
+            return;
+        }
+        Log.i(TAG, "从已知设备缓存自动连接: " + address);
+        doConnect(address);
+    }
+
+    // 设置服务启动时是否自动连接上次使用的设备
+    public void setAutoConnectOnStart(boolean autoConnectOnStart) {
+        this.autoConnectOnStart = autoConnectOnStart;
     }
 
     private void createNotificationChannel() {
@@ -97,94 +248,398 @@ public class BluetoothService extends Service {
             
             NotificationManager manager = getSystemService(NotificationManager.class);
             manager.createNotificationChannel(channel);
+
+            NotificationChannel alarmChannel = new NotificationChannel(
+                    ALARM_CHANNEL_ID,
+                    "氧浓度报警",
+                    NotificationManager.IMPORTANCE_HIGH);
+            alarmChannel.enableVibration(true);
+            manager.createNotificationChannel(alarmChannel);
         }
     }
 
-    private Notification createNotification(String title, String text) {
-        // 创建点击通知后的意图（打开主活动）
-        Intent notificationIntent = new Intent(this, MainActivity.class);
-        PendingIntent pendingIntent = PendingIntent.getActivity(
-                this, 0, notificationIntent, PendingIntent.FLAG_IMMUTABLE);
+    public void setHandler(Handler handler) {
+        this.handler = handler;
+        uiDispatcher.setTarget(handler);
+    }
 
-        // 构建通知
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle(title)
-                .setContentText(text)
-                .setSmallIcon(R.drawable.ic_bluetooth)
-                .setContentIntent(pendingIntent);
+    // 替换报警规则，正在报警的状态被清除
+    public void setAlarmRules(List<AlarmRule> rules) {
+        alarmEngine.setRules(rules);
+        episodeDetector.setRules(rules);
+    }
 
-        return builder.build();
+    public List<AlarmRule> getAlarmRules() {
+        return alarmEngine.getRules();
     }
 
+    /**
+     * 在控制线程读取已知设备（第一次读取会访问存储），结果在主线程回调
+     */
+    public void loadKnownDevices(IngestConnection.KnownDevicesCallback callback) {
+        executeControl(() -> {
+            List<KnownDeviceCache.KnownDevice> devices = knownDeviceCache.getDevices();
+            mainHandler.post(() -> callback.onKnownDevices(devices));
+        });
+    }
+
+    // 已知设备的JSON形式，供:ingest进程通过AIDL返回给界面进程（在Binder线程调用）
+    String getKnownDevicesJson() {
+        return KnownDeviceCache.toJson(knownDeviceCache.getDevices());
+    }
+
+    // 当前的低氧报警阈值，界面据此着色
+    public float getLowOxygenThreshold() {
+        AlarmRule rule = alarmEngine.getRule(AlarmRule.ID_LOW_OXYGEN);
+        return rule != null ? rule.threshold : AlarmRule.DEFAULT_LOW_OXYGEN_THRESHOLD;
+    }
+
+    // 报警触发或解除（在读取线程执行）：立即更新通知，事件记录和界面消息异步处理
     @SuppressLint("NotificationPermission")
-    private void updateNotification(String text) {
+    private void onAlarmEvent(AlarmRule rule, int event, long timeMillis, float value) {
+        boolean raised = event == AlarmEvent.EVENT_RAISED;
+        Log.w(TAG, "报警" + (raised ? "触发: " : "解除: ") + rule.name + " 数值: " + value);
+
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (raised) {
+            Intent notificationIntent = new Intent(this, MainActivity.class);
+            PendingIntent pendingIntent = PendingIntent.getActivity(
+                    this, 0, notificationIntent, PendingIntent.FLAG_IMMUTABLE);
+            Notification notification = new NotificationCompat.Builder(this, ALARM_CHANNEL_ID)
+                    .setContentTitle("报警: " + rule.name)
+                    .setContentText(String.format(Locale.getDefault(), "当前数值 %.1f", value))
+                    .setSmallIcon(R.drawable.ic_bluetooth)
+                    .setPriority(NotificationCompat.PRIORITY_HIGH)
+                    .setCategory(NotificationCompat.CATEGORY_ALARM)
+                    .setWhen(timeMillis)
+                    .setContentIntent(pendingIntent)
+                    .build();
+            manager.notify(ALARM_NOTIFICATION_ID_BASE + rule.id, notification);
+        } else {
+            manager.cancel(ALARM_NOTIFICATION_ID_BASE + rule.id);
+        }
+
+        try {
+            dbWriteExecutor.execute(() -> dbHelper.addAlarmEvent(rule.id, rule.name, rule.dataType,
+                    event, value, timeMillis));
+        } catch (RejectedExecutionException e) {
+            Log.d(TAG, "写入线程已停止，报警事件未记录");
+        }
+
+        Handler target = handler;
+        if (target != null) {
+            target.obtainMessage(MESSAGE_ALARM, rule.id, event, rule).sendToTarget();
+        }
+    }
+
+    // 连接结束或服务销毁时清除报警状态（不记录解除事件）：下次连接从未报警状态开始评估，
+    // 不会漏掉新的报警，也不会在第一个正常采样时报出过时的解除；已发出的报警通知一并撤销
+    private void resetAlarms() {
         NotificationManager manager = getSystemService(NotificationManager.class);
-        manager.notify(NOTIFICATION_ID, createNotification("蓝牙服务正在运行", text));
+        for (AlarmRule rule : alarmEngine.getRules()) {
+            if (alarmEngine.isActive(rule.id)) {
+                manager.cancel(ALARM_NOTIFICATION_ID_BASE + rule.id);
+            }
+        }
+        alarmEngine.reset();
     }
 
-    public void setHandler(Handler handler) {
-        this.handler = handler;
+    // 异常段结束（在读取线程执行）：写入异常段表
+    private void onEpisodeClosed(Episode episode) {
+        Log.i(TAG, "异常段结束: " + episode.getRuleName() + " 持续 " + episode.getDurationMillis() / 1000
+                + " 秒，最小值 " + episode.getMinValue());
+        try {
+            dbWriteExecutor.execute(() -> dbHelper.addEpisode(episode));
+        } catch (RejectedExecutionException e) {
+            Log.d(TAG, "写入线程已停止，异常段未记录");
+        }
+    }
+
+    // 是否把接收到的原始数据行随批量消息一起发给UI（默认关闭，不复制数据）
+    public void setRawLineEchoEnabled(boolean enabled) {
+        uiDispatcher.setRawLineEchoEnabled(enabled);
     }
 
-    // 管理测量状态的方法
+    // 管理测量状态的方法：状态立即原子更新，通知和下位机命令由控制线程发布
     public void startMeasuring() {
-        if (state != STATE_CONNECTED) {
-            return;
-        }
-        isMeasuring = true;
-        updateNotification("正在测量数据...");
+        stateMachine.startMeasuring();
     }
 
     public void stopMeasuring() {
-        isMeasuring = false;
-        updateNotification(state == STATE_CONNECTED ? "已连接设备" : "未连接设备");
+        stateMachine.stopMeasuring();
+    }
+
+    /**
+     * 向下位机发送控制命令，写入在命令线程中异步完成
+     * @return 未连接时返回false
+     */
+    public boolean sendCommand(DeviceCommand command) {
+        ConnectedTask task = connectedTask;
+        if (stateMachine.getState() != STATE_CONNECTED || task == null) {
+            return false;
+        }
+        Log.d(TAG, "发送命令: " + command);
+        byte[] bytes = command.toBytes();
+        try {
+            commandExecutor.execute(() -> task.write(bytes));
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+        return true;
+    }
+
+    public boolean setSampleRate(int rateHz) {
+        return sendCommand(DeviceCommand.setRate(rateHz));
+    }
+
+    public boolean setChannelEnabled(int type, boolean enabled) {
+        return sendCommand(DeviceCommand.setChannelEnabled(type, enabled));
+    }
+
+    public boolean pauseStreaming() {
+        return sendCommand(DeviceCommand.pause());
+    }
+
+    public boolean resumeStreaming() {
+        return sendCommand(DeviceCommand.resume());
+    }
+
+    // 界面可见时订阅，不可见时取消订阅；没有订阅者时降低采样频率，也不再产生界面批次
+    public void addSubscriber() {
+        visibilityBudget.addVisible();
+        rateController.addSubscriber(System.currentTimeMillis());
+    }
+
+    public void removeSubscriber() {
+        visibilityBudget.removeVisible();
+        rateController.removeSubscriber(System.currentTimeMillis());
+    }
+
+    /**
+     * 当前统计周期（自上次屏幕状态变化起）各来源的唤醒次数
+     */
+    public VisibilityBudget.Stats getWakeupStats() {
+        return visibilityBudget.peek(System.currentTimeMillis());
     }
 
     public boolean isMeasuring() {
-        return isMeasuring;
+        return stateMachine.isMeasuring();
+    }
+
+    // 各处理阶段的线程和任务统计，用于调试
+    public List<IngestRuntime.Stats> getRuntimeStats() {
+        return runtime.getStats();
+    }
+
+    /**
+     * 获取一个通道实时窗口内的全部采样（只复制该通道的数据）
+     * @param type DataPoint.TYPE_*
+     */
+    public ChannelWindow.Snapshot getChannelSnapshot(int type) {
+        return liveWindow(type).snapshot();
+    }
+
+    // 获取一个通道在sinceMillis之后的采样，最多maxCount个（取最新的）
+    public ChannelWindow.Snapshot getChannelSnapshot(int type, long sinceMillis, int maxCount) {
+        return liveWindow(type).snapshotSince(sinceMillis, maxCount);
+    }
+
+    // 一个通道的最新数值，没有数据时返回NaN
+    public float getLatestValue(int type) {
+        return liveWindow(type).getLatestValue();
+    }
+
+    /**
+     * 一个通道实时窗口的只读视图，进程内的界面通过LocalBinder取得后直接读取环形缓冲区，
+     * 不复制数据、不创建DataPoint。视图可保存复用，但只能在一个线程中使用
+     */
+    public ChannelWindow.View getChannelView(int type) {
+        return liveWindow(type).newView();
+    }
+
+    /**
+     * 获取所有通道最新的maxCount个采样，按时间合并排序，供数据日志显示
+     */
+    public ArrayList<DataPoint> getRecentDataPoints(int maxCount) {
+        return ChannelWindow.mergeRecent(liveWindows, maxCount);
+    }
+
+    // 设置多进程模式下的共享内存环形缓冲区（由RemoteIngestService在onCreate中调用）
+    protected void setSampleRing(SampleRing ring) {
+        this.sampleRing = ring;
     }
 
-    // 获取数据的方法
-    public ArrayList<DataPoint> getDataPoints() {
-        return new ArrayList<>(dataPoints); // 返回副本以避免并发修改
+    // 设置实时窗口时长（所有通道），容量上限按最高采样频率和默认时长计算
+    public void setLiveWindowDuration(long durationMillis) {
+        for (ChannelWindow window : liveWindows) {
+            window.setDurationMillis(durationMillis);
+        }
+    }
+
+    public long getLiveWindowDuration() {
+        return liveWindows[0].getDurationMillis();
     }
 
     // 清除数据的方法
     public void clearDataPoints() {
-        dataPoints.clear();
+        for (ChannelWindow window : liveWindows) {
+            window.clear();
+        }
+    }
+
+    private ChannelWindow liveWindow(int type) {
+        if (type < 0 || type >= liveWindows.length) {
+            throw new IllegalArgumentException("未知数据类型: " + type);
+        }
+        return liveWindows[type];
+    }
+
+    // 打开溢出日志（在写入线程执行）
+    private void openSpillLog() {
+        try {
+            SpillLog log = new SpillLog(new File(getFilesDir(), SPILL_LOG_FILE), SPILL_LOG_CAPACITY);
+            if (log.getPendingCount() > 0) {
+                Log.i(TAG, "回放溢出日志中未落库的数据: " + log.getPendingCount() + " 条");
+            }
+            spillLog = log;
+            drainSpillLog();
+        } catch (IOException e) {
+            Log.e(TAG, "打开溢出日志失败，数据将直接写入数据库", e);
+        }
+    }
+
+    // 持久化一个数据点：优先追加到溢出日志，日志不可用或已满时直接写数据库
+    private void persistDataPoint(DataPoint dataPoint) {
+        SpillLog log = spillLog;
+        if (log != null && log.append(dataPoint.getTimeMillis(), dataPoint.getType(), dataPoint.getDeviceId(),
+                dataPoint.getValue()) != -1) {
+            scheduleDrain();
+            return;
+        }
+
+        boolean success = dbHelper.addDataPoint(dataPoint);
+        if (!success) {
+            Log.e(TAG, "保存数据点失败");
+        }
+    }
+
+    // 安排一次落库；熄屏时推迟到下一个批量落库时刻，积压过多时仍立即落库
+    private void scheduleDrain() {
+        SpillLog log = spillLog;
+        if (visibilityBudget.isBatchMode() && log != null && log.getPendingCount() < BATCH_FLUSH_MAX_PENDING) {
+            if (delayedDrainScheduled.compareAndSet(false, true)) {
+                mainHandler.postDelayed(delayedDrain, BATCH_FLUSH_INTERVAL);
+            }
+            return;
+        }
+        submitDrain();
+    }
+
+    private final Runnable delayedDrain = () -> {
+        delayedDrainScheduled.set(false);
+        submitDrain();
+    };
+
+    // 提交一次落库，已提交但尚未执行时不重复提交
+    private void submitDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                dbWriteExecutor.execute(() -> {
+                    drainScheduled.set(false);
+                    visibilityBudget.countWakeup(VisibilityBudget.WAKEUP_DB_FLUSH);
+                    drainSpillLog();
+                });
+            } catch (RejectedExecutionException e) {
+                // 服务已停止，剩余记录保留在日志中，下次启动时回放
+                Log.d(TAG, "写入线程已停止，数据将在下次启动时落库");
+            }
+        }
+    }
+
+    // 把溢出日志中的记录批量写入数据库（在写入线程执行）
+    private void drainSpillLog() {
+        SpillLog log = spillLog;
+        if (log == null) {
+            return;
+        }
+
+        while (true) {
+            List<SpillLog.Record> records = log.peekPending(DRAIN_BATCH_SIZE);
+            if (records.isEmpty()) {
+                break;
+            }
+
+            ArrayList<DataPoint> batch = new ArrayList<>(records.size());
+            for (SpillLog.Record record : records) {
+                batch.add(new DataPoint(record.value, record.type, record.timeMillis, record.deviceId));
+            }
+
+            if (!dbHelper.addDataPoints(batch)) {
+                // 写入失败的记录保留在日志中，下次落库时重试
+                Log.e(TAG, "批量保存数据点失败，稍后重试");
+                break;
+            }
+            log.markDrained(records.get(records.size() - 1).seq, records.size());
+        }
+
+        // 按保留策略删除过期和超出容量的数据，不再每个数据点都执行
+        long now = System.currentTimeMillis();
+        if (now - lastCleanupMillis >= RETENTION_INTERVAL) {
+            lastCleanupMillis = now;
+            int deleted = dbHelper.enforceRetention(RetentionPolicy.getDefault(), now);
+            if (deleted > 0) {
+                Log.d(TAG, "保留策略删除了 " + deleted + " 条数据");
+            }
+        }
     }
 
     public void connect(String address) {
+        executeControl(() -> doConnect(address));
+    }
+
+    public void disconnect() {
+        executeControl(this::doDisconnect);
+    }
+
+    // 提交到控制线程串行执行；服务销毁后提交的操作直接忽略
+    private void executeControl(Runnable task) {
+        try {
+            controlExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            Log.d(TAG, "服务已停止，忽略控制操作");
+        }
+    }
+
+    // 发起连接（在控制线程执行）
+    private void doConnect(String address) {
+        // 已经连接或正在连接同一设备时不重复连接（例如服务启动时已从缓存自动连接），只通知当前状态
+        int currentState = stateMachine.getState();
+        if (address.equals(lastConnectedDeviceAddress)
+                && (currentState == STATE_CONNECTED || currentState == STATE_CONNECTING)) {
+            Log.d(TAG, "设备已连接或正在连接: " + address);
+            sendStateMessage(currentState);
+            return;
+        }
+
         // 记录设备地址以便重连
         lastConnectedDeviceAddress = address;
         reconnectAttempts = 0;
 
         // 添加日志，便于调试
         Log.d(TAG, "尝试连接到设备: " + address);
-        
-        // 更新通知
-        updateNotification("正在连接到设备...");
 
-        // 如果正在连接，先停止连接线程
-        if (state == STATE_CONNECTING) {
-            if (connectThread != null) {
-                connectThread.cancel();
-                connectThread = null;
-            }
-        }
+        // 停止之前的连接任务和读取任务
+        cancelTasks();
 
-        // 如果已连接，先断开连接
-        if (connectedThread != null) {
-            connectedThread.cancel();
-            connectedThread = null;
-        }
+        // 进入正在连接状态，新的代数使旧线程的回调失效
+        long generation = stateMachine.beginConnect();
 
         // 通过地址获取设备对象
         try {
             // 检查蓝牙适配器是否初始化
             if (bluetoothAdapter == null) {
                 Log.e(TAG, "蓝牙适配器未初始化");
-                updateState(STATE_CONNECTION_FAILED);
+                stateMachine.onConnectFailed(generation);
                 return;
             }
 
@@ -193,64 +648,101 @@ public class BluetoothService extends Service {
             // 添加日志确认设备获取成功
             Log.d(TAG, "成功获取设备对象: " + (device.getName() != null ? device.getName() : "未知设备"));
 
-            // 启动连接线程
-            connectThread = new ConnectThread(device);
-            connectThread.start();
-
-            // 更新状态
-            updateState(STATE_CONNECTING);
+            // 提交连接任务
+            connectTask = new ConnectTask(device, generation);
+            ioExecutor.execute(connectTask);
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "连接任务提交失败", e);
+            connectTask = null;
+            stateMachine.onConnectFailed(generation);
         } catch (SecurityException e) {
             Log.e(TAG, "缺少蓝牙权限", e);
-            updateState(STATE_CONNECTION_FAILED);
+            stateMachine.onConnectFailed(generation);
         } catch (IllegalArgumentException e) {
             Log.e(TAG, "设备地址无效: " + address, e);
-            updateState(STATE_CONNECTION_FAILED);
+            stateMachine.onConnectFailed(generation);
         } catch (Exception e) {
             Log.e(TAG, "连接过程中发生意外错误", e);
-            updateState(STATE_CONNECTION_FAILED);
+            stateMachine.onConnectFailed(generation);
         }
     }
 
-    public void disconnect() {
-        if (connectThread != null) {
-            connectThread.cancel();
-            connectThread = null;
-        }
+    // 主动断开（在控制线程执行）
+    private void doDisconnect() {
+        cancelTasks();
+        stateMachine.disconnect();
+    }
 
-        if (connectedThread != null) {
-            connectedThread.cancel();
-            connectedThread = null;
+    // 取消连接任务和读取任务（在控制线程执行），关闭Socket使阻塞的连接或读取立即返回
+    private void cancelTasks() {
+        if (connectTask != null) {
+            connectTask.cancel();
+            connectTask = null;
         }
 
-        updateState(STATE_DISCONNECTED);
+        if (connectedTask != null) {
+            connectedTask.cancel();
+            connectedTask = null;
+        }
     }
 
-    private void updateState(int newState) {
-        int oldState = this.state;
-        this.state = newState;
+    // 把状态机的最新状态发布到通知、UI和下位机（在控制线程执行）
+    // 多个线程的转换可能以任意顺序排入控制线程，因此总是发布最新状态而不是转换事件本身
+    private void publishState() {
+        int newState = stateMachine.getState();
+        boolean measuring = stateMachine.isMeasuring();
+        if (newState == publishedState && measuring == publishedMeasuring) {
+            return;
+        }
+        int oldState = publishedState;
+        boolean wasMeasuring = publishedMeasuring;
+        publishedState = newState;
+        publishedMeasuring = measuring;
+
+        // 更新通知：只标记需要更新，短时间内的多次变化（如断开时同时停止测量）合并为一次提交
+        if (measuring) {
+            notificationController.setStatus("正在测量数据", true);
+        } else {
+            switch (newState) {
+                case STATE_CONNECTED:
+                    notificationController.setStatus("已连接设备", false);
+                    break;
+                case STATE_CONNECTING:
+                    notificationController.setStatus("正在连接设备...", false);
+                    break;
+                case STATE_DISCONNECTED:
+                    notificationController.setStatus("未连接设备", false);
+                    break;
+                case STATE_CONNECTION_FAILED:
+                    notificationController.setStatus("连接失败", false);
+                    break;
+            }
+        }
 
-        // 记录状态变化
-        Log.d(TAG, "蓝牙状态变化: " + stateToString(oldState) + " -> " + stateToString(newState));
-        
-        // 更新通知
-        switch (newState) {
-            case STATE_CONNECTED:
-                updateNotification("已连接设备");
-                break;
-            case STATE_CONNECTING:
-                updateNotification("正在连接设备...");
-                break;
-            case STATE_DISCONNECTED:
-                updateNotification("未连接设备");
-                stopMeasuring(); // 断开连接时停止测量
-                break;
-            case STATE_CONNECTION_FAILED:
-                updateNotification("连接失败");
-                break;
+        // 测量开始/停止时通知下位机恢复/暂停发送
+        if (measuring && !wasMeasuring) {
+            sendCommand(DeviceCommand.resume());
+        } else if (!measuring && wasMeasuring) {
+            sendCommand(DeviceCommand.pause());
         }
 
-        if (handler != null) {
-            Message msg = handler.obtainMessage(MESSAGE_STATUS, newState, -1);
+        if (newState != oldState) {
+            // 记录状态变化
+            Log.d(TAG, "蓝牙状态变化: " + stateToString(oldState) + " -> " + stateToString(newState));
+            sendStateMessage(newState);
+
+            // 新连接的下位机需要重新下发当前采样频率
+            if (newState == STATE_CONNECTED) {
+                rateController.reset(System.currentTimeMillis());
+            }
+        }
+    }
+
+    // 向UI发送状态消息
+    private void sendStateMessage(int newState) {
+        Handler target = handler;
+        if (target != null) {
+            Message msg = target.obtainMessage(MESSAGE_STATUS, newState, -1);
             msg.sendToTarget();
             Log.d(TAG, "状态更新消息已发送");
         } else {
@@ -259,7 +751,7 @@ public class BluetoothService extends Service {
     }
 
     public int getState() {
-        return state;
+        return stateMachine.getState();
     }
 
     // 设置是否自动重连
@@ -267,7 +759,7 @@ public class BluetoothService extends Service {
         this.autoReconnect = autoReconnect;
     }
 
-    // 尝试重新连接
+    // 尝试重新连接（在控制线程执行）
     private void tryReconnect() {
         if (!autoReconnect || lastConnectedDeviceAddress == null) {
             return;
@@ -282,166 +774,229 @@ public class BluetoothService extends Service {
         // 增加重连次数
         reconnectAttempts++;
 
-        // 延迟一段时间后重连
-        new Handler().postDelayed(() -> {
-            Log.i(TAG, "尝试重新连接，第 " + reconnectAttempts + " 次");
-            connect(lastConnectedDeviceAddress);
+        // 延迟一段时间后重连（读取线程没有Looper，借助主线程Handler计时）
+        int attempt = reconnectAttempts;
+        String address = lastConnectedDeviceAddress;
+        mainHandler.postDelayed(() -> {
+            Log.i(TAG, "尝试重新连接，第 " + attempt + " 次");
+            connect(address);
         }, RECONNECT_DELAY);
     }
 
-    private class ConnectThread extends Thread {
-        private final BluetoothSocket mmSocket;
+    // 连接任务，在io线程池中执行
+    private class ConnectTask implements Runnable {
         private final BluetoothDevice mmDevice;
+        private final long mmGeneration; // 本次连接的代数
+        private volatile BluetoothSocket mmSocket; // 当前正在尝试的Socket
+        private volatile boolean mmCanceled = false;
 
-        public ConnectThread(BluetoothDevice device) {
+        ConnectTask(BluetoothDevice device, long generation) {
             mmDevice = device;
-            BluetoothSocket tmp = null;
+            mmGeneration = generation;
+        }
 
-            try {
-                // 检查权限
-                if (ActivityCompat.checkSelfPermission(getApplicationContext(),
-                        Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
-                    Log.w(TAG, "缺少BLUETOOTH_CONNECT权限");
-                    // 不再提前返回，而是让tmp保持为null
-                } else {
-                    // 有权限时才创建socket
-                    try {
-                        Log.d(TAG, "创建蓝牙Socket: " + device.getAddress());
-                        tmp = device.createRfcommSocketToServiceRecord(MY_UUID);
-                    } catch (IOException e) {
-                        Log.e(TAG, "创建RfcommSocket失败，尝试使用反射方法", e);
-                        // 尝试使用反射获取socket (备选方法)
-                        try {
-                            // 使用反射获取createRfcommSocket方法
-                            Method m = device.getClass().getMethod("createRfcommSocket", new Class[] { int.class });
-                            tmp = (BluetoothSocket) m.invoke(device, 1);
-                            Log.d(TAG, "使用反射方法创建Socket成功");
-                        } catch (Exception ex) {
-                            Log.e(TAG, "使用反射方法创建Socket也失败", ex);
-                        }
-                    }
+        @Override
+        public void run() {
+            // 检查权限
+            if (ActivityCompat.checkSelfPermission(getApplicationContext(),
+                    Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
+                Log.w(TAG, "缺少BLUETOOTH_CONNECT权限");
+                stateMachine.onConnectFailed(mmGeneration);
+                return;
+            }
+
+            // 只有正在扫描时才需要取消，扫描会减慢连接速度；从缓存直连时通常没有在扫描
+            cancelDiscoveryIfNeeded();
+
+            String address = mmDevice.getAddress();
+            KnownDeviceCache.KnownDevice knownDevice = knownDeviceCache.get(address);
+
+            // 1. 缓存中有可用的RFCOMM通道：直接按通道连接，跳过SDP服务查询
+            if (knownDevice != null && knownDevice.rfcommChannel > 0) {
+                Log.d(TAG, "使用缓存的RFCOMM通道直接连接: " + knownDevice.rfcommChannel);
+                if (attemptConnect(createChannelSocket(knownDevice.rfcommChannel))) {
+                    onConnectSucceeded(knownDevice.rfcommChannel, knownDevice.usedReflectionFallback);
+                    return;
+                }
+                Log.w(TAG, "缓存的RFCOMM通道连接失败，改用标准方式");
+                knownDeviceCache.forgetChannel(address);
+            }
+
+            // 2. 标准方式：通过SPP UUID查询服务记录（上次需要反射方式时跳过）
+            if (knownDevice == null || !knownDevice.usedReflectionFallback) {
+                BluetoothSocket socket = createServiceRecordSocket();
+                if (attemptConnect(socket)) {
+                    onConnectSucceeded(readRfcommChannel(socket), false);
+                    return;
                 }
-            } catch (SecurityException e) {
-                Log.e(TAG, "缺少蓝牙权限", e);
-            } catch (Exception e) {
-                Log.e(TAG, "创建Socket过程中发生未知错误", e);
             }
 
-            // 无论如何都要初始化mmSocket
-            mmSocket = tmp;
-            if (mmSocket == null) {
-                Log.e(TAG, "Socket创建失败，无法连接");
-            } else {
-                Log.d(TAG, "Socket创建成功，准备连接");
+            // 3. 备选方式：使用反射按默认通道创建Socket
+            if (attemptConnect(createChannelSocket(DEFAULT_RFCOMM_CHANNEL))) {
+                onConnectSucceeded(DEFAULT_RFCOMM_CHANNEL, true);
+                return;
             }
+
+            // 被取消的旧连接代数已失效，不会覆盖新连接的状态
+            stateMachine.onConnectFailed(mmGeneration);
         }
 
-        public void run() {
+        private void cancelDiscoveryIfNeeded() {
             try {
-                // 检查权限
                 if (ActivityCompat.checkSelfPermission(getApplicationContext(),
-                        Manifest.permission.BLUETOOTH_SCAN) != PackageManager.PERMISSION_GRANTED) {
-                    Log.w(TAG, "缺少BLUETOOTH_SCAN权限");
-                    updateState(STATE_CONNECTION_FAILED);
-                    return;
+                        Manifest.permission.BLUETOOTH_SCAN) == PackageManager.PERMISSION_GRANTED
+                        && bluetoothAdapter.isDiscovering()) {
+                    bluetoothAdapter.cancelDiscovery();
                 }
+            } catch (SecurityException e) {
+                Log.e(TAG, "取消搜索时权限错误", e);
+            }
+        }
 
-                // 取消搜索，因为它会减慢连接速度
-                bluetoothAdapter.cancelDiscovery();
+        private BluetoothSocket createServiceRecordSocket() {
+            try {
+                Log.d(TAG, "创建蓝牙Socket: " + mmDevice.getAddress());
+                return mmDevice.createRfcommSocketToServiceRecord(MY_UUID);
+            } catch (IOException e) {
+                Log.e(TAG, "创建RfcommSocket失败，尝试使用反射方法", e);
+            } catch (SecurityException e) {
+                Log.e(TAG, "缺少蓝牙权限", e);
+            }
+            return null;
+        }
 
-                // 检查socket是否为null
-                if (mmSocket == null) {
-                    Log.e(TAG, "Socket为null，无法连接");
-                    updateState(STATE_CONNECTION_FAILED);
-                    return;
-                }
+        // 使用反射获取createRfcommSocket方法，按指定通道创建Socket
+        private BluetoothSocket createChannelSocket(int channel) {
+            try {
+                Method m = mmDevice.getClass().getMethod("createRfcommSocket", new Class[] { int.class });
+                BluetoothSocket socket = (BluetoothSocket) m.invoke(mmDevice, channel);
+                Log.d(TAG, "使用反射方法创建Socket成功，通道: " + channel);
+                return socket;
+            } catch (Exception e) {
+                Log.e(TAG, "使用反射方法创建Socket失败", e);
+                return null;
+            }
+        }
 
+        // 尝试连接一个Socket，失败时关闭它
+        private boolean attemptConnect(BluetoothSocket socket) {
+            if (socket == null || mmCanceled) {
+                return false;
+            }
+            mmSocket = socket;
+            try {
+                Log.d(TAG, "开始连接到设备: " + mmDevice.getAddress());
+                socket.connect();
+                Log.d(TAG, "连接成功: " + mmDevice.getAddress());
+                return true;
+            } catch (IOException | SecurityException e) {
+                Log.e(TAG, "连接失败，正在关闭Socket", e);
                 try {
-                    // 尝试连接
-                    Log.d(TAG, "开始连接到设备: " + mmDevice.getAddress());
-                    mmSocket.connect();
-                    Log.d(TAG, "连接成功: " + mmDevice.getAddress());
-
-                    // 连接成功
-                    synchronized (BluetoothService.this) {
-                        connectThread = null;
-                    }
-
-                    // 启动已连接线程
-                    connected(mmSocket);
-
-                } catch (IOException e) {
-                    // 连接失败
-                    try {
-                        Log.e(TAG, "连接失败，正在关闭Socket", e);
-                        mmSocket.close();
-                    } catch (IOException closeException) {
-                        Log.e(TAG, "关闭Socket失败", closeException);
-                    } catch (SecurityException e2) {
-                        Log.e(TAG, "关闭Socket时权限错误", e2);
-                    }
-
-                    updateState(STATE_CONNECTION_FAILED);
-                    return;
-                } catch (SecurityException e) {
-                    Log.e(TAG, "连接设备时权限错误", e);
-                    updateState(STATE_CONNECTION_FAILED);
-                    return;
+                    socket.close();
+                } catch (IOException closeException) {
+                    Log.e(TAG, "关闭Socket失败", closeException);
                 }
+                return false;
+            }
+        }
+
+        // 连接成功：更新已知设备缓存并启动已连接线程
+        private void onConnectSucceeded(int channel, boolean usedReflectionFallback) {
+            String name = null;
+            try {
+                name = mmDevice.getName();
             } catch (SecurityException e) {
-                Log.e(TAG, "取消搜索时权限错误", e);
-                updateState(STATE_CONNECTION_FAILED);
+                Log.w(TAG, "无法读取设备名称", e);
             }
+            knownDeviceCache.recordConnection(mmDevice.getAddress(), name, channel, usedReflectionFallback);
+            connectedDeviceId = dbHelper.getOrCreateDeviceId(mmDevice.getAddress(), name);
+
+            // 在控制线程中提交读取任务
+            BluetoothSocket socket = mmSocket;
+            executeControl(() -> connected(socket, mmGeneration, this));
         }
 
         public void cancel() {
+            mmCanceled = true;
             try {
-                if (mmSocket != null) {
-                    mmSocket.close();
+                BluetoothSocket socket = mmSocket;
+                if (socket != null) {
+                    socket.close();
                 }
             } catch (IOException e) {
-                Log.e(TAG, "关闭连接线程Socket失败", e);
+                Log.e(TAG, "关闭连接任务Socket失败", e);
             } catch (SecurityException e) {
                 Log.e(TAG, "关闭Socket时权限错误", e);
             }
         }
     }
 
-    private synchronized void connected(BluetoothSocket socket) {
-        this.socket = socket;
+    // 读取Socket实际使用的RFCOMM通道（隐藏字段，读取失败时返回未知）
+    private static int readRfcommChannel(BluetoothSocket socket) {
+        try {
+            Field field = socket.getClass().getDeclaredField("mPort");
+            field.setAccessible(true);
+            int port = field.getInt(socket);
+            return port > 0 ? port : KnownDeviceCache.CHANNEL_UNKNOWN;
+        } catch (Exception e) {
+            Log.d(TAG, "无法读取RFCOMM通道: " + e.getMessage());
+            return KnownDeviceCache.CHANNEL_UNKNOWN;
+        }
+    }
+
+    // 连接成功后的处理（在控制线程执行）
+    private void connected(BluetoothSocket socket, long generation, ConnectTask source) {
         Log.i(TAG, "开始连接后处理程序");
 
-        // 取消之前的连接线程
-        if (connectThread != null) {
-            connectThread.cancel();
-            connectThread = null;
+        if (connectTask == source) {
+            connectTask = null;
         }
 
-        // 取消之前的已连接线程
-        if (connectedThread != null) {
-            connectedThread.cancel();
-            connectedThread = null;
+        // 连接期间已被取消或发起了新的连接，丢弃这个Socket
+        if (!stateMachine.isCurrent(generation)) {
+            Log.w(TAG, "连接已过期，关闭Socket");
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.e(TAG, "关闭过期Socket失败", e);
+            }
+            return;
         }
 
-        // 启动新的已连接线程
-        connectedThread = new ConnectedThread(socket);
-        connectedThread.start();
+        // 取消之前的读取任务
+        if (connectedTask != null) {
+            connectedTask.cancel();
+            connectedTask = null;
+        }
 
-        // 更新状态为已连接
-        updateState(STATE_CONNECTED);
+        // 提交新的读取任务，再把状态切换为已连接
+        ConnectedTask task = new ConnectedTask(socket, generation);
+        try {
+            ioExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "读取任务提交失败", e);
+            task.cancel();
+            stateMachine.onConnectFailed(generation);
+            return;
+        }
+        connectedTask = task;
+        stateMachine.onConnected(generation);
 
         Log.i(TAG, "连接已成功建立，正在发送状态更新");
     }
 
-    private class ConnectedThread extends Thread {
+    // 读取任务：在连接期间阻塞读取输入流，在io线程池中执行
+    private class ConnectedTask implements Runnable {
         private final BluetoothSocket mmSocket;
+        private final long mmGeneration; // 所属连接的代数
         private final InputStream mmInStream;
         private final OutputStream mmOutStream;
         private byte[] mmBuffer; // 临时缓冲区
         private StringBuilder dataBuffer = new StringBuilder(); // 数据缓冲区，用于存储接收到的完整行
 
-        public ConnectedThread(BluetoothSocket socket) {
+        ConnectedTask(BluetoothSocket socket, long generation) {
             mmSocket = socket;
+            mmGeneration = generation;
             InputStream tmpIn = null;
             OutputStream tmpOut = null;
 
@@ -458,7 +1013,14 @@ public class BluetoothService extends Service {
             mmOutStream = tmpOut;
         }
 
+        @Override
         public void run() {
+            if (mmInStream == null) {
+                if (stateMachine.onConnectionLost(mmGeneration)) {
+                    executeControl(BluetoothService.this::tryReconnect);
+                }
+                return;
+            }
             mmBuffer = new byte[1024];
             int numBytes; // 从输入流读取的字节数
 
@@ -477,12 +1039,20 @@ public class BluetoothService extends Service {
 
                 } catch (IOException e) {
                     Log.e(TAG, "读取输入流时断开连接", e);
-                    updateState(STATE_DISCONNECTED);
-                    // 连接断开，尝试重连
-                    tryReconnect();
+                    // 只有当前连接意外断开时才重连，主动断开或已被新连接替换时代数不匹配
+                    if (stateMachine.onConnectionLost(mmGeneration)) {
+                        executeControl(BluetoothService.this::tryReconnect);
+                    }
                     break;
                 }
             }
+
+            // 连接结束，进行中的异常段在最后一个采样处结束、报警状态清除（已被新连接替换时由新连接继续检测）
+            ConnectedTask current = connectedTask;
+            if (current == null || current == this) {
+                episodeDetector.flush();
+                resetAlarms();
+            }
         }
 
         // 处理接收到的完整行
@@ -498,19 +1068,11 @@ public class BluetoothService extends Service {
 
                 // 如果是有效行且正在测量，处理数据
                 if (line.length() > 0) {
-                    // 发送到主线程
-                    if (handler != null) {
-                        // 创建新的缓冲区来存储这行数据
-                        byte[] lineBytes = line.getBytes();
-
-                        // 发送到主线程
-                        Message msg = handler.obtainMessage(MESSAGE_READ, lineBytes.length, -1);
-                        msg.obj = lineBytes;
-                        msg.sendToTarget();
-                    }
-                    
-                    // 如果正在测量，处理数据并存储
-                    if (isMeasuring) {
+                    // 原始行回显是可选的，只在有人监听时才加入批次
+                    uiDispatcher.postLine(line);
+
+                    // 如果正在测量，处理数据并存储（无锁读取状态）
+                    if (stateMachine.isMeasuring()) {
                         processReceivedData(line.trim());
                     }
                 }
@@ -519,8 +1081,10 @@ public class BluetoothService extends Service {
         
         // 处理接收到的数据
         private void processReceivedData(String data) {
-            // 获取当前时间戳
-            String timestamp = new SimpleDateFormat("HH:mm:ss", Locale.getDefault()).format(new Date());
+            long now = System.currentTimeMillis();
+            rateController.onSample(now);
+
+            // 时间戳字符串不在读取线程格式化，只记录采样时刻，显示或落库时再格式化
 
             // 检查数据格式
             if (data.startsWith("Data1:")) {
@@ -530,9 +1094,9 @@ public class BluetoothService extends Service {
                     float value = Float.parseFloat(valueStr);
 
                     // 创建数据点
-                    DataPoint dataPoint = new DataPoint(timestamp, value, DataPoint.TYPE_RAW);
+                    DataPoint dataPoint = new DataPoint(value, DataPoint.TYPE_RAW, now, connectedDeviceId);
 
-                    // 添加到数据列表
+                    // 添加到实时窗口
                     addDataPoint(dataPoint);
 
                 } catch (NumberFormatException e) {
@@ -546,9 +1110,9 @@ public class BluetoothService extends Service {
                     float value = Float.parseFloat(valueStr);
 
                     // 创建数据点
-                    DataPoint dataPoint = new DataPoint(timestamp, value, DataPoint.TYPE_PERCENTAGE);
+                    DataPoint dataPoint = new DataPoint(value, DataPoint.TYPE_PERCENTAGE, now, connectedDeviceId);
 
-                    // 添加到数据列表
+                    // 添加到实时窗口
                     addDataPoint(dataPoint);
 
                 } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
@@ -562,9 +1126,9 @@ public class BluetoothService extends Service {
                     float value = Float.parseFloat(valueStr);
 
                     // 创建数据点
-                    DataPoint dataPoint = new DataPoint(timestamp, value, DataPoint.TYPE_VOLTAGE);
+                    DataPoint dataPoint = new DataPoint(value, DataPoint.TYPE_VOLTAGE, now, connectedDeviceId);
 
-                    // 添加到数据列表
+                    // 添加到实时窗口
                     addDataPoint(dataPoint);
 
                 } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
@@ -573,40 +1137,40 @@ public class BluetoothService extends Service {
             }
         }
         
-        // 添加数据点到数据列表和数据库
+        // 添加数据点到所属通道的实时窗口和数据库
         private void addDataPoint(DataPoint dataPoint) {
-            // 加入到数据列表
-            synchronized (dataPoints) {
-                dataPoints.add(dataPoint);
-                
-                // 如果数据点超过最大限制，删除最早的数据点
-                if (dataPoints.size() > MAX_DATA_POINTS) {
-                    dataPoints.remove(0);
-                }
-            }
-            
-            // 保存到数据库
-            saveDataPointToDB(dataPoint);
-        }
-        
-        // 保存数据点到数据库
-        private void saveDataPointToDB(DataPoint dataPoint) {
-            boolean success = dbHelper.addDataPoint(dataPoint);
-            if (!success) {
-                Log.e(TAG, "保存数据点失败");
+            // 加入该通道的实时窗口，超出窗口时长的采样自动淘汰
+            liveWindows[dataPoint.getType()].add(dataPoint.getTimeMillis(), dataPoint.getValue());
+            SampleRing ring = sampleRing;
+            if (ring != null) {
+                ring.append(dataPoint.getType(), dataPoint.getTimeMillis(), dataPoint.getValue());
             }
 
-            // 清理旧数据（超过一周的）
-            int deleted = dbHelper.deleteOldData();
-            if (deleted > 0) {
-                Log.d(TAG, "已删除 " + deleted + " 条旧数据");
+            // 评估报警规则；报警期间保持高频采样
+            alarmEngine.onSample(dataPoint.getType(), dataPoint.getTimeMillis(), dataPoint.getValue());
+            episodeDetector.onSample(dataPoint.getType(), dataPoint.getTimeMillis(), dataPoint.getValue(),
+                    dataPoint.getDeviceId());
+            if (alarmEngine.hasActiveAlarm()) {
+                rateController.onThresholdEvent(dataPoint.getTimeMillis());
             }
+            
+            // 合并到下一帧的UI批次中；通知只记录最新数值，每秒最多更新一次
+            uiDispatcher.postDataPoint(dataPoint);
+            notificationController.onSample(dataPoint.getType(), dataPoint.getValue());
+
+            // 写入溢出日志，由写入线程异步落库
+            persistDataPoint(dataPoint);
         }
 
         // 写入数据到输出流
-        public void write(byte[] bytes) {
+        public synchronized void write(byte[] bytes) {
+            if (mmOutStream == null) {
+                Log.e(TAG, "输出流不可用，无法写入");
+                return;
+            }
             try {
                 mmOutStream.write(bytes);
+                mmOutStream.flush();
             } catch (IOException e) {
                 Log.e(TAG, "写入输出流时发生错误", e);
             }
@@ -617,7 +1181,7 @@ public class BluetoothService extends Service {
             try {
                 mmSocket.close();
             } catch (IOException e) {
-                Log.e(TAG, "关闭已连接线程Socket失败", e);
+                Log.e(TAG, "关闭读取任务Socket失败", e);
             } catch (SecurityException e) {
                 Log.e(TAG, "关闭Socket时权限错误", e);
             }
@@ -639,7 +1203,30 @@ public class BluetoothService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
-        disconnect();
+        mainHandler.removeCallbacksAndMessages(null); // 取消尚未执行的重连和自动连接
+        disconnect(); // 关闭Socket，读取任务随之退出
+        uiDispatcher.release();
+        notificationController.release();
+        unregisterReceiver(screenReceiver);
+        episodeDetector.flush(); // 写入进行中的异常段
+        resetAlarms(); // 服务结束后不留下报警通知
+
+        // 落库剩余数据后关闭溢出日志
+        dbWriteExecutor.execute(() -> {
+            drainSpillLog();
+            SpillLog log = spillLog;
+            spillLog = null;
+            if (log != null) {
+                try {
+                    log.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "关闭溢出日志失败", e);
+                }
+            }
+        });
+
+        // 关闭所有线程池：已提交的断开和落库任务仍会执行，之后提交的任务被忽略，不阻塞主线程
+        runtime.shutdown();
         stopForeground(true);
     }
 
@@ -0,0 +1,464 @@
+package com.example.blueteeth;
+
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 单个数据通道的实时窗口：只保留最近一段时间（例如10分钟）内的采样，
+ * 采样时间和数值存放在两个基本类型数组组成的环形缓冲区中，不为每个采样创建对象。
+ *
+ * 缓冲区按需扩容，最多maxSamples个采样；超过时长或容量上限的最早采样被覆盖。
+ * 写入在读取线程，查询在UI线程，由StampedLock保护：写入持写锁，复制类查询持读锁，
+ * View以乐观读（带序号的无锁读取）直接读取缓冲区，读取期间不阻塞写入。
+ */
+public class ChannelWindow {
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int MAX_OPTIMISTIC_ATTEMPTS = 4;
+
+    /**
+     * 窗口内容的副本，只包含本通道的数据，按时间从早到晚排列
+     */
+    public static class Snapshot {
+        public final long[] timesMillis;
+        public final float[] values;
+        public final int count;
+
+        Snapshot(long[] timesMillis, float[] values, int count) {
+            this.timesMillis = timesMillis;
+            this.values = values;
+            this.count = count;
+        }
+
+        public boolean isEmpty() {
+            return count == 0;
+        }
+    }
+
+    /**
+     * 视图读取回调。读取期间有写入时会以最新内容再次调用，实现需可重复执行（每次从头计算），
+     * 不能有副作用（修改界面等），也应尽快返回；需要较多计算时先用SampleCopy复制，读取结束后再处理
+     */
+    public interface Reader {
+        void read(View view);
+    }
+
+    /**
+     * 按时间从早到晚排列的一组采样，按位置读取
+     */
+    public interface Samples {
+        int size();
+
+        boolean isEmpty();
+
+        long timeAt(int position);
+
+        float valueAt(int position);
+    }
+
+    /**
+     * 可复用的副本：作为Reader读取视图时把内容复制到自己的数组（按需扩容，不缩小），
+     * read()返回后即可在读取之外任意处理。只在一个线程中使用
+     */
+    public static final class SampleCopy implements Reader, Samples {
+        private long[] times = new long[0];
+        private float[] values = new float[0];
+        private int count;
+
+        @Override
+        public void read(View view) {
+            int size = view.count;
+            if (times.length < size) {
+                times = new long[size];
+                values = new float[size];
+            }
+            // 环形缓冲区最多分两段复制
+            int first = Math.min(size, view.times.length - view.head);
+            System.arraycopy(view.times, view.head, times, 0, first);
+            System.arraycopy(view.values, view.head, values, 0, first);
+            System.arraycopy(view.times, 0, times, first, size - first);
+            System.arraycopy(view.values, 0, values, first, size - first);
+            count = size;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return count == 0;
+        }
+
+        @Override
+        public long timeAt(int position) {
+            if (position < 0 || position >= count) {
+                throw new IndexOutOfBoundsException("位置 " + position + "，共 " + count + " 个采样");
+            }
+            return times[position];
+        }
+
+        @Override
+        public float valueAt(int position) {
+            if (position < 0 || position >= count) {
+                throw new IndexOutOfBoundsException("位置 " + position + "，共 " + count + " 个采样");
+            }
+            return values[position];
+        }
+
+        public void clear() {
+            count = 0;
+        }
+    }
+
+    /**
+     * 窗口的只读视图：按位置直接读取环形缓冲区，不复制、不为采样创建对象，位置0是最早的采样。
+     * 只能在Reader回调中访问；视图对象可复用，但只能在一个线程中使用。
+     */
+    public static final class View implements Samples {
+        private final ChannelWindow window;
+        private long[] times;
+        private float[] values;
+        private int head;
+        private int count;
+        private long[] ownTimes = new long[0]; // 乐观读连续失败时复制到这里
+        private float[] ownValues = new float[0];
+
+        private View(ChannelWindow window) {
+            this.window = window;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return count == 0;
+        }
+
+        @Override
+        public long timeAt(int position) {
+            return times[physical(position)];
+        }
+
+        @Override
+        public float valueAt(int position) {
+            return values[physical(position)];
+        }
+
+        /**
+         * 读取窗口当前内容。先以乐观读直接访问缓冲区，读完后校验序号，期间有写入则重读；
+         * 写入过于频繁导致多次失败时，在读锁下复制一份再读，保证reader一定读到一致的内容
+         */
+        public void read(Reader reader) {
+            StampedLock lock = window.lock;
+            for (int attempt = 0; attempt < MAX_OPTIMISTIC_ATTEMPTS; attempt++) {
+                long stamp = lock.tryOptimisticRead();
+                if (stamp == 0) {
+                    continue; // 正在写入
+                }
+                bind(window.times, window.values, window.head, window.size);
+                if (!lock.validate(stamp)) {
+                    continue; // 绑定的数组和位置可能不一致，不能交给reader
+                }
+                reader.read(this);
+                if (lock.validate(stamp)) {
+                    return;
+                }
+            }
+
+            long stamp = lock.readLock();
+            try {
+                int size = window.size;
+                if (ownTimes.length < size) {
+                    ownTimes = new long[size];
+                    ownValues = new float[size];
+                }
+                window.copy(0, ownTimes, ownValues, 0, size);
+                bind(ownTimes, ownValues, 0, size);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            reader.read(this);
+        }
+
+        private void bind(long[] times, float[] values, int head, int count) {
+            this.times = times;
+            this.values = values;
+            this.head = head;
+            this.count = count;
+        }
+
+        private int physical(int position) {
+            if (position < 0 || position >= count) {
+                throw new IndexOutOfBoundsException("位置 " + position + "，共 " + count + " 个采样");
+            }
+            int index = head + position;
+            return index < times.length ? index : index - times.length;
+        }
+    }
+
+    private final StampedLock lock = new StampedLock();
+    private final int maxSamples;
+    private volatile long durationMillis;
+    private long[] times;
+    private float[] values;
+    private int head = 0; // 最早采样的位置
+    private int size = 0;
+
+    /**
+     * @param durationMillis 窗口时长
+     * @param maxSamples 最多保留的采样数（时长 × 最高采样频率）
+     */
+    public ChannelWindow(long durationMillis, int maxSamples) {
+        if (durationMillis <= 0 || maxSamples <= 0) {
+            throw new IllegalArgumentException("窗口时长和容量必须大于0");
+        }
+        this.durationMillis = durationMillis;
+        this.maxSamples = maxSamples;
+        int initialCapacity = Math.min(INITIAL_CAPACITY, maxSamples);
+        times = new long[initialCapacity];
+        values = new float[initialCapacity];
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    // 修改窗口时长，下次写入或查询时淘汰超出时长的采样
+    public void setDurationMillis(long durationMillis) {
+        if (durationMillis <= 0) {
+            throw new IllegalArgumentException("窗口时长必须大于0");
+        }
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * 追加一个采样（采样时间应单调不减）
+     */
+    public void add(long timeMillis, float value) {
+        long stamp = lock.writeLock();
+        try {
+            evictBefore(timeMillis - durationMillis);
+            if (size == times.length) {
+                if (times.length < maxSamples) {
+                    grow();
+                } else {
+                    // 已达容量上限，覆盖最早的采样
+                    head = (head + 1) % times.length;
+                    size--;
+                }
+            }
+            int index = (head + size) % times.length;
+            times[index] = timeMillis;
+            values[index] = value;
+            size++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 从多个通道（下标即DataPoint.TYPE_*）中取最新的maxCount个采样，按时间从早到晚合并
+     */
+    public static ArrayList<DataPoint> mergeRecent(ChannelWindow[] windows, int maxCount) {
+        Snapshot[] snapshots = new Snapshot[windows.length];
+        int[] positions = new int[windows.length];
+        for (int type = 0; type < windows.length; type++) {
+            snapshots[type] = windows[type].snapshotSince(Long.MIN_VALUE, maxCount);
+            positions[type] = snapshots[type].count - 1;
+        }
+
+        // 从各通道末尾向前归并
+        ArrayList<DataPoint> points = new ArrayList<>();
+        while (points.size() < maxCount) {
+            int newestType = -1;
+            for (int type = 0; type < snapshots.length; type++) {
+                if (positions[type] >= 0 && (newestType == -1 || snapshots[type].timesMillis[positions[type]]
+                        > snapshots[newestType].timesMillis[positions[newestType]])) {
+                    newestType = type;
+                }
+            }
+            if (newestType == -1) {
+                break;
+            }
+            long time = snapshots[newestType].timesMillis[positions[newestType]];
+            float value = snapshots[newestType].values[positions[newestType]];
+            points.add(new DataPoint(value, newestType, time, DataPoint.NO_DEVICE));
+            positions[newestType]--;
+        }
+        Collections.reverse(points);
+        return points;
+    }
+
+    /**
+     * 创建一个只读视图，调用方可保存复用
+     */
+    public View newView() {
+        return new View(this);
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // 最新采样的数值，窗口为空时返回NaN
+    public float getLatestValue() {
+        long stamp = lock.readLock();
+        try {
+            return size == 0 ? Float.NaN : values[(head + size - 1) % values.length];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // 最新采样的时间，窗口为空时返回0
+    public long getLatestTimeMillis() {
+        long stamp = lock.readLock();
+        try {
+            return size == 0 ? 0 : times[(head + size - 1) % times.length];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 复制窗口内的全部采样
+     */
+    public Snapshot snapshot() {
+        return snapshotSince(Long.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 复制采样时间不早于sinceMillis的采样，最多maxCount个（取最新的）
+     */
+    public Snapshot snapshotSince(long sinceMillis, int maxCount) {
+        long stamp = lock.readLock();
+        try {
+            int start = size - Math.min(size, maxCount);
+            int first = firstIndexAtOrAfter(sinceMillis);
+            start = Math.max(start, first);
+            int count = size - start;
+
+            long[] outTimes = new long[count];
+            float[] outValues = new float[count];
+            copy(start, outTimes, outValues, 0, count);
+            return new Snapshot(outTimes, outValues, count);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 把最新的采样复制到调用方提供的数组（可复用，避免分配）
+     * @return 实际复制的采样数
+     */
+    public int copyLatest(long[] outTimes, float[] outValues) {
+        long stamp = lock.readLock();
+        try {
+            int count = Math.min(size, Math.min(outTimes.length, outValues.length));
+            copy(size - count, outTimes, outValues, 0, count);
+            return count;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 把最新的采样批量写入缓冲区（例如共享内存），从缓冲区当前位置开始，最多写满剩余空间
+     * @return 实际写入的采样数
+     */
+    public int copyLatest(LongBuffer outTimes, FloatBuffer outValues) {
+        long stamp = lock.readLock();
+        try {
+            int count = Math.min(size, Math.min(outTimes.remaining(), outValues.remaining()));
+            if (count == 0) {
+                return 0;
+            }
+            int physical = (head + size - count) % times.length;
+            int firstPart = Math.min(count, times.length - physical);
+            outTimes.put(times, physical, firstPart);
+            outValues.put(values, physical, firstPart);
+            if (firstPart < count) {
+                outTimes.put(times, 0, count - firstPart);
+                outValues.put(values, 0, count - firstPart);
+            }
+            return count;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            head = 0;
+            size = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // 淘汰早于cutoff的采样
+    private void evictBefore(long cutoff) {
+        while (size > 0 && times[head] < cutoff) {
+            head = (head + 1) % times.length;
+            size--;
+        }
+    }
+
+    // 二分查找第一个时间不早于sinceMillis的逻辑位置（窗口内时间有序）
+    private int firstIndexAtOrAfter(long sinceMillis) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[(head + mid) % times.length] < sinceMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // 从逻辑位置start开始复制count个采样，最多分两段
+    private void copy(int start, long[] outTimes, float[] outValues, int outOffset, int count) {
+        if (count <= 0) {
+            return;
+        }
+        int physical = (head + start) % times.length;
+        int firstPart = Math.min(count, times.length - physical);
+        System.arraycopy(times, physical, outTimes, outOffset, firstPart);
+        System.arraycopy(values, physical, outValues, outOffset, firstPart);
+        if (firstPart < count) {
+            System.arraycopy(times, 0, outTimes, outOffset + firstPart, count - firstPart);
+            System.arraycopy(values, 0, outValues, outOffset + firstPart, count - firstPart);
+        }
+    }
+
+    // 扩容并把环形内容展开到新数组开头
+    private void grow() {
+        int newCapacity = Math.min(maxSamples, times.length * 2);
+        long[] newTimes = new long[newCapacity];
+        float[] newValues = new float[newCapacity];
+        copy(0, newTimes, newValues, 0, size);
+        times = newTimes;
+        values = newValues;
+        head = 0;
+    }
+}
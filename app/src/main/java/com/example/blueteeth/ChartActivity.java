@@ -1,14 +1,9 @@
 package com.example.blueteeth;
 
-import android.content.ComponentName;
-import android.content.Context;
-import android.content.Intent;
-import android.content.ServiceConnection;
 import android.graphics.Color;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.IBinder;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.AdapterView;
@@ -21,6 +16,7 @@ import android.util.Log;
 
 import androidx.annotation.RequiresApi;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Lifecycle;
 
 import com.github.mikephil.charting.charts.BarChart;
 import com.github.mikephil.charting.charts.LineChart;
@@ -44,6 +40,7 @@ import com.github.mikephil.charting.interfaces.datasets.IBarDataSet;
 import com.github.mikephil.charting.utils.ColorTemplate;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -55,17 +52,31 @@ public class ChartActivity extends AppCompatActivity {
     private static final int CHART_TYPE_LINE = 0;
     private static final int CHART_TYPE_BAR = 1;
     private static final int CHART_TYPE_PIE = 2;
+    private static final int CHART_TYPE_OVERLAY = 3;
+    private static final int CHART_TYPE_TRACE = 4;
+    // 折线图和叠加图每个通道的桶数，每桶最多两个点；约等于图表宽度的像素数，再多也画不出差别
+    private static final int CHART_BUCKETS = 300;
 
     private LineChart lineChart;
     private BarChart barChart;
     private PieChart pieChart;
+    private TraceView traceView; // 实时波形，逐帧直接读取实时窗口，不经过刷新和MPAndroidChart
     private Button refreshButton;
     private Button backButton;
     private Spinner chartTypeSpinner;
     private TextView analysisTextView;
 
-    private ArrayList<DataPoint> dataPoints = new ArrayList<>();
+    private ChannelWindow.View liveView; // 氧浓度通道实时窗口的只读视图，直接读取服务的缓冲区
+    // 叠加图：每个通道一个视图和一个降采样器，按DataPoint.TYPE_*下标
+    private final ChannelWindow.View[] channelViews = new ChannelWindow.View[DataPoint.TYPE_COUNT];
+    private final MinMaxDownsampler[] downsamplers = new MinMaxDownsampler[DataPoint.TYPE_COUNT];
+    // 折线图：氧浓度窗口降采样后再生成Entry，10分钟窗口内的数千到数万个采样不再逐点绘制
+    private final MinMaxDownsampler lineSamples = new MinMaxDownsampler(CHART_BUCKETS);
+    // 读取时只把氧浓度窗口复制到可复用的数组，读取结束后再从副本重建图表；
+    // 读取期间有新采样时视图会重新调用，重复的只是这次复制，不会重复修改界面
+    private final ChannelWindow.SampleCopy chartSamples = new ChannelWindow.SampleCopy();
     private int currentChartType = CHART_TYPE_LINE;
+    private final TimeAxis timeAxis = new TimeAxis(); // 折线图X轴：真实时间（秒）及其标签
     
     // 自动刷新相关
     private Handler autoRefreshHandler = new Handler();
@@ -73,28 +84,42 @@ public class ChartActivity extends AppCompatActivity {
     private static final int AUTO_REFRESH_INTERVAL = 10000; // 10秒自动刷新一次
     
     // 蓝牙服务相关
-    private BluetoothService bluetoothService;
+    private IngestConnection ingestConnection; // 单进程或多进程模式下与采集服务的连接
     private boolean isServiceBound = false;
+    private boolean isSubscribed = false; // 是否已向服务订阅数据（影响下位机采样频率）
 
     // 蓝牙服务连接
-    private final ServiceConnection serviceConnection = new ServiceConnection() {
+    private final IngestConnection.Listener connectionListener = new IngestConnection.Listener() {
         @Override
-        public void onServiceConnected(ComponentName name, IBinder service) {
-            BluetoothService.LocalBinder binder = (BluetoothService.LocalBinder) service;
-            bluetoothService = binder.getService();
+        public void onConnected() {
             isServiceBound = true;
+            for (int type = 0; type < DataPoint.TYPE_COUNT; type++) {
+                channelViews[type] = ingestConnection.getChannelView(type);
+            }
+            liveView = channelViews[DataPoint.TYPE_PERCENTAGE];
+            // 波形使用独立的视图对象：它在绘制时读取，与图表刷新时的读取互不影响
+            traceView.setSource(ingestConnection.getChannelView(DataPoint.TYPE_PERCENTAGE));
             
             // 服务连接后，立即更新图表数据
             loadDataFromService();
             
             // 启动自动刷新
             startAutoRefresh();
+
+            // 界面可见时订阅数据；在后台完成绑定时不订阅，等onStart再订阅，
+            // 否则onStop已经执行过，这次订阅不会被取消
+            if (getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+                subscribeToService();
+            }
         }
 
         @Override
-        public void onServiceDisconnected(ComponentName name) {
-            bluetoothService = null;
+        public void onDisconnected() {
+            liveView = null;
+            Arrays.fill(channelViews, null);
+            traceView.setSource(null);
             isServiceBound = false;
+            isSubscribed = false;
             
             // 停止自动刷新
             stopAutoRefresh();
@@ -117,6 +142,8 @@ public class ChartActivity extends AppCompatActivity {
         lineChart = findViewById(R.id.line_chart);
         barChart = findViewById(R.id.bar_chart);
         pieChart = findViewById(R.id.pie_chart);
+        traceView = findViewById(R.id.trace_view);
+        traceView.setTraceColor(getResources().getColor(R.color.chart_red));
         refreshButton = findViewById(R.id.btn_refresh);
         backButton = findViewById(R.id.btn_back);
         chartTypeSpinner = findViewById(R.id.spinner_chart_type);
@@ -134,8 +161,9 @@ public class ChartActivity extends AppCompatActivity {
         showChart(currentChartType);
 
         // 绑定蓝牙服务
-        Intent serviceIntent = new Intent(this, BluetoothService.class);
-        bindService(serviceIntent, serviceConnection, Context.BIND_AUTO_CREATE);
+        // 图表只读取实时窗口，不接收服务消息
+        ingestConnection = new IngestConnection(this, null, connectionListener);
+        ingestConnection.bind();
 
         // 按钮点击事件
         refreshButton.setOnClickListener(v -> {
@@ -150,8 +178,7 @@ public class ChartActivity extends AppCompatActivity {
             clearChartsWithAnimation();
 
             // 从服务加载最新数据
-            if (isServiceBound && bluetoothService != null) {
-                dataPoints = bluetoothService.getDataPoints();
+            if (isServiceBound && ingestConnection != null) {
                 updateChartData();
                 refreshButton.setEnabled(true);
                 refreshButton.setText(R.string.refresh);
@@ -171,8 +198,7 @@ public class ChartActivity extends AppCompatActivity {
     
     // 从服务加载数据
     private void loadDataFromService() {
-        if (isServiceBound && bluetoothService != null) {
-            dataPoints = bluetoothService.getDataPoints();
+        if (isServiceBound && ingestConnection != null) {
             updateChartData();
         } else {
             Log.w(TAG, "无法从蓝牙服务获取数据，服务未绑定");
@@ -184,7 +210,7 @@ public class ChartActivity extends AppCompatActivity {
         autoRefreshRunnable = new Runnable() {
             @Override
             public void run() {
-                if (isServiceBound && bluetoothService != null) {
+                if (isServiceBound && ingestConnection != null) {
                     // 更新数据
                     loadDataFromService();
                     Log.d(TAG, "自动刷新图表数据");
@@ -205,11 +231,38 @@ public class ChartActivity extends AppCompatActivity {
         }
     }
 
+    // 向服务订阅数据，服务据此调整下位机采样频率
+    private void subscribeToService() {
+        if (!isSubscribed && isServiceBound && ingestConnection != null) {
+            ingestConnection.addSubscriber();
+            isSubscribed = true;
+        }
+    }
+
+    private void unsubscribeFromService() {
+        if (isSubscribed && isServiceBound && ingestConnection != null) {
+            ingestConnection.removeSubscriber();
+        }
+        isSubscribed = false;
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        subscribeToService();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        unsubscribeFromService();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
         // 恢复时刷新数据并启动自动刷新
-        if (isServiceBound && bluetoothService != null) {
+        if (isServiceBound && ingestConnection != null) {
             loadDataFromService();
             startAutoRefresh();
         }
@@ -230,10 +283,8 @@ public class ChartActivity extends AppCompatActivity {
         stopAutoRefresh();
 
         // 解绑服务
-        if (isServiceBound) {
-            unbindService(serviceConnection);
-            isServiceBound = false;
-        }
+        ingestConnection.unbind();
+        isServiceBound = false;
     }
 
     private void setupChartTypeSpinner() {
@@ -262,10 +313,12 @@ public class ChartActivity extends AppCompatActivity {
         lineChart.setVisibility(View.GONE);
         barChart.setVisibility(View.GONE);
         pieChart.setVisibility(View.GONE);
+        traceView.setVisibility(View.GONE);
 
         // 显示选中的图表
         switch (chartType) {
             case CHART_TYPE_LINE:
+            case CHART_TYPE_OVERLAY:
                 lineChart.setVisibility(View.VISIBLE);
                 break;
             case CHART_TYPE_BAR:
@@ -274,6 +327,9 @@ public class ChartActivity extends AppCompatActivity {
             case CHART_TYPE_PIE:
                 pieChart.setVisibility(View.VISIBLE);
                 break;
+            case CHART_TYPE_TRACE:
+                traceView.setVisibility(View.VISIBLE);
+                break;
         }
     }
 
@@ -293,9 +349,11 @@ public class ChartActivity extends AppCompatActivity {
         // X轴配置
         XAxis xAxis = lineChart.getXAxis();
         xAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
-        xAxis.setGranularity(1f);
+        xAxis.setGranularity(1f); // X值以秒为单位，刻度至少相隔1秒
         xAxis.setDrawGridLines(true);
         xAxis.setLabelCount(5, true); // 减少标签数量，避免拥挤
+        xAxis.setValueFormatter(timeAxis);
+        xAxis.setAvoidFirstLastClipping(true); // 首尾标签不超出图表边缘
 
         // Y轴配置
         YAxis leftAxis = lineChart.getAxisLeft();
@@ -404,25 +462,36 @@ public class ChartActivity extends AppCompatActivity {
     }
 
     private void updateChartData() {
-        if (dataPoints == null || dataPoints.isEmpty()) {
+        if (liveView == null) {
             lineChart.setNoDataText("暂无数据");
             barChart.setNoDataText("暂无数据");
             pieChart.setNoDataText("暂无数据");
             return;
         }
+        // 叠加图在读取氧浓度视图之外分别读取各通道，数据分析仍只针对氧浓度
+        if (currentChartType == CHART_TYPE_OVERLAY) {
+            updateOverlayChart();
+        }
+        if (currentChartType == CHART_TYPE_LINE) {
+            liveView.read(lineSamples);
+        }
+        liveView.read(chartSamples);
+        renderCharts(chartSamples);
+    }
 
-        // 只筛选氧浓度数据
-        List<DataPoint> percentageDataPoints = new ArrayList<>();
-        for (DataPoint point : dataPoints) {
-            if (point.getType() == DataPoint.TYPE_PERCENTAGE) {
-                percentageDataPoints.add(point);
-            }
+    // 视图只包含氧浓度通道的数据，无需再按类型筛选
+    private void renderCharts(ChannelWindow.Samples percentageDataPoints) {
+        if (percentageDataPoints.isEmpty()) {
+            lineChart.setNoDataText("暂无数据");
+            barChart.setNoDataText("暂无数据");
+            pieChart.setNoDataText("暂无数据");
+            return;
         }
 
         // 根据当前图表类型更新数据
         switch (currentChartType) {
             case CHART_TYPE_LINE:
-                updateLineChart(percentageDataPoints);
+                updateLineChart(lineSamples);
                 break;
             case CHART_TYPE_BAR:
                 updateBarChart(percentageDataPoints);
@@ -436,18 +505,25 @@ public class ChartActivity extends AppCompatActivity {
         updateAnalysisText(percentageDataPoints);
     }
 
-    private void updateLineChart(List<DataPoint> percentageDataPoints) {
+    // 折线图只画降采样后的点，柱状图、饼图和数据分析仍使用完整的副本
+    private void updateLineChart(MinMaxDownsampler percentageDataPoints) {
         // 清除旧数据
         lineChart.clear();
+        lineChart.getDescription().setText("氧浓度数据曲线图");
+        lineChart.getAxisRight().setEnabled(false);
 
         // 创建多个数据集
         List<LineDataSet> dataSets = new ArrayList<>();
 
-        // 只添加氧浓度数据集
+        // 只添加氧浓度数据集；没有数据到达的空白段把曲线分成多段，每段一个数据集
         if (!percentageDataPoints.isEmpty()) {
-            LineDataSet percentageDataSet = createLineDataSet(percentageDataPoints, "氧浓度(%)",
-                    getResources().getColor(R.color.chart_red), 0);
-            dataSets.add(percentageDataSet);
+            timeAxis.ensureRange(percentageDataPoints.timeAt(0),
+                    percentageDataPoints.timeAt(percentageDataPoints.size() - 1));
+            int color = getResources().getColor(R.color.chart_red);
+            for (int s = 0; s < percentageDataPoints.getSegmentCount(); s++) {
+                dataSets.add(createLineDataSet(percentageDataPoints, percentageDataPoints.segmentStart(s),
+                        percentageDataPoints.segmentEnd(s), s == 0 ? "氧浓度(%)" : null, color));
+            }
         }
 
         // 如果有数据集，设置到图表
@@ -464,39 +540,24 @@ public class ChartActivity extends AppCompatActivity {
         }
     }
 
-    // 创建折线数据集的辅助方法
-    private LineDataSet createLineDataSet(List<DataPoint> dataPoints, String label, int color, int index) {
-        List<Entry> entries = new ArrayList<>();
-        List<String> xLabels = new ArrayList<>();
+    // 创建折线数据集的辅助方法：视图中[from, to)一段连续的数据，X为真实时间；label为null时不在图例中重复显示
+    private LineDataSet createLineDataSet(MinMaxDownsampler dataPoints, int from, int to, String label, int color) {
+        List<Entry> entries = new ArrayList<>(to - from);
 
-        // 填充数据
-        for (int i = 0; i < dataPoints.size(); i++) {
-            DataPoint point = dataPoints.get(i);
-            xLabels.add(point.getTimestamp());
-            entries.add(new Entry(i, point.getValue()));
-        }
-
-        // 设置X轴标签
-        if (!xLabels.isEmpty()) {
-            XAxis xAxis = lineChart.getXAxis();
-            // 移除第一个标签以避免与Y轴冲突
-            if (xLabels.size() > 1) {
-                xLabels.set(0, "");
-            }
-
-            xAxis.setValueFormatter(new IndexAxisValueFormatter(xLabels));
-            // 根据数据点数量动态调整标签数量
-            int labelCount = Math.min(5, xLabels.size());
-            xAxis.setLabelCount(labelCount, true);
+        // 填充数据，标签由timeAxis按X值生成，不再逐点格式化
+        for (int i = from; i < to; i++) {
+            entries.add(new Entry(timeAxis.toX(dataPoints.timeAt(i)), dataPoints.valueAt(i)));
         }
 
         // 创建数据集
         LineDataSet dataSet = new LineDataSet(entries, label);
+        if (label == null) {
+            dataSet.setForm(Legend.LegendForm.NONE);
+        }
         dataSet.setColor(color);
-        dataSet.setCircleColor(color);
         dataSet.setLineWidth(2f);
-        dataSet.setCircleRadius(3f);
-        dataSet.setDrawCircleHole(false);
+        // 降采样后的点不是真实的采样时刻，不再逐点画圆
+        dataSet.setDrawCircles(false);
         dataSet.setValueTextSize(9f);
         dataSet.setDrawFilled(true);
         dataSet.setFillAlpha(50);
@@ -504,13 +565,103 @@ public class ChartActivity extends AppCompatActivity {
         dataSet.setHighlightEnabled(true);
         // 不显示每个点的数值
         dataSet.setDrawValues(false);
-        dataSet.setMode(LineDataSet.Mode.CUBIC_BEZIER); // 使用曲线而不是直线
+        // 最小/最大值点需要按原样连线，曲线插值会冲过极值
+        dataSet.setMode(LineDataSet.Mode.LINEAR);
         dataSet.setAxisDependency(YAxis.AxisDependency.LEFT);
 
         return dataSet;
     }
 
-    private void updateBarChart(List<DataPoint> percentageDataPoints) {
+    /**
+     * 叠加图：氧浓度、电压和ADC值画在同一条时间轴上。氧浓度用左Y轴，电压用右Y轴；
+     * 图表只有两条Y轴，ADC值按自身的范围线性映射到右轴的范围上画出，真实范围显示在图例中。
+     * 每个通道先各自降采样，绘制的点数固定，不随通道数和采样率成倍增加
+     */
+    private void updateOverlayChart() {
+        long fromMillis = Long.MAX_VALUE;
+        long toMillis = Long.MIN_VALUE;
+        for (int type = 0; type < DataPoint.TYPE_COUNT; type++) {
+            MinMaxDownsampler downsampler = downsamplers[type];
+            if (downsampler == null) {
+                downsampler = new MinMaxDownsampler(CHART_BUCKETS);
+                downsamplers[type] = downsampler;
+            }
+            if (channelViews[type] == null) {
+                downsampler.clear();
+                continue;
+            }
+            channelViews[type].read(downsampler);
+            if (!downsampler.isEmpty()) {
+                fromMillis = Math.min(fromMillis, downsampler.timeAt(0));
+                toMillis = Math.max(toMillis, downsampler.timeAt(downsampler.size() - 1));
+            }
+        }
+
+        lineChart.clear();
+        lineChart.getDescription().setText("多通道叠加");
+        if (fromMillis > toMillis) {
+            lineChart.setNoDataText("暂无数据");
+            return;
+        }
+        timeAxis.ensureRange(fromMillis, toMillis);
+
+        MinMaxDownsampler percentage = downsamplers[DataPoint.TYPE_PERCENTAGE];
+        MinMaxDownsampler voltage = downsamplers[DataPoint.TYPE_VOLTAGE];
+        MinMaxDownsampler raw = downsamplers[DataPoint.TYPE_RAW];
+        List<LineDataSet> dataSets = new ArrayList<>();
+        addOverlaySeries(dataSets, percentage, "氧浓度(%)", getResources().getColor(R.color.chart_red),
+                YAxis.AxisDependency.LEFT, 1f, 0f);
+        addOverlaySeries(dataSets, voltage, "电压(V)", getResources().getColor(R.color.chart_blue),
+                YAxis.AxisDependency.RIGHT, 1f, 0f);
+
+        // ADC值映射到电压的范围；没有电压数据时直接使用右轴
+        float scale = 1f;
+        float offset = 0f;
+        String rawLabel = "ADC值";
+        if (!raw.isEmpty() && !voltage.isEmpty()) {
+            float rawRange = raw.getMaxValue() - raw.getMinValue();
+            float voltageRange = voltage.getMaxValue() - voltage.getMinValue();
+            scale = rawRange > 0 ? voltageRange / rawRange : 1f;
+            offset = voltage.getMinValue() - raw.getMinValue() * scale;
+            rawLabel = String.format("ADC值(%.0f-%.0f)", raw.getMinValue(), raw.getMaxValue());
+        }
+        addOverlaySeries(dataSets, raw, rawLabel, getResources().getColor(R.color.chart_green),
+                YAxis.AxisDependency.RIGHT, scale, offset);
+
+        lineChart.getAxisRight().setEnabled(!voltage.isEmpty() || !raw.isEmpty());
+        lineChart.getAxisLeft().resetAxisMinimum();
+        lineChart.getAxisLeft().resetAxisMaximum();
+        lineChart.setData(new LineData(dataSets.toArray(new LineDataSet[0])));
+        lineChart.invalidate();
+    }
+
+    // 降采样后的一个通道：每个连续段一个数据集，只有第一段显示在图例中；Y值按value * scale + offset换算
+    private void addOverlaySeries(List<LineDataSet> dataSets, MinMaxDownsampler series, String label, int color,
+                                  YAxis.AxisDependency axis, float scale, float offset) {
+        for (int s = 0; s < series.getSegmentCount(); s++) {
+            int from = series.segmentStart(s);
+            int to = series.segmentEnd(s);
+            List<Entry> entries = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                entries.add(new Entry(timeAxis.toX(series.timeAt(i)), series.valueAt(i) * scale + offset));
+            }
+            LineDataSet dataSet = new LineDataSet(entries, s == 0 ? label : null);
+            if (s > 0) {
+                dataSet.setForm(Legend.LegendForm.NONE);
+            }
+            dataSet.setColor(color);
+            dataSet.setLineWidth(1.5f);
+            dataSet.setDrawCircles(false);
+            dataSet.setDrawValues(false);
+            dataSet.setHighlightEnabled(false);
+            // 最小/最大值点需要按原样连线，曲线插值会冲过极值
+            dataSet.setMode(LineDataSet.Mode.LINEAR);
+            dataSet.setAxisDependency(axis);
+            dataSets.add(dataSet);
+        }
+    }
+
+    private void updateBarChart(ChannelWindow.Samples percentageDataPoints) {
         if (percentageDataPoints.isEmpty()) {
             barChart.setNoDataText("暂无氧浓度数据");
             return;
@@ -525,8 +676,8 @@ public class ChartActivity extends AppCompatActivity {
         float maxValue = Float.MIN_VALUE;
 
         // 找出最小值和最大值
-        for (DataPoint point : percentageDataPoints) {
-            float value = point.getValue();
+        for (int i = 0; i < percentageDataPoints.size(); i++) {
+            float value = percentageDataPoints.valueAt(i);
             minValue = Math.min(minValue, value);
             maxValue = Math.max(maxValue, value);
         }
@@ -541,8 +692,8 @@ public class ChartActivity extends AppCompatActivity {
         }
 
         // 统计每个范围的数据点数量
-        for (DataPoint point : percentageDataPoints) {
-            float value = point.getValue();
+        for (int p = 0; p < percentageDataPoints.size(); p++) {
+            float value = percentageDataPoints.valueAt(p);
             for (int i = 0; i < 5; i++) {
                 float lowerBound = minValue + i * range;
                 float upperBound = lowerBound + range;
@@ -581,7 +732,7 @@ public class ChartActivity extends AppCompatActivity {
         barChart.invalidate();
     }
 
-    private void updatePieChart(List<DataPoint> percentageDataPoints) {
+    private void updatePieChart(ChannelWindow.Samples percentageDataPoints) {
         if (percentageDataPoints.isEmpty()) {
             pieChart.setNoDataText("暂无氧浓度数据");
             return;
@@ -597,9 +748,9 @@ public class ChartActivity extends AppCompatActivity {
         int normalHigh = 0;        // 20-23.5%
         int aboveNormal = 0;       // >23.5%
 
-        for (DataPoint point : percentageDataPoints) {
-            float value = point.getValue();
-            if (value < 16.0f) {
+        for (int i = 0; i < percentageDataPoints.size(); i++) {
+            float value = percentageDataPoints.valueAt(i);
+            if (value < AlarmRule.DEFAULT_LOW_OXYGEN_THRESHOLD) {
                 belowThreshold++;
             } else if (value < 20.0f) {
                 normalLow++;
@@ -638,7 +789,7 @@ public class ChartActivity extends AppCompatActivity {
         pieChart.invalidate();
     }
 
-    private void updateAnalysisText(List<DataPoint> percentageDataPoints) {
+    private void updateAnalysisText(ChannelWindow.Samples percentageDataPoints) {
         if (percentageDataPoints.isEmpty()) {
             analysisTextView.setText("暂无氧浓度数据可供分析");
             return;
@@ -648,25 +799,25 @@ public class ChartActivity extends AppCompatActivity {
         float sum = 0;
         float min = Float.MAX_VALUE;
         float max = Float.MIN_VALUE;
-        DataPoint minPoint = null;
-        DataPoint maxPoint = null;
+        long minTime = 0;
+        long maxTime = 0;
         int belowThreshold = 0;
 
-        for (DataPoint point : percentageDataPoints) {
-            float value = point.getValue();
+        for (int i = 0; i < percentageDataPoints.size(); i++) {
+            float value = percentageDataPoints.valueAt(i);
             sum += value;
 
             if (value < min) {
                 min = value;
-                minPoint = point;
+                minTime = percentageDataPoints.timeAt(i);
             }
 
             if (value > max) {
                 max = value;
-                maxPoint = point;
+                maxTime = percentageDataPoints.timeAt(i);
             }
 
-            if (value < 16.0f) {
+            if (value < AlarmRule.DEFAULT_LOW_OXYGEN_THRESHOLD) {
                 belowThreshold++;
             }
         }
@@ -677,8 +828,8 @@ public class ChartActivity extends AppCompatActivity {
         // 构建分析文本
         StringBuilder analysis = new StringBuilder();
         analysis.append("• 平均氧浓度: ").append(String.format("%.2f%%", avg)).append("\n");
-        analysis.append("• 最低氧浓度: ").append(String.format("%.2f%% (时间: %s)", min, minPoint.getTimestamp())).append("\n");
-        analysis.append("• 最高氧浓度: ").append(String.format("%.2f%% (时间: %s)", max, maxPoint.getTimestamp())).append("\n");
+        analysis.append("• 最低氧浓度: ").append(String.format("%.2f%% (时间: %s)", min, TimeFormatter.getDefault().formatTime(minTime))).append("\n");
+        analysis.append("• 最高氧浓度: ").append(String.format("%.2f%% (时间: %s)", max, TimeFormatter.getDefault().formatTime(maxTime))).append("\n");
         analysis.append("• 低氧(<16%)比例: ").append(String.format("%.1f%%", belowPercent)).append("\n");
         analysis.append("• 数据点总数: ").append(percentageDataPoints.size());
 
@@ -690,12 +841,12 @@ public class ChartActivity extends AppCompatActivity {
             // 计算前5个点和后5个点的平均值
             int count = Math.min(5, percentageDataPoints.size() / 3);
             for (int i = 0; i < count; i++) {
-                firstAvg += percentageDataPoints.get(i).getValue();
+                firstAvg += percentageDataPoints.valueAt(i);
             }
             firstAvg /= count;
 
             for (int i = percentageDataPoints.size() - count; i < percentageDataPoints.size(); i++) {
-                lastAvg += percentageDataPoints.get(i).getValue();
+                lastAvg += percentageDataPoints.valueAt(i);
             }
             lastAvg /= count;
 
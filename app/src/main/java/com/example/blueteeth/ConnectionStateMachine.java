@@ -0,0 +1,167 @@
+package com.example.blueteeth;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 连接状态机：连接状态、测量标志和连接代数打包在一个AtomicLong中，
+ * 所有状态转换都通过CAS原子完成，读取无锁。
+ *
+ * 每次发起连接或断开都会产生新的代数，连接线程和读取线程回调时带上自己的代数，
+ * 已被取消的旧线程的回调因代数不匹配而被拒绝，不会覆盖新连接的状态。
+ */
+public class ConnectionStateMachine {
+    // 连接状态（与 BluetoothService.STATE_* 一致）
+    public static final int STATE_DISCONNECTED = 0;
+    public static final int STATE_CONNECTING = 1;
+    public static final int STATE_CONNECTED = 2;
+    public static final int STATE_CONNECTION_FAILED = 3;
+
+    // 打包格式：bit0-3 状态，bit4 测量标志，bit8以上 代数
+    private static final long STATE_MASK = 0x0F;
+    private static final long MEASURING_FLAG = 0x10;
+    private static final int GENERATION_SHIFT = 8;
+
+    /**
+     * 状态转换回调，在执行转换的线程中调用
+     */
+    public interface Listener {
+        void onTransition(int oldState, int newState, boolean measuring);
+    }
+
+    private final AtomicLong packed = new AtomicLong(pack(0, STATE_DISCONNECTED, false));
+    private volatile Listener listener;
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public int getState() {
+        return stateOf(packed.get());
+    }
+
+    public boolean isMeasuring() {
+        return measuringOf(packed.get());
+    }
+
+    public long getGeneration() {
+        return generationOf(packed.get());
+    }
+
+    // 判断某个代数是否仍是当前连接
+    public boolean isCurrent(long generation) {
+        return generationOf(packed.get()) == generation;
+    }
+
+    /**
+     * 发起新连接：任意状态 -> 正在连接，产生新的代数并清除测量标志
+     * @return 本次连接的代数
+     */
+    public long beginConnect() {
+        while (true) {
+            long current = packed.get();
+            long generation = generationOf(current) + 1;
+            long next = pack(generation, STATE_CONNECTING, false);
+            if (packed.compareAndSet(current, next)) {
+                notifyTransition(current, next);
+                return generation;
+            }
+        }
+    }
+
+    // 正在连接 -> 已连接（仅当代数匹配）
+    public boolean onConnected(long generation) {
+        return transitionIfCurrent(generation, STATE_CONNECTING, STATE_CONNECTED);
+    }
+
+    // 正在连接 -> 连接失败（仅当代数匹配）
+    public boolean onConnectFailed(long generation) {
+        return transitionIfCurrent(generation, STATE_CONNECTING, STATE_CONNECTION_FAILED);
+    }
+
+    // 已连接 -> 断开连接（仅当代数匹配，例如读取线程发现连接断开）
+    public boolean onConnectionLost(long generation) {
+        return transitionIfCurrent(generation, STATE_CONNECTED, STATE_DISCONNECTED);
+    }
+
+    /**
+     * 主动断开：任意状态 -> 断开连接，产生新的代数使所有旧线程的回调失效
+     * @return 状态是否发生变化
+     */
+    public boolean disconnect() {
+        while (true) {
+            long current = packed.get();
+            long next = pack(generationOf(current) + 1, STATE_DISCONNECTED, false);
+            if (packed.compareAndSet(current, next)) {
+                notifyTransition(current, next);
+                return stateOf(current) != STATE_DISCONNECTED;
+            }
+        }
+    }
+
+    // 开始测量，仅在已连接时有效
+    public boolean startMeasuring() {
+        while (true) {
+            long current = packed.get();
+            if (stateOf(current) != STATE_CONNECTED || measuringOf(current)) {
+                return false;
+            }
+            long next = current | MEASURING_FLAG;
+            if (packed.compareAndSet(current, next)) {
+                notifyTransition(current, next);
+                return true;
+            }
+        }
+    }
+
+    public boolean stopMeasuring() {
+        while (true) {
+            long current = packed.get();
+            if (!measuringOf(current)) {
+                return false;
+            }
+            long next = current & ~MEASURING_FLAG;
+            if (packed.compareAndSet(current, next)) {
+                notifyTransition(current, next);
+                return true;
+            }
+        }
+    }
+
+    // 离开已连接状态时测量标志随之清除
+    private boolean transitionIfCurrent(long generation, int from, int to) {
+        while (true) {
+            long current = packed.get();
+            if (generationOf(current) != generation || stateOf(current) != from) {
+                return false;
+            }
+            long next = pack(generation, to, to == STATE_CONNECTED && measuringOf(current));
+            if (packed.compareAndSet(current, next)) {
+                notifyTransition(current, next);
+                return true;
+            }
+        }
+    }
+
+    private void notifyTransition(long oldPacked, long newPacked) {
+        Listener l = listener;
+        if (l != null && oldPacked != newPacked) {
+            l.onTransition(stateOf(oldPacked), stateOf(newPacked), measuringOf(newPacked));
+        }
+    }
+
+    private static long pack(long generation, int state, boolean measuring) {
+        return (generation << GENERATION_SHIFT) | (measuring ? MEASURING_FLAG : 0) | state;
+    }
+
+    private static int stateOf(long value) {
+        return (int) (value & STATE_MASK);
+    }
+
+    private static boolean measuringOf(long value) {
+        return (value & MEASURING_FLAG) != 0;
+    }
+
+    private static long generationOf(long value) {
+        return value >>> GENERATION_SHIFT;
+    }
+}
@@ -3,23 +3,30 @@ package com.example.blueteeth;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import androidx.annotation.VisibleForTesting;
+
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Locale;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 数据库帮助类。数据库连接由单例共享，读取线程、写入线程和UI线程同时使用，
+ * 因此各方法不再在操作后关闭数据库，避免一个线程关闭另一个线程正在使用的连接
+ */
 public class DataDBHelper extends SQLiteOpenHelper {
     private static final String TAG = "DataDBHelper";
     
     // 数据库信息
     private static final String DATABASE_NAME = "data_points.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 6; // 2: 增加报警事件表；3: 数据点增加毫秒时间列和索引；4: 增加设备表、设备列和筛选索引；5: 增加异常段表；6: 增加删除标记表
 
     // 表名
     public static final String TABLE_DATA_POINTS = "data_points";
@@ -30,6 +37,8 @@ public class DataDBHelper extends SQLiteOpenHelper {
     public static final String COLUMN_DATETIME = "datetime"; // 存储完整日期时间
     public static final String COLUMN_VALUE = "value";
     public static final String COLUMN_TYPE = "type";
+    public static final String COLUMN_TIME_MS = "time_ms"; // 毫秒时间戳，用于按时间范围查询
+    public static final String COLUMN_DEVICE_ID = "device_id"; // 采集设备在设备表中的行号，0表示未知
 
     // 创建表SQL语句
     private static final String CREATE_TABLE_DATA_POINTS = "CREATE TABLE " + TABLE_DATA_POINTS + " ("
@@ -37,14 +46,191 @@ public class DataDBHelper extends SQLiteOpenHelper {
             + COLUMN_TIMESTAMP + " TEXT NOT NULL, "
             + COLUMN_DATETIME + " TEXT NOT NULL, "
             + COLUMN_VALUE + " REAL NOT NULL, "
-            + COLUMN_TYPE + " INTEGER NOT NULL);";
+            + COLUMN_TYPE + " INTEGER NOT NULL, "
+            + COLUMN_TIME_MS + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_DEVICE_ID + " INTEGER NOT NULL DEFAULT 0);";
+    private static final String CREATE_INDEX_DATA_POINTS_TIME = "CREATE INDEX IF NOT EXISTS idx_data_points_time ON "
+            + TABLE_DATA_POINTS + " (" + COLUMN_TIME_MS + ");";
+    private static final String CREATE_INDEX_DATA_POINTS_TYPE_TIME = "CREATE INDEX IF NOT EXISTS idx_data_points_type_time ON "
+            + TABLE_DATA_POINTS + " (" + COLUMN_TYPE + ", " + COLUMN_TIME_MS + ");";
+    // 按数值范围筛选（例如氧浓度低于16%）时，满足条件的行很少，按类型和数值定位最快
+    private static final String CREATE_INDEX_DATA_POINTS_TYPE_VALUE = "CREATE INDEX IF NOT EXISTS idx_data_points_type_value ON "
+            + TABLE_DATA_POINTS + " (" + COLUMN_TYPE + ", " + COLUMN_VALUE + ");";
+    private static final String CREATE_INDEX_DATA_POINTS_DEVICE_TIME = "CREATE INDEX IF NOT EXISTS idx_data_points_device_time ON "
+            + TABLE_DATA_POINTS + " (" + COLUMN_DEVICE_ID + ", " + COLUMN_TIME_MS + ");";
+
+    // 设备表：记录采集过数据的传感器，数据点通过行号引用
+    public static final String TABLE_DEVICES = "devices";
+    public static final String COLUMN_ADDRESS = "address";
+    public static final String COLUMN_NAME = "name";
+    private static final String CREATE_TABLE_DEVICES = "CREATE TABLE IF NOT EXISTS " + TABLE_DEVICES + " ("
+            + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + COLUMN_ADDRESS + " TEXT NOT NULL UNIQUE, "
+            + COLUMN_NAME + " TEXT);";
+
+    /**
+     * 设备表中的一个设备
+     */
+    public static class Device {
+        public final int id;
+        public final String address;
+        public final String name;
+
+        public Device(int id, String address, String name) {
+            this.id = id;
+            this.address = address;
+            this.name = name;
+        }
+    }
+
+    /**
+     * 数据库文件的页面统计，用于确认压缩效果：空闲页占比越高，文件中的空洞越多，范围扫描要跳过的页越多
+     */
+    public static class StorageStats {
+        public final long pageSize;
+        public final long pageCount;
+        public final long freelistCount; // 已删除数据留下的空闲页
+        public final int autoVacuum; // AUTO_VACUUM_*
+
+        public StorageStats(long pageSize, long pageCount, long freelistCount, int autoVacuum) {
+            this.pageSize = pageSize;
+            this.pageCount = pageCount;
+            this.freelistCount = freelistCount;
+            this.autoVacuum = autoVacuum;
+        }
+
+        public long fileBytes() {
+            return pageCount * pageSize;
+        }
+
+        public long freeBytes() {
+            return freelistCount * pageSize;
+        }
+
+        // 碎片率：空闲页占总页数的比例
+        public float fragmentation() {
+            return pageCount == 0 ? 0f : (float) freelistCount / pageCount;
+        }
+
+        @Override
+        public String toString() {
+            return "页大小 " + pageSize + "，总页数 " + pageCount + "，空闲页 " + freelistCount
+                    + String.format(" (%.1f%%)", fragmentation() * 100) + "，自动清理模式 " + autoVacuum;
+        }
+    }
+
+    // PRAGMA auto_vacuum的取值
+    public static final int AUTO_VACUUM_NONE = 0;
+    public static final int AUTO_VACUUM_FULL = 1;
+    public static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    // 查询数据点时只读取需要的列，列下标固定，不必逐行查找
+    private static final String[] DATA_POINT_PROJECTION = {COLUMN_TIMESTAMP, COLUMN_VALUE, COLUMN_TYPE, COLUMN_TIME_MS, COLUMN_ID,
+            COLUMN_DEVICE_ID};
+    private static final int PROJECTION_TIMESTAMP = 0;
+    private static final int PROJECTION_VALUE = 1;
+    private static final int PROJECTION_TYPE = 2;
+    private static final int PROJECTION_TIME_MS = 3;
+    private static final int PROJECTION_ID = 4;
+    private static final int PROJECTION_DEVICE_ID = 5;
+
+    // 预编译语句（首次使用时编译，随连接一直复用）
+    private static final String SQL_INSERT_DATA_POINT = "INSERT INTO " + TABLE_DATA_POINTS + " ("
+            + COLUMN_TIMESTAMP + ", " + COLUMN_DATETIME + ", " + COLUMN_VALUE + ", " + COLUMN_TYPE + ", "
+            + COLUMN_TIME_MS + ", " + COLUMN_DEVICE_ID + ") VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String SQL_COUNT = "SELECT COUNT(*) FROM " + TABLE_DATA_POINTS;
+    private static final String SQL_COUNT_BY_TYPE = SQL_COUNT + " WHERE " + COLUMN_TYPE + " = ?";
+    private static final int STATEMENT_INSERT = 0;
+    private static final int STATEMENT_COUNT = 1;
+    private static final int STATEMENT_COUNT_BY_TYPE = 2;
+    private static final String[] STATEMENT_SQL = {SQL_INSERT_DATA_POINT, SQL_COUNT, SQL_COUNT_BY_TYPE};
+    private final SQLiteStatement[] statements = new SQLiteStatement[STATEMENT_SQL.length]; // 使用时对语句本身加锁
+
+    // 报警事件表
+    public static final String TABLE_ALARM_EVENTS = "alarm_events";
+    public static final String COLUMN_RULE_ID = "rule_id";
+    public static final String COLUMN_RULE_NAME = "rule_name";
+    public static final String COLUMN_EVENT = "event";
+
+    private static final String CREATE_TABLE_ALARM_EVENTS = "CREATE TABLE " + TABLE_ALARM_EVENTS + " ("
+            + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + COLUMN_RULE_ID + " INTEGER NOT NULL, "
+            + COLUMN_RULE_NAME + " TEXT, "
+            + COLUMN_TYPE + " INTEGER NOT NULL, "
+            + COLUMN_EVENT + " INTEGER NOT NULL, "
+            + COLUMN_VALUE + " REAL NOT NULL, "
+            + COLUMN_TIME_MS + " INTEGER NOT NULL, "
+            + COLUMN_DATETIME + " TEXT NOT NULL);";
+    private static final String CREATE_INDEX_ALARM_EVENTS_TIME = "CREATE INDEX IF NOT EXISTS idx_alarm_events_time ON "
+            + TABLE_ALARM_EVENTS + " (" + COLUMN_TIME_MS + ");";
+    private static final String CREATE_INDEX_ALARM_EVENTS_RULE = "CREATE INDEX IF NOT EXISTS idx_alarm_events_rule ON "
+            + TABLE_ALARM_EVENTS + " (" + COLUMN_RULE_ID + ", " + COLUMN_TIME_MS + ");";
+    // 保留策略按类型定位最旧的报警事件
+    private static final String CREATE_INDEX_ALARM_EVENTS_TYPE_TIME = "CREATE INDEX IF NOT EXISTS idx_alarm_events_type_time ON "
+            + TABLE_ALARM_EVENTS + " (" + COLUMN_TYPE + ", " + COLUMN_TIME_MS + ");";
+
+    // 历史查询的起点按分钟对齐，同一分钟内的重复查询条件相同，可以命中缓存
+    private static final long HISTORY_QUERY_ALIGN_MILLIS = 60_000;
+
+    /**
+     * 数据点表的提交监听：每次成功提交后在写入线程上回调，
+     * watermark单调递增，[fromMillis, toMillis]是受影响数据的时间范围（闭区间）
+     */
+    public interface CommitListener {
+        void onCommit(long watermark, long fromMillis, long toMillis);
+    }
+
+    // 异常段表：采集时检测出的连续超出范围的采样段，界面可直接按段定位而不必扫描原始数据
+    public static final String TABLE_EPISODES = "episodes";
+    public static final String COLUMN_START_MS = "start_ms";
+    public static final String COLUMN_END_MS = "end_ms";
+    public static final String COLUMN_MIN_VALUE = "min_value";
+    public static final String COLUMN_MAX_VALUE = "max_value";
+    public static final String COLUMN_SAMPLE_COUNT = "sample_count";
+
+    private static final String CREATE_TABLE_EPISODES = "CREATE TABLE IF NOT EXISTS " + TABLE_EPISODES + " ("
+            + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + COLUMN_RULE_ID + " INTEGER NOT NULL, "
+            + COLUMN_RULE_NAME + " TEXT, "
+            + COLUMN_TYPE + " INTEGER NOT NULL, "
+            + COLUMN_DEVICE_ID + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_START_MS + " INTEGER NOT NULL, "
+            + COLUMN_END_MS + " INTEGER NOT NULL, "
+            + COLUMN_MIN_VALUE + " REAL NOT NULL, "
+            + COLUMN_MAX_VALUE + " REAL NOT NULL, "
+            + COLUMN_SAMPLE_COUNT + " INTEGER NOT NULL);";
+    private static final String CREATE_INDEX_EPISODES_START = "CREATE INDEX IF NOT EXISTS idx_episodes_start ON "
+            + TABLE_EPISODES + " (" + COLUMN_START_MS + ");";
+    private static final String CREATE_INDEX_EPISODES_TYPE_START = "CREATE INDEX IF NOT EXISTS idx_episodes_type_start ON "
+            + TABLE_EPISODES + " (" + COLUMN_TYPE + ", " + COLUMN_START_MS + ");";
+    // 保留策略按类型和结束时间定位最旧的异常段
+    private static final String CREATE_INDEX_EPISODES_TYPE_END = "CREATE INDEX IF NOT EXISTS idx_episodes_type_end ON "
+            + TABLE_EPISODES + " (" + COLUMN_TYPE + ", " + COLUMN_END_MS + ");";
+
+    // 保留策略各层级对应的表和判断新旧的时间列（下标为RetentionPolicy.TIER_*）；异常段按结束时间过期
+    private static final String[] TIER_TABLES = {TABLE_DATA_POINTS, TABLE_EPISODES, TABLE_ALARM_EVENTS};
+    private static final String[] TIER_TIME_COLUMNS = {COLUMN_TIME_MS, COLUMN_END_MS, COLUMN_TIME_MS};
+    private static final int RETENTION_DELETE_BATCH = 5000; // 每条删除语句最多删除的行数
+    private static final String[] EPISODE_PROJECTION = {COLUMN_ID, COLUMN_RULE_ID, COLUMN_RULE_NAME, COLUMN_TYPE,
+            COLUMN_DEVICE_ID, COLUMN_START_MS, COLUMN_END_MS, COLUMN_MIN_VALUE, COLUMN_MAX_VALUE, COLUMN_SAMPLE_COUNT};
+
+    // 删除标记表：保留策略和清空操作推进的标记（名称 → 数值，只增不减），保存在数据库中，
+    // 多进程模式下由:ingest进程删除的行，界面进程的增量读取也能据此裁剪
+    private static final String TABLE_DELETION_MARKS = "deletion_marks";
+    private static final String CREATE_TABLE_DELETION_MARKS = "CREATE TABLE IF NOT EXISTS " + TABLE_DELETION_MARKS + " ("
+            + COLUMN_NAME + " TEXT PRIMARY KEY, "
+            + COLUMN_VALUE + " INTEGER NOT NULL);";
+    private static final String MARK_CLEARED_THROUGH_ID = "cleared_through_id"; // 行号不大于此值的行已被清空
+    private static final String MARK_DELETED_BEFORE = "deleted_before_"; // 加类型编号：该类型早于此时间的行已被删除
+    private static final String SQL_ADVANCE_MARK = "INSERT OR REPLACE INTO " + TABLE_DELETION_MARKS
+            + " (" + COLUMN_NAME + ", " + COLUMN_VALUE + ") VALUES (?, MAX(?, IFNULL((SELECT " + COLUMN_VALUE
+            + " FROM " + TABLE_DELETION_MARKS + " WHERE " + COLUMN_NAME + " = ?), ?)))";
 
     // 单例模式
     private static DataDBHelper instance;
 
-    // 格式化日期
-    private SimpleDateFormat timestampFormat = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
-    private SimpleDateFormat datetimeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+    private final AtomicLong commitWatermark = new AtomicLong();
+    private final CopyOnWriteArrayList<CommitListener> commitListeners = new CopyOnWriteArrayList<>();
 
     public static synchronized DataDBHelper getInstance(Context context) {
         if (instance == null) {
@@ -57,16 +243,118 @@ public class DataDBHelper extends SQLiteOpenHelper {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
+    // 关闭数据库并丢弃单例，仅供测试在每个用例之间使用
+    @VisibleForTesting
+    static synchronized void resetInstance() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+    public void addCommitListener(CommitListener listener) {
+        commitListeners.addIfAbsent(listener);
+    }
+
+    public void removeCommitListener(CommitListener listener) {
+        commitListeners.remove(listener);
+    }
+
+    /**
+     * 当前提交水位。查询前读取，用于判断查询期间数据是否被修改
+     */
+    public long getCommitWatermark() {
+        return commitWatermark.get();
+    }
+
+    // 提交成功后推进水位并通知监听者
+    private void notifyCommit(long fromMillis, long toMillis) {
+        long watermark = commitWatermark.incrementAndGet();
+        for (CommitListener listener : commitListeners) {
+            listener.onCommit(watermark, fromMillis, toMillis);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        // 预编译语句属于当前连接，关闭后需要重新编译
+        for (int i = 0; i < statements.length; i++) {
+            if (statements[i] != null) {
+                statements[i].close();
+                statements[i] = null;
+            }
+        }
+        super.close();
+    }
+
+    private synchronized SQLiteStatement getCachedStatement(int which) {
+        if (statements[which] == null) {
+            statements[which] = getWritableDatabase().compileStatement(STATEMENT_SQL[which]);
+        }
+        return statements[which];
+    }
+
+    // 新建的数据库在建表前设置为增量自动清理；已有的数据库要在压缩时执行一次完整VACUUM才会切换
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(CREATE_TABLE_DATA_POINTS);
+        db.execSQL(CREATE_INDEX_DATA_POINTS_TIME);
+        db.execSQL(CREATE_INDEX_DATA_POINTS_TYPE_TIME);
+        db.execSQL(CREATE_INDEX_DATA_POINTS_TYPE_VALUE);
+        db.execSQL(CREATE_INDEX_DATA_POINTS_DEVICE_TIME);
+        db.execSQL(CREATE_TABLE_DEVICES);
+        createAlarmEventsTable(db);
+        createEpisodesTable(db);
+        db.execSQL(CREATE_TABLE_DELETION_MARKS);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // 升级数据库的逻辑，目前简单处理：删除旧表，创建新表
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_DATA_POINTS);
-        onCreate(db);
+        // 逐版本增量升级，保留已有的测量数据
+        if (oldVersion < 2) {
+            createAlarmEventsTable(db);
+        }
+        if (oldVersion < 3) {
+            // 由本地时间的日期时间列回填毫秒时间戳
+            db.execSQL("ALTER TABLE " + TABLE_DATA_POINTS + " ADD COLUMN " + COLUMN_TIME_MS + " INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("UPDATE " + TABLE_DATA_POINTS + " SET " + COLUMN_TIME_MS
+                    + " = CAST(strftime('%s', " + COLUMN_DATETIME + ", 'utc') AS INTEGER) * 1000");
+            db.execSQL(CREATE_INDEX_DATA_POINTS_TIME);
+            db.execSQL(CREATE_INDEX_DATA_POINTS_TYPE_TIME);
+        }
+        if (oldVersion < 4) {
+            // 已有数据的设备未知，保持为0
+            db.execSQL("ALTER TABLE " + TABLE_DATA_POINTS + " ADD COLUMN " + COLUMN_DEVICE_ID + " INTEGER NOT NULL DEFAULT 0");
+            db.execSQL(CREATE_INDEX_DATA_POINTS_TYPE_VALUE);
+            db.execSQL(CREATE_INDEX_DATA_POINTS_DEVICE_TIME);
+            db.execSQL(CREATE_TABLE_DEVICES);
+        }
+        if (oldVersion < 5) {
+            createEpisodesTable(db);
+            db.execSQL(CREATE_INDEX_ALARM_EVENTS_TYPE_TIME);
+        }
+        if (oldVersion < 6) {
+            db.execSQL(CREATE_TABLE_DELETION_MARKS);
+        }
+    }
+
+    private void createEpisodesTable(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_EPISODES);
+        db.execSQL(CREATE_INDEX_EPISODES_START);
+        db.execSQL(CREATE_INDEX_EPISODES_TYPE_START);
+        db.execSQL(CREATE_INDEX_EPISODES_TYPE_END);
+    }
+
+    private void createAlarmEventsTable(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_ALARM_EVENTS);
+        db.execSQL(CREATE_INDEX_ALARM_EVENTS_TIME);
+        db.execSQL(CREATE_INDEX_ALARM_EVENTS_RULE);
+        db.execSQL(CREATE_INDEX_ALARM_EVENTS_TYPE_TIME);
     }
 
     /**
@@ -75,87 +363,384 @@ public class DataDBHelper extends SQLiteOpenHelper {
      * @return 是否添加成功
      */
     public boolean addDataPoint(DataPoint dataPoint) {
+        try {
+            SQLiteStatement statement = getCachedStatement(STATEMENT_INSERT);
+            boolean inserted;
+            synchronized (statement) {
+                inserted = insertDataPoint(statement, dataPoint) != -1;
+            }
+            if (inserted) {
+                notifyCommit(dataPoint.getTimeMillis(), dataPoint.getTimeMillis());
+            }
+            return inserted;
+        } catch (Exception e) {
+            Log.e(TAG, "添加数据点失败: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 在一个事务中批量添加数据点
+     * @param dataPoints 要添加的数据点
+     * @return 是否全部添加成功
+     */
+    public boolean addDataPoints(List<DataPoint> dataPoints) {
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        boolean committed = false;
 
+        // 加锁顺序与addDataPoint一致：先语句的锁，再数据库连接（事务）；顺序相反时读取线程的直接写入会与写入线程死锁
+        SQLiteStatement statement = getCachedStatement(STATEMENT_INSERT);
+        synchronized (statement) {
+            db.beginTransaction();
+            try {
+                for (DataPoint dataPoint : dataPoints) {
+                    if (insertDataPoint(statement, dataPoint) == -1) {
+                        return false;
+                    }
+                    minTime = Math.min(minTime, dataPoint.getTimeMillis());
+                    maxTime = Math.max(maxTime, dataPoint.getTimeMillis());
+                }
+                db.setTransactionSuccessful();
+                committed = true;
+                return true;
+            } catch (Exception e) {
+                Log.e(TAG, "批量添加数据点失败: " + e.getMessage());
+                return false;
+            } finally {
+                db.endTransaction();
+                if (committed && !dataPoints.isEmpty()) {
+                    notifyCommit(minTime, maxTime);
+                }
+            }
+        }
+    }
+
+    // 绑定参数并执行插入（调用方持有语句的锁），日期时间取自数据点的采样时刻而不是写入时刻
+    private long insertDataPoint(SQLiteStatement statement, DataPoint dataPoint) {
+        String sampleDateTime = TimeFormatter.getDefault().formatDateTime(dataPoint.getTimeMillis());
+
+        statement.clearBindings();
+        statement.bindString(1, dataPoint.getTimestamp());
+        statement.bindString(2, sampleDateTime);
+        statement.bindDouble(3, dataPoint.getValue());
+        statement.bindLong(4, dataPoint.getType());
+        statement.bindLong(5, dataPoint.getTimeMillis());
+        statement.bindLong(6, dataPoint.getDeviceId());
+        return statement.executeInsert();
+    }
+
+    /**
+     * 获取设备在设备表中的行号，不存在时插入。名称变化时更新名称
+     */
+    public int getOrCreateDeviceId(String address, String name) {
+        SQLiteDatabase db = this.getWritableDatabase();
         try {
-            // 当前日期时间
-            String currentDateTime = datetimeFormat.format(new Date());
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_ADDRESS, address);
+            values.put(COLUMN_NAME, name);
+            long id = db.insertWithOnConflict(TABLE_DEVICES, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+            if (id == -1) {
+                if (name != null) {
+                    ContentValues nameValues = new ContentValues();
+                    nameValues.put(COLUMN_NAME, name);
+                    db.update(TABLE_DEVICES, nameValues, COLUMN_ADDRESS + " = ?", new String[] {address});
+                }
+                id = DatabaseUtils.longForQuery(db, "SELECT " + COLUMN_ID + " FROM " + TABLE_DEVICES
+                        + " WHERE " + COLUMN_ADDRESS + " = ?", new String[] {address});
+            }
+            return (int) id;
+        } catch (Exception e) {
+            Log.e(TAG, "记录设备失败: " + e.getMessage());
+            return DataPoint.NO_DEVICE;
+        }
+    }
 
-            values.put(COLUMN_TIMESTAMP, dataPoint.getTimestamp());
-            values.put(COLUMN_DATETIME, currentDateTime);
-            values.put(COLUMN_VALUE, dataPoint.getValue());
-            values.put(COLUMN_TYPE, dataPoint.getType());
+    /**
+     * 获取所有采集过数据的设备
+     */
+    public ArrayList<Device> getDevices() {
+        ArrayList<Device> devices = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.query(TABLE_DEVICES, new String[] {COLUMN_ID, COLUMN_ADDRESS, COLUMN_NAME},
+                null, null, null, null, COLUMN_ID + " ASC")) {
+            while (cursor.moveToNext()) {
+                devices.add(new Device(cursor.getInt(0), cursor.getString(1), cursor.getString(2)));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "获取设备列表失败: " + e.getMessage());
+        }
+        return devices;
+    }
 
-            long result = db.insert(TABLE_DATA_POINTS, null, values);
-            return result != -1;
+    /**
+     * 按条件查询数据点：只读取需要的列，所有条件都通过参数绑定
+     * @param query 时间范围、类型、条数上限和排序
+     */
+    public ArrayList<DataPoint> query(DataQuery query) {
+        ArrayList<DataPoint> dataPoints = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.query(TABLE_DATA_POINTS, DATA_POINT_PROJECTION, query.selection(),
+                query.selectionArgs(), null, null, query.orderBy(), query.limitClause())) {
+            while (cursor.moveToNext()) {
+                dataPoints.add(readDataPoint(cursor));
+            }
         } catch (Exception e) {
-            Log.e(TAG, "添加数据点失败: " + e.getMessage());
+            Log.e(TAG, "查询数据失败: " + e.getMessage());
+        }
+        return dataPoints;
+    }
+
+    /**
+     * 按条件分页查询（从新到旧，键集分页）：下一页从上一页最后一行之后继续，
+     * 不使用OFFSET，翻到后面的页也不需要扫描前面的行
+     * @param query 筛选条件，limit为每页条数（必须大于0），排序方向被忽略
+     * @param after 上一页的最后一行，null表示第一页
+     */
+    public ArrayList<DataPoint> queryPage(DataQuery query, DataPoint after) {
+        if (query.limit == DataQuery.NO_LIMIT) {
+            throw new IllegalArgumentException("分页查询必须指定每页条数");
+        }
+        String selection = query.selection();
+        String[] selectionArgs = query.selectionArgs();
+        if (after != null) {
+            selection += " AND (" + COLUMN_TIME_MS + " < ? OR (" + COLUMN_TIME_MS + " = ? AND " + COLUMN_ID + " < ?))";
+            String[] args = new String[selectionArgs.length + 3];
+            System.arraycopy(selectionArgs, 0, args, 0, selectionArgs.length);
+            args[selectionArgs.length] = String.valueOf(after.getTimeMillis());
+            args[selectionArgs.length + 1] = String.valueOf(after.getTimeMillis());
+            args[selectionArgs.length + 2] = String.valueOf(after.getId());
+            selectionArgs = args;
+        }
+
+        ArrayList<DataPoint> dataPoints = new ArrayList<>(query.limit);
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.query(TABLE_DATA_POINTS, DATA_POINT_PROJECTION, selection, selectionArgs,
+                null, null, COLUMN_TIME_MS + " DESC, " + COLUMN_ID + " DESC", query.limitClause())) {
+            while (cursor.moveToNext()) {
+                dataPoints.add(readDataPoint(cursor));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "分页查询失败: " + e.getMessage());
+        }
+        return dataPoints;
+    }
+
+    /**
+     * 增量读取：行号大于afterId、采样时间不早于fromMillis的新行（按行号升序），
+     * 以及读取之后的删除标记。行号只增不减，按主键范围扫描，开销只与新行数有关
+     * @param afterId 调用方已有的最大行号，NO_ID表示全部读取
+     * @param fromMillis 调用方关心的最早采样时间
+     */
+    public HistoryDelta getHistoryDelta(long afterId, long fromMillis) {
+        ArrayList<DataPoint> added = new ArrayList<>();
+        long maxId = afterId;
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.query(TABLE_DATA_POINTS, DATA_POINT_PROJECTION,
+                COLUMN_ID + " > ? AND " + COLUMN_TIME_MS + " >= ?",
+                new String[] {String.valueOf(afterId), String.valueOf(fromMillis)},
+                null, null, COLUMN_ID + " ASC")) {
+            while (cursor.moveToNext()) {
+                DataPoint dataPoint = readDataPoint(cursor);
+                added.add(dataPoint);
+                maxId = dataPoint.getId();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "增量读取数据失败: " + e.getMessage());
+        }
+        // 删除标记在读取新行之后获取：期间发生的清空也会覆盖刚读到的行，调用方据此一并移除
+        long[] byType = new long[DataPoint.TYPE_COUNT];
+        Arrays.fill(byType, Long.MIN_VALUE);
+        long clearedThroughId = DataPoint.NO_ID;
+        try (Cursor cursor = db.query(TABLE_DELETION_MARKS, new String[] {COLUMN_NAME, COLUMN_VALUE},
+                null, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                String name = cursor.getString(0);
+                if (name.equals(MARK_CLEARED_THROUGH_ID)) {
+                    clearedThroughId = cursor.getLong(1);
+                }
+                for (int type = 0; type < byType.length; type++) {
+                    if (name.equals(MARK_DELETED_BEFORE + type)) {
+                        byType[type] = cursor.getLong(1);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "读取删除标记失败: " + e.getMessage());
+        }
+        // 所有类型共同的标记取各类型中最早的截止时间
+        long deletedBeforeMillis = Long.MAX_VALUE;
+        for (long deletedBefore : byType) {
+            deletedBeforeMillis = Math.min(deletedBeforeMillis, deletedBefore);
+        }
+        return new HistoryDelta(added, maxId, deletedBeforeMillis, byType, clearedThroughId);
+    }
+
+    private static DataPoint readDataPoint(Cursor cursor) {
+        return new DataPoint(
+                cursor.getLong(PROJECTION_ID),
+                cursor.getString(PROJECTION_TIMESTAMP),
+                cursor.getFloat(PROJECTION_VALUE),
+                cursor.getInt(PROJECTION_TYPE),
+                cursor.getLong(PROJECTION_TIME_MS),
+                cursor.getInt(PROJECTION_DEVICE_ID));
+    }
+
+    /**
+     * 按时间分桶聚合（数量、平均值、最小值、最大值），在SQLite中计算
+     * @param query 时间范围、类型、条数上限（桶数）和排序
+     * @param bucketMillis 每个桶的时长（毫秒）
+     */
+    public ArrayList<AggregateBucket> aggregate(DataQuery query, long bucketMillis) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("分桶时长必须大于0");
+        }
+        String sql = "SELECT (" + COLUMN_TIME_MS + " / CAST(? AS INTEGER)) * CAST(? AS INTEGER) AS bucket, "
+                + "COUNT(*), AVG(" + COLUMN_VALUE + "), MIN(" + COLUMN_VALUE + "), MAX(" + COLUMN_VALUE + ")"
+                + " FROM " + TABLE_DATA_POINTS
+                + " WHERE " + query.selection()
+                + " GROUP BY bucket ORDER BY bucket" + (query.descending ? " DESC" : " ASC")
+                + (query.limitClause() != null ? " LIMIT " + query.limitClause() : "");
+
+        String[] selectionArgs = query.selectionArgs();
+        String[] args = new String[selectionArgs.length + 2];
+        args[0] = String.valueOf(bucketMillis);
+        args[1] = String.valueOf(bucketMillis);
+        System.arraycopy(selectionArgs, 0, args, 2, selectionArgs.length);
+
+        ArrayList<AggregateBucket> buckets = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.rawQuery(sql, args)) {
+            while (cursor.moveToNext()) {
+                buckets.add(new AggregateBucket(cursor.getLong(0), cursor.getInt(1),
+                        cursor.getFloat(2), cursor.getFloat(3), cursor.getFloat(4)));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "聚合查询失败: " + e.getMessage());
+        }
+        return buckets;
+    }
+
+    /**
+     * 记录一条报警事件
+     * @return 是否添加成功
+     */
+    public boolean addAlarmEvent(int ruleId, String ruleName, int dataType, int event, float value, long timeMillis) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        try {
+            String eventDateTime = TimeFormatter.getDefault().formatDateTime(timeMillis);
+            values.put(COLUMN_RULE_ID, ruleId);
+            values.put(COLUMN_RULE_NAME, ruleName);
+            values.put(COLUMN_TYPE, dataType);
+            values.put(COLUMN_EVENT, event);
+            values.put(COLUMN_VALUE, value);
+            values.put(COLUMN_TIME_MS, timeMillis);
+            values.put(COLUMN_DATETIME, eventDateTime);
+            return db.insert(TABLE_ALARM_EVENTS, null, values) != -1;
+        } catch (Exception e) {
+            Log.e(TAG, "添加报警事件失败: " + e.getMessage());
             return false;
-        } finally {
-            db.close();
         }
     }
 
     /**
-     * 获取最近一周的数据点
-     * @return 数据点列表
+     * 获取某个时间之后的报警事件（最新的在前）
+     * @param sinceMillis 起始时间（毫秒时间戳）
+     * @param limit 最多返回的条数
      */
-    public ArrayList<DataPoint> getLastWeekData() {
-        ArrayList<DataPoint> dataPoints = new ArrayList<>();
+    public ArrayList<AlarmEvent> getAlarmEvents(long sinceMillis, int limit) {
+        ArrayList<AlarmEvent> events = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.query(TABLE_ALARM_EVENTS,
+                new String[] {COLUMN_ID, COLUMN_RULE_ID, COLUMN_RULE_NAME, COLUMN_TYPE, COLUMN_EVENT,
+                        COLUMN_VALUE, COLUMN_TIME_MS},
+                COLUMN_TIME_MS + " >= ?", new String[] {String.valueOf(sinceMillis)},
+                null, null, COLUMN_TIME_MS + " DESC", String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                events.add(new AlarmEvent(cursor.getLong(0), cursor.getInt(1), cursor.getString(2),
+                        cursor.getInt(3), cursor.getInt(4), cursor.getFloat(5), cursor.getLong(6)));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "获取报警事件失败: " + e.getMessage());
+        }
+        return events;
+    }
 
+    /**
+     * 记录一个已结束的异常段
+     * @return 新行的行号，失败时返回-1
+     */
+    public long addEpisode(Episode episode) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
         try {
-            // 计算一周前的日期
-            Calendar calendar = Calendar.getInstance();
-            calendar.add(Calendar.DAY_OF_YEAR, -7);
-            Date oneWeekAgo = calendar.getTime();
-            String oneWeekAgoStr = datetimeFormat.format(oneWeekAgo);
-
-            // 查询语句
-            String selection = COLUMN_DATETIME + " >= ?";
-            String[] selectionArgs = {oneWeekAgoStr};
-            String orderBy = COLUMN_DATETIME + " DESC";
-
-            Cursor cursor = db.query(
-                    TABLE_DATA_POINTS,
-                    null,
-                    selection,
-                    selectionArgs,
-                    null,
-                    null,
-                    orderBy
-            );
-
-            if (cursor.moveToFirst()) {
-                do {
-                    int idIndex = cursor.getColumnIndex(COLUMN_ID);
-                    int timestampIndex = cursor.getColumnIndex(COLUMN_TIMESTAMP);
-                    int valueIndex = cursor.getColumnIndex(COLUMN_VALUE);
-                    int typeIndex = cursor.getColumnIndex(COLUMN_TYPE);
-
-                    if (idIndex < 0 || timestampIndex < 0 || valueIndex < 0 || typeIndex < 0) {
-                        Log.e(TAG, "列名不存在");
-                        continue;
-                    }
+            values.put(COLUMN_RULE_ID, episode.getRuleId());
+            values.put(COLUMN_RULE_NAME, episode.getRuleName());
+            values.put(COLUMN_TYPE, episode.getDataType());
+            values.put(COLUMN_DEVICE_ID, episode.getDeviceId());
+            values.put(COLUMN_START_MS, episode.getStartMillis());
+            values.put(COLUMN_END_MS, episode.getEndMillis());
+            values.put(COLUMN_MIN_VALUE, episode.getMinValue());
+            values.put(COLUMN_MAX_VALUE, episode.getMaxValue());
+            values.put(COLUMN_SAMPLE_COUNT, episode.getSampleCount());
+            return db.insert(TABLE_EPISODES, null, values);
+        } catch (Exception e) {
+            Log.e(TAG, "添加异常段失败: " + e.getMessage());
+            return -1;
+        }
+    }
 
-                    int id = cursor.getInt(idIndex);
-                    String timestamp = cursor.getString(timestampIndex);
-                    float value = cursor.getFloat(valueIndex);
-                    int type = cursor.getInt(typeIndex);
+    /**
+     * 获取与时间范围 [fromMillis, toMillis) 有重叠的异常段（最新的在前）
+     * @param type 数据类型，DataQuery.ANY_TYPE表示所有类型
+     * @param limit 最多返回的条数
+     */
+    public ArrayList<Episode> getEpisodes(long fromMillis, long toMillis, int type, int limit) {
+        // 按开始时间走索引；异常段通常只有几分钟，结束时间条件只过滤少量行
+        String selection = COLUMN_START_MS + " < ? AND " + COLUMN_END_MS + " >= ?";
+        String[] selectionArgs;
+        if (type != DataQuery.ANY_TYPE) {
+            selection += " AND " + COLUMN_TYPE + " = ?";
+            selectionArgs = new String[] {String.valueOf(toMillis), String.valueOf(fromMillis), String.valueOf(type)};
+        } else {
+            selectionArgs = new String[] {String.valueOf(toMillis), String.valueOf(fromMillis)};
+        }
 
-                    DataPoint dataPoint = new DataPoint(timestamp, value, type);
-                    dataPoints.add(dataPoint);
-                } while (cursor.moveToNext());
+        ArrayList<Episode> episodes = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.query(TABLE_EPISODES, EPISODE_PROJECTION, selection, selectionArgs,
+                null, null, COLUMN_START_MS + " DESC", String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                episodes.add(new Episode(cursor.getLong(0), cursor.getInt(1), cursor.getString(2),
+                        cursor.getInt(3), cursor.getInt(4), cursor.getLong(5), cursor.getLong(6),
+                        cursor.getFloat(7), cursor.getFloat(8), cursor.getInt(9)));
             }
-            cursor.close();
         } catch (Exception e) {
-            Log.e(TAG, "获取数据失败: " + e.getMessage());
-        } finally {
-            db.close();
+            Log.e(TAG, "获取异常段失败: " + e.getMessage());
         }
+        return episodes;
+    }
 
-        return dataPoints;
+    /**
+     * 获取保留期内的数据点（历史列表）
+     * @return 数据点列表
+     */
+    public ArrayList<DataPoint> getHistoryData() {
+        return query(historyQuery());
+    }
+
+    /**
+     * 历史列表的查询条件（从新到旧）：时间范围取保留策略中原始采样的最长保留时间，起点按分钟对齐
+     */
+    public static DataQuery historyQuery() {
+        long from = System.currentTimeMillis() - RetentionPolicy.getDefault().getHistoryWindowMillis();
+        from = from / HISTORY_QUERY_ALIGN_MILLIS * HISTORY_QUERY_ALIGN_MILLIS;
+        return new DataQuery.Builder()
+                .setTimeRange(from, Long.MAX_VALUE)
+                .setDescending(true)
+                .build();
     }
 
     /**
@@ -163,67 +748,185 @@ public class DataDBHelper extends SQLiteOpenHelper {
      */
     public void clearAllData() {
         SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_DATA_POINTS, null, null);
-        db.close();
+        long maxId;
+        db.beginTransaction();
+        try {
+            maxId = DatabaseUtils.longForQuery(db,
+                    "SELECT IFNULL(MAX(" + COLUMN_ID + "), 0) FROM " + TABLE_DATA_POINTS, null);
+            db.delete(TABLE_DATA_POINTS, null, null);
+            db.delete(TABLE_ALARM_EVENTS, null, null);
+            db.delete(TABLE_EPISODES, null, null);
+            advanceMark(db, MARK_CLEARED_THROUGH_ID, maxId);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        notifyCommit(Long.MIN_VALUE, Long.MAX_VALUE);
     }
 
     /**
-     * 删除一周以前的数据
-     * @return 删除的行数
+     * 按保留策略压缩数据库：每个层级的每个类型分别按年龄、行数和估算字节数求出截止时间，
+     * 早于截止时间的行分批删除，每批一条语句，不长时间占用写锁，查询延迟保持平稳
+     * @return 删除的行数（所有层级）
      */
-    public int deleteOldData() {
-        SQLiteDatabase db = this.getWritableDatabase();
+    public int enforceRetention(RetentionPolicy policy, long nowMillis) {
+        int total = 0;
         try {
-            // 计算一周前的日期
-            Calendar calendar = Calendar.getInstance();
-            calendar.add(Calendar.DAY_OF_YEAR, -7);
-            Date oneWeekAgo = calendar.getTime();
-            String oneWeekAgoStr = datetimeFormat.format(oneWeekAgo);
-
-            // 删除一周前的数据
-            String whereClause = COLUMN_DATETIME + " < ?";
-            String[] whereArgs = {oneWeekAgoStr};
-            
-            return db.delete(TABLE_DATA_POINTS, whereClause, whereArgs);
+            SQLiteDatabase db = getWritableDatabase();
+            // 每次执行都重新统计：其他进程（界面进程的清空等）的写入和删除不会反映在本进程的任何缓存里
+            long[] rowCounts = countRows(db);
+            long totalRows = 0;
+            for (long rows : rowCounts) {
+                totalRows += rows;
+            }
+            long bytesPerRow = estimateBytesPerRow(db, totalRows);
+            for (int tier = 0; tier < RetentionPolicy.TIER_COUNT; tier++) {
+                for (int type = 0; type < DataPoint.TYPE_COUNT; type++) {
+                    RetentionPolicy.Limit limit = policy.getLimit(tier, type);
+                    if (limit == null) {
+                        continue;
+                    }
+                    long cutoff = retentionCutoff(db, tier, type, rowCounts[tier * DataPoint.TYPE_COUNT + type],
+                            limit.maxAgeMillis, limit.effectiveMaxRows(bytesPerRow), nowMillis);
+                    if (cutoff == Long.MIN_VALUE) {
+                        continue;
+                    }
+                    int deleted = deleteBefore(db, tier, type, cutoff);
+                    total += deleted;
+                    if (tier == RetentionPolicy.TIER_RAW && deleted > 0) {
+                        advanceMark(db, MARK_DELETED_BEFORE + type, cutoff);
+                        notifyCommit(Long.MIN_VALUE, cutoff - 1);
+                    }
+                }
+            }
         } catch (Exception e) {
-            Log.e(TAG, "删除旧数据失败: " + e.getMessage());
-            return 0;
+            Log.e(TAG, "执行保留策略失败: " + e.getMessage());
+        }
+        return total;
+    }
+
+    // 一个层级中一个类型的截止时间：早于此时间的行超出年龄或容量限制；Long.MIN_VALUE表示不需要删除
+    private static long retentionCutoff(SQLiteDatabase db, int tier, int type, long rows, long maxAgeMillis,
+            long maxRows, long nowMillis) {
+        long cutoff = maxAgeMillis == RetentionPolicy.UNLIMITED ? Long.MIN_VALUE : nowMillis - maxAgeMillis;
+        if (maxRows != RetentionPolicy.UNLIMITED && rows > maxRows) {
+            // 从旧到新的前（行数 - maxRows）行超出容量，按（类型，时间）索引从最旧的一端定位，
+            // 只跳过超出的行（通常是两次执行之间新增的量），不随表的大小增长
+            String timeColumn = TIER_TIME_COLUMNS[tier];
+            try (Cursor cursor = db.rawQuery("SELECT " + timeColumn + " FROM " + TIER_TABLES[tier]
+                            + " WHERE " + COLUMN_TYPE + " = ? ORDER BY " + timeColumn + " ASC LIMIT 1 OFFSET ?",
+                    new String[] {String.valueOf(type), String.valueOf(rows - maxRows - 1)})) {
+                if (cursor.moveToFirst()) {
+                    cutoff = Math.max(cutoff, cursor.getLong(0) + 1);
+                }
+            }
+        }
+        return cutoff;
+    }
+
+    // 分批删除一个层级中一个类型早于cutoff的行
+    private static int deleteBefore(SQLiteDatabase db, int tier, int type, long cutoff) {
+        String table = TIER_TABLES[tier];
+        SQLiteStatement statement = db.compileStatement("DELETE FROM " + table + " WHERE " + COLUMN_ID
+                + " IN (SELECT " + COLUMN_ID + " FROM " + table + " WHERE " + COLUMN_TYPE + " = ? AND "
+                + TIER_TIME_COLUMNS[tier] + " < ? LIMIT " + RETENTION_DELETE_BATCH + ")");
+        try {
+            int total = 0;
+            int deleted;
+            do {
+                statement.bindLong(1, type);
+                statement.bindLong(2, cutoff);
+                deleted = statement.executeUpdateDelete();
+                total += deleted;
+            } while (deleted == RETENTION_DELETE_BATCH);
+            return total;
         } finally {
-            db.close();
+            statement.close();
         }
     }
+
+    // 数据库已用页面平均到每行的字节数（包括索引），没有数据时返回0
+    private static long estimateBytesPerRow(SQLiteDatabase db, long rows) {
+        long pageSize = pragma(db, "page_size");
+        long usedPages = pragma(db, "page_count") - pragma(db, "freelist_count");
+        return rows <= 0 ? 0 : usedPages * pageSize / rows;
+    }
+
+    // 按类型统计各层级的行数（下标为 层级 * TYPE_COUNT + 类型），每个层级一条GROUP BY，走（类型，时间）索引
+    private static long[] countRows(SQLiteDatabase db) {
+        long[] rowCounts = new long[RetentionPolicy.TIER_COUNT * DataPoint.TYPE_COUNT];
+        for (int tier = 0; tier < RetentionPolicy.TIER_COUNT; tier++) {
+            try (Cursor cursor = db.rawQuery("SELECT " + COLUMN_TYPE + ", COUNT(*) FROM " + TIER_TABLES[tier]
+                    + " GROUP BY " + COLUMN_TYPE, null)) {
+                while (cursor.moveToNext()) {
+                    int type = cursor.getInt(0);
+                    if (type >= 0 && type < DataPoint.TYPE_COUNT) {
+                        rowCounts[tier * DataPoint.TYPE_COUNT + type] = cursor.getLong(1);
+                    }
+                }
+            }
+        }
+        return rowCounts;
+    }
+
+    /**
+     * 当前的页面统计
+     */
+    public StorageStats getStorageStats() {
+        SQLiteDatabase db = getReadableDatabase();
+        return new StorageStats(pragma(db, "page_size"), pragma(db, "page_count"), pragma(db, "freelist_count"),
+                (int) pragma(db, "auto_vacuum"));
+    }
+
+    /**
+     * 增量清理：把最多maxPages个空闲页还给文件系统并截短文件，每次只占用写锁很短的时间，可以分多次调用。
+     * 数据库还不是增量自动清理模式时（旧版本创建的）先执行一次完整VACUUM切换模式，耗时与数据库大小成正比
+     * @return 文件减少的页数
+     */
+    public long incrementalVacuum(int maxPages) {
+        SQLiteDatabase db = getWritableDatabase();
+        long before = pragma(db, "page_count");
+        if (pragma(db, "auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+        } else {
+            // 每一步释放一页，要读完全部结果才会执行到底
+            try (Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum(" + maxPages + ")", null)) {
+                while (cursor.moveToNext()) {
+                    // 没有需要的列
+                }
+            }
+        }
+        return before - pragma(db, "page_count");
+    }
+
+    private static long pragma(SQLiteDatabase db, String name) {
+        return DatabaseUtils.longForQuery(db, "PRAGMA " + name, null);
+    }
+
+    // 推进一个删除标记，已有的值更大时保持不变
+    private static void advanceMark(SQLiteDatabase db, String name, long value) {
+        db.execSQL(SQL_ADVANCE_MARK, new Object[] {name, value, name, value});
+    }
     
     /**
      * 获取数据点总数
      */
     public int getDataPointCount() {
-        String countQuery = "SELECT COUNT(*) FROM " + TABLE_DATA_POINTS;
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(countQuery, null);
-        int count = 0;
-        if (cursor != null) {
-            cursor.moveToFirst();
-            count = cursor.getInt(0);
-            cursor.close();
+        SQLiteStatement statement = getCachedStatement(STATEMENT_COUNT);
+        synchronized (statement) {
+            return (int) statement.simpleQueryForLong();
         }
-        db.close();
-        return count;
     }
     
     /**
      * 获取指定类型的数据点总数
      */
     public int getDataPointCountByType(int type) {
-        String countQuery = "SELECT COUNT(*) FROM " + TABLE_DATA_POINTS + " WHERE " + COLUMN_TYPE + " = " + type;
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(countQuery, null);
-        int count = 0;
-        if (cursor != null) {
-            cursor.moveToFirst();
-            count = cursor.getInt(0);
-            cursor.close();
+        SQLiteStatement statement = getCachedStatement(STATEMENT_COUNT_BY_TYPE);
+        synchronized (statement) {
+            statement.bindLong(1, type);
+            return (int) statement.simpleQueryForLong();
         }
-        db.close();
-        return count;
     }
-} 
\ No newline at end of file
+}
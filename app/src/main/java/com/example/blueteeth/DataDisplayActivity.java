@@ -3,16 +3,12 @@ package com.example.blueteeth;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothSocket;
-import android.content.ComponentName;
-import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.ServiceConnection;
 import android.graphics.Color;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.IBinder;
 import android.os.Looper;
 import android.os.Message;
 import android.util.Log;
@@ -25,6 +21,7 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Lifecycle;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -36,10 +33,7 @@ import android.content.BroadcastReceiver;
 public class DataDisplayActivity extends AppCompatActivity {
 
     private static final String TAG = "DataDisplayActivity";
-    private static final int MESSAGE_READ = 1;
-    private static final int MESSAGE_STATUS = 2;
     private static final int MAX_DISPLAYED_DATA = 100; // 最大显示数据条数
-    private static final float OXYGEN_THRESHOLD = 16.0f; // 氧气浓度阈值
 
     private TextView deviceInfoTextView;
     private TextView connectionStatusTextView;
@@ -54,9 +48,11 @@ public class DataDisplayActivity extends AppCompatActivity {
     private String deviceAddress;
 
     private float lastOxygenLevel = 0.0f; // 最后一次记录的氧气浓度
+    private float oxygenThreshold = AlarmRule.DEFAULT_LOW_OXYGEN_THRESHOLD; // 低氧阈值，服务连接后取报警规则中的值
 
-    private BluetoothService bluetoothService;
+    private IngestConnection ingestConnection; // 单进程或多进程模式下与采集服务的连接
     private boolean isServiceBound = false;
+    private boolean isSubscribed = false; // 是否已向服务订阅数据（影响下位机采样频率）
     
     // 定时刷新UI的Handler
     private final Handler uiUpdateHandler = new Handler(Looper.getMainLooper());
@@ -65,32 +61,35 @@ public class DataDisplayActivity extends AppCompatActivity {
 
     // 不再需要数据请求的广播接收器，数据由服务直接管理
 
-    private final ServiceConnection serviceConnection = new ServiceConnection() {
+    private final IngestConnection.Listener connectionListener = new IngestConnection.Listener() {
         @Override
-        public void onServiceConnected(ComponentName name, IBinder service) {
-            BluetoothService.LocalBinder binder = (BluetoothService.LocalBinder) service;
-            bluetoothService = binder.getService();
+        public void onConnected() {
+            // 连接内部已设置好Handler，状态更新和数据批次都会发到handler
             isServiceBound = true;
-
-            // 重要：设置Handler，确保能接收状态更新
-            bluetoothService.setHandler(handler);
+            oxygenThreshold = ingestConnection.getLowOxygenThreshold();
 
             // 连接蓝牙设备
             if (deviceAddress != null) {
                 // 当服务绑定成功时，立即更新状态为"正在连接"
                 connectionStatusTextView.setText(R.string.connecting);
                 // 尝试连接
-                bluetoothService.connect(deviceAddress);
+                ingestConnection.connect(deviceAddress);
             }
             
             // 开始定时刷新UI
             startUiUpdateTimer();
+
+            // 界面可见时订阅数据；在后台完成绑定时不订阅，等onStart再订阅，
+            // 否则onStop已经执行过，这次订阅不会被取消
+            if (getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+                subscribeToService();
+            }
         }
 
         @Override
-        public void onServiceDisconnected(ComponentName name) {
-            bluetoothService = null;
+        public void onDisconnected() {
             isServiceBound = false;
+            isSubscribed = false;
             
             // 停止UI更新
             stopUiUpdateTimer();
@@ -102,11 +101,24 @@ public class DataDisplayActivity extends AppCompatActivity {
         @Override
         public void handleMessage(@NonNull Message msg) {
             switch (msg.what) {
-                case MESSAGE_READ:
-                    // 不需要在这里处理数据，数据会由服务保存，我们只需定期刷新UI即可
+                case UiBatchDispatcher.MESSAGE_DATA_BATCH:
+                    // 每帧最多一条批量消息，只用最新的氧浓度刷新大号显示，列表仍由定时器刷新
+                    UiBatchDispatcher.Batch batch = (UiBatchDispatcher.Batch) msg.obj;
+                    DataPoint latestOxygen = batch.getLatest(DataPoint.TYPE_PERCENTAGE);
+                    if (latestOxygen != null) {
+                        updateOxygenDisplay(latestOxygen.getValue());
+                    }
                     break;
 
-                case MESSAGE_STATUS:
+                case BluetoothService.MESSAGE_ALARM:
+                    // 报警通知已由服务发出，界面上额外提示一次
+                    if (msg.arg2 == AlarmEvent.EVENT_RAISED) {
+                        AlarmRule rule = (AlarmRule) msg.obj;
+                        Toast.makeText(DataDisplayActivity.this, "报警: " + rule.name, Toast.LENGTH_SHORT).show();
+                    }
+                    break;
+
+                case BluetoothService.MESSAGE_STATUS:
                     int status = msg.arg1;
                     String statusText = "未知状态";
 
@@ -176,8 +188,8 @@ public class DataDisplayActivity extends AppCompatActivity {
         }
 
         // 绑定蓝牙服务
-        Intent serviceIntent = new Intent(this, BluetoothService.class);
-        bindService(serviceIntent, serviceConnection, Context.BIND_AUTO_CREATE);
+        ingestConnection = new IngestConnection(this, handler, connectionListener);
+        ingestConnection.bind();
 
         // 设置点击监听
         setClickListeners();
@@ -198,8 +210,8 @@ public class DataDisplayActivity extends AppCompatActivity {
         // 开始/停止测量按钮
         startMeasureButton.setOnClickListener(v -> {
             // 检查蓝牙服务是否已连接
-            if (isServiceBound && bluetoothService != null) {
-                int connectionState = bluetoothService.getState();
+            if (isServiceBound && ingestConnection != null) {
+                int connectionState = ingestConnection.getState();
                 if (connectionState != BluetoothService.STATE_CONNECTED) {
                     // 如果未连接，显示提示信息
                     Toast.makeText(this, "蓝牙未连接，请先连接设备", Toast.LENGTH_SHORT).show();
@@ -212,13 +224,13 @@ public class DataDisplayActivity extends AppCompatActivity {
                 return;
             }
 
-            if (bluetoothService.isMeasuring()) {
+            if (ingestConnection.isMeasuring()) {
                 // 停止测量
-                bluetoothService.stopMeasuring();
+                ingestConnection.stopMeasuring();
                 startMeasureButton.setText(R.string.start_measure);
             } else {
                 // 开始测量
-                bluetoothService.startMeasuring();
+                ingestConnection.startMeasuring();
                 startMeasureButton.setText(R.string.stop_measure);
             }
         });
@@ -231,7 +243,7 @@ public class DataDisplayActivity extends AppCompatActivity {
 
         // 查看图表按钮
         viewChartButton.setOnClickListener(v -> {
-            if (isServiceBound && bluetoothService != null) {
+            if (isServiceBound && ingestConnection != null) {
                 Intent intent = new Intent(DataDisplayActivity.this, ChartActivity.class);
                 // 不需要传递数据，ChartActivity将直接从服务获取
                 startActivity(intent);
@@ -246,7 +258,7 @@ public class DataDisplayActivity extends AppCompatActivity {
         uiUpdateRunnable = new Runnable() {
             @Override
             public void run() {
-                if (isServiceBound && bluetoothService != null) {
+                if (isServiceBound && ingestConnection != null) {
                     // 从服务获取最新数据并更新UI
                     updateDataDisplay();
                 }
@@ -269,17 +281,18 @@ public class DataDisplayActivity extends AppCompatActivity {
 
     // 更新数据显示
     private void updateDataDisplay() {
-        if (!isServiceBound || bluetoothService == null) {
+        if (!isServiceBound || ingestConnection == null) {
             return;
         }
         
-        ArrayList<DataPoint> dataPoints = bluetoothService.getDataPoints();
+        // 只取各通道最新的数据，按时间合并
+        ArrayList<DataPoint> dataPoints = ingestConnection.getRecentDataPoints(MAX_DISPLAYED_DATA);
         if (dataPoints.isEmpty()) {
             return;
         }
         
         // 如果是在测量中，更新按钮文本（防止状态不同步）
-        boolean isMeasuring = bluetoothService.isMeasuring();
+        boolean isMeasuring = ingestConnection.isMeasuring();
         if (isMeasuring) {
             startMeasureButton.setText(R.string.stop_measure);
         } else {
@@ -288,10 +301,7 @@ public class DataDisplayActivity extends AppCompatActivity {
 
         StringBuilder stringBuilder = new StringBuilder();
 
-        // 如果数据点超过最大显示数，只显示最新的数据
-        int startIndex = Math.max(0, dataPoints.size() - MAX_DISPLAYED_DATA);
-
-        for (int i = startIndex; i < dataPoints.size(); i++) {
+        for (int i = 0; i < dataPoints.size(); i++) {
             DataPoint point = dataPoints.get(i);
             String typePrefix = "";
 
@@ -326,12 +336,12 @@ public class DataDisplayActivity extends AppCompatActivity {
         oxygenLevelTextView.setText(oxygenText);
 
         // 根据氧气浓度阈值更新指示灯颜色
-        if (oxygenLevel >= OXYGEN_THRESHOLD) {
-            // 氧气浓度大于等于16%，显示蓝色指示灯
+        if (oxygenLevel >= oxygenThreshold) {
+            // 氧气浓度不低于阈值，显示蓝色指示灯
             oxygenIndicator.setImageResource(R.drawable.ic_indicator_blue);
             oxygenLevelTextView.setTextColor(Color.rgb(0, 102, 204)); // 蓝色文本
         } else {
-            // 氧气浓度小于16%，显示红色指示灯
+            // 氧气浓度低于阈值，显示红色指示灯
             oxygenIndicator.setImageResource(R.drawable.ic_indicator_red);
             oxygenLevelTextView.setTextColor(Color.rgb(204, 0, 0)); // 红色文本
         }
@@ -347,11 +357,38 @@ public class DataDisplayActivity extends AppCompatActivity {
         return super.onOptionsItemSelected(item);
     }
 
+    // 向服务订阅数据，服务据此调整下位机采样频率
+    private void subscribeToService() {
+        if (!isSubscribed && isServiceBound && ingestConnection != null) {
+            ingestConnection.addSubscriber();
+            isSubscribed = true;
+        }
+    }
+
+    private void unsubscribeFromService() {
+        if (isSubscribed && isServiceBound && ingestConnection != null) {
+            ingestConnection.removeSubscriber();
+        }
+        isSubscribed = false;
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        subscribeToService();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        unsubscribeFromService();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
         // 恢复时重新开始UI更新
-        if (isServiceBound && bluetoothService != null) {
+        if (isServiceBound && ingestConnection != null) {
             startUiUpdateTimer();
         }
     }
@@ -371,9 +408,7 @@ public class DataDisplayActivity extends AppCompatActivity {
         stopUiUpdateTimer();
         
         // 解绑服务
-        if (isServiceBound) {
-            unbindService(serviceConnection);
-            isServiceBound = false;
-        }
+        ingestConnection.unbind();
+        isServiceBound = false;
     }
 }
\ No newline at end of file
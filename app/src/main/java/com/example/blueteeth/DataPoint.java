@@ -10,16 +10,45 @@ public class DataPoint implements Parcelable {
     public static final int TYPE_RAW = 0;
     public static final int TYPE_PERCENTAGE = 1;
     public static final int TYPE_VOLTAGE = 2;
+    public static final int TYPE_COUNT = 3;
 
-    private String timestamp; // 数据时间戳
+    public static final long NO_ID = 0; // 尚未写入数据库
+    public static final int NO_DEVICE = 0; // 采集设备未知
+
+    private String timestamp; // 数据时间戳（HH:mm:ss），为null时在首次显示时由timeMillis格式化
     private float value; // 数据值
     private int type; // 数据类型
     private String unit; // 数据单位
+    private long timeMillis; // 采样时刻（毫秒时间戳）
+    private long id = NO_ID; // 数据库行号（_id），只增不减，可用于增量读取
+    private int deviceId = NO_DEVICE; // 采集设备在设备表中的行号
 
     public DataPoint(String timestamp, float value, int type) {
+        this(timestamp, value, type, System.currentTimeMillis());
+    }
+
+    public DataPoint(long id, String timestamp, float value, int type, long timeMillis, int deviceId) {
+        this(timestamp, value, type, timeMillis, deviceId);
+        this.id = id;
+    }
+
+    /**
+     * 实时采样使用：不在采集线程格式化时间，显示时再按timeMillis生成时间戳
+     */
+    public DataPoint(float value, int type, long timeMillis, int deviceId) {
+        this(null, value, type, timeMillis, deviceId);
+    }
+
+    public DataPoint(String timestamp, float value, int type, long timeMillis, int deviceId) {
+        this(timestamp, value, type, timeMillis);
+        this.deviceId = deviceId;
+    }
+
+    public DataPoint(String timestamp, float value, int type, long timeMillis) {
         this.timestamp = timestamp;
         this.value = value;
         this.type = type;
+        this.timeMillis = timeMillis;
 
         // 根据类型设置单位
         switch (type) {
@@ -40,6 +69,9 @@ public class DataPoint implements Parcelable {
         value = in.readFloat();
         type = in.readInt();
         unit = in.readString();
+        timeMillis = in.readLong();
+        id = in.readLong();
+        deviceId = in.readInt();
     }
 
     public static final Creator<DataPoint> CREATOR = new Creator<DataPoint>() {
@@ -55,7 +87,13 @@ public class DataPoint implements Parcelable {
     };
 
     public String getTimestamp() {
-        return timestamp;
+        String text = timestamp;
+        if (text == null) {
+            // 同一秒的采样共享格式化结果，重复赋值同一个值不影响多线程读取
+            text = TimeFormatter.getDefault().formatTime(timeMillis);
+            timestamp = text;
+        }
+        return text;
     }
 
     public float getValue() {
@@ -70,6 +108,18 @@ public class DataPoint implements Parcelable {
         return unit;
     }
 
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getDeviceId() {
+        return deviceId;
+    }
+
     public String getFormattedValue() {
         if (type == TYPE_RAW) {
             return String.format("%.0f", value);
@@ -89,5 +139,8 @@ public class DataPoint implements Parcelable {
         dest.writeFloat(value);
         dest.writeInt(type);
         dest.writeString(unit);
+        dest.writeLong(timeMillis);
+        dest.writeLong(id);
+        dest.writeInt(deviceId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,195 @@
+package com.example.blueteeth;
+
+import java.util.ArrayList;
+
+/**
+ * 数据点查询条件（不可变），由Builder构建：时间范围、数据类型、数值范围、设备、文本、条数上限和排序方向。
+ * DataDBHelper据此生成带参数占位符的SQL，不拼接任何数值。
+ */
+public final class DataQuery {
+    public static final int ANY_TYPE = -1;
+    public static final int NO_LIMIT = 0;
+    public static final int ANY_DEVICE = -1;
+
+    public final long fromMillis; // 包含
+    public final long toMillis; // 不包含
+    public final int type; // DataPoint.TYPE_*，ANY_TYPE表示所有类型
+    public final int limit; // NO_LIMIT表示不限制
+    public final boolean descending; // 是否按时间从新到旧排序
+    public final float minValue; // 包含，NEGATIVE_INFINITY表示不限制
+    public final float maxValue; // 不包含，POSITIVE_INFINITY表示不限制
+    public final int deviceId; // 设备表行号，ANY_DEVICE表示所有设备
+    public final String text; // 匹配日期时间前缀或设备名称/地址，null表示不限制
+
+    private DataQuery(Builder builder) {
+        this.fromMillis = builder.fromMillis;
+        this.toMillis = builder.toMillis;
+        this.type = builder.type;
+        this.limit = builder.limit;
+        this.descending = builder.descending;
+        this.minValue = builder.minValue;
+        this.maxValue = builder.maxValue;
+        this.deviceId = builder.deviceId;
+        this.text = builder.text;
+    }
+
+    // WHERE子句（不含WHERE关键字），参数顺序与selectionArgs()一致
+    String selection() {
+        StringBuilder selection = new StringBuilder();
+        selection.append(DataDBHelper.COLUMN_TIME_MS).append(" >= ? AND ")
+                .append(DataDBHelper.COLUMN_TIME_MS).append(" < ?");
+        if (type != ANY_TYPE) {
+            selection.append(" AND ").append(DataDBHelper.COLUMN_TYPE).append(" = ?");
+        }
+        if (minValue != Float.NEGATIVE_INFINITY) {
+            selection.append(" AND ").append(DataDBHelper.COLUMN_VALUE).append(" >= ?");
+        }
+        if (maxValue != Float.POSITIVE_INFINITY) {
+            selection.append(" AND ").append(DataDBHelper.COLUMN_VALUE).append(" < ?");
+        }
+        if (deviceId != ANY_DEVICE) {
+            selection.append(" AND ").append(DataDBHelper.COLUMN_DEVICE_ID).append(" = ?");
+        }
+        if (text != null) {
+            selection.append(" AND (").append(DataDBHelper.COLUMN_DATETIME).append(" LIKE ? ESCAPE '\\' OR ")
+                    .append(DataDBHelper.COLUMN_DEVICE_ID).append(" IN (SELECT ").append(DataDBHelper.COLUMN_ID)
+                    .append(" FROM ").append(DataDBHelper.TABLE_DEVICES).append(" WHERE ")
+                    .append(DataDBHelper.COLUMN_NAME).append(" LIKE ? ESCAPE '\\' OR ")
+                    .append(DataDBHelper.COLUMN_ADDRESS).append(" LIKE ? ESCAPE '\\'))");
+        }
+        return selection.toString();
+    }
+
+    String[] selectionArgs() {
+        ArrayList<String> args = new ArrayList<>(8);
+        args.add(String.valueOf(fromMillis));
+        args.add(String.valueOf(toMillis));
+        if (type != ANY_TYPE) {
+            args.add(String.valueOf(type));
+        }
+        if (minValue != Float.NEGATIVE_INFINITY) {
+            args.add(String.valueOf(minValue));
+        }
+        if (maxValue != Float.POSITIVE_INFINITY) {
+            args.add(String.valueOf(maxValue));
+        }
+        if (deviceId != ANY_DEVICE) {
+            args.add(String.valueOf(deviceId));
+        }
+        if (text != null) {
+            String escaped = escapeLike(text);
+            args.add(escaped + "%"); // 日期时间按前缀匹配，例如"2024-05-01 13"
+            args.add("%" + escaped + "%");
+            args.add("%" + escaped + "%");
+        }
+        return args.toArray(new String[0]);
+    }
+
+    // LIKE模式中的通配符按普通字符匹配
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    String orderBy() {
+        return DataDBHelper.COLUMN_TIME_MS + (descending ? " DESC" : " ASC");
+    }
+
+    String limitClause() {
+        return limit == NO_LIMIT ? null : String.valueOf(limit);
+    }
+
+    // 作为缓存键使用
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DataQuery)) {
+            return false;
+        }
+        DataQuery other = (DataQuery) o;
+        return fromMillis == other.fromMillis && toMillis == other.toMillis && type == other.type
+                && limit == other.limit && descending == other.descending
+                && Float.compare(minValue, other.minValue) == 0 && Float.compare(maxValue, other.maxValue) == 0
+                && deviceId == other.deviceId && (text == null ? other.text == null : text.equals(other.text));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Long.hashCode(fromMillis);
+        result = 31 * result + Long.hashCode(toMillis);
+        result = 31 * result + type;
+        result = 31 * result + limit;
+        result = 31 * result + (descending ? 1 : 0);
+        result = 31 * result + Float.floatToIntBits(minValue);
+        result = 31 * result + Float.floatToIntBits(maxValue);
+        result = 31 * result + deviceId;
+        result = 31 * result + (text != null ? text.hashCode() : 0);
+        return result;
+    }
+
+    public static class Builder {
+        private long fromMillis = 0;
+        private long toMillis = Long.MAX_VALUE;
+        private int type = ANY_TYPE;
+        private int limit = NO_LIMIT;
+        private boolean descending = false;
+        private float minValue = Float.NEGATIVE_INFINITY;
+        private float maxValue = Float.POSITIVE_INFINITY;
+        private int deviceId = ANY_DEVICE;
+        private String text = null;
+
+        // 时间范围 [fromMillis, toMillis)
+        public Builder setTimeRange(long fromMillis, long toMillis) {
+            if (toMillis < fromMillis) {
+                throw new IllegalArgumentException("结束时间早于开始时间");
+            }
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            return this;
+        }
+
+        public Builder setType(int type) {
+            this.type = type;
+            return this;
+        }
+
+        public Builder setLimit(int limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("条数上限不能为负");
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        public Builder setDescending(boolean descending) {
+            this.descending = descending;
+            return this;
+        }
+
+        // 数值范围 [minValue, maxValue)，不限制的一端用无穷大
+        public Builder setValueRange(float minValue, float maxValue) {
+            if (Float.isNaN(minValue) || Float.isNaN(maxValue) || maxValue < minValue) {
+                throw new IllegalArgumentException("数值范围无效");
+            }
+            this.minValue = minValue;
+            this.maxValue = maxValue;
+            return this;
+        }
+
+        public Builder setDeviceId(int deviceId) {
+            this.deviceId = deviceId;
+            return this;
+        }
+
+        // 空白文本视为不限制
+        public Builder setText(String text) {
+            this.text = text == null || text.trim().isEmpty() ? null : text.trim();
+            return this;
+        }
+
+        public DataQuery build() {
+            return new DataQuery(this);
+        }
+    }
+}
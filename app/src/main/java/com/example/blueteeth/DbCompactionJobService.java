@@ -0,0 +1,163 @@
+package com.example.blueteeth;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * 数据库压缩任务：设备空闲或充电时由JobScheduler执行，先按保留策略删除数据，
+ * 再分批增量清理把空闲页还给文件系统，并记录压缩前后的页面统计。
+ *
+ * JobScheduler的约束是"且"的关系，因此注册两个每天一次的任务，分别要求空闲和充电，哪个先满足就由哪个执行；
+ * 后执行的一个通常没有需要清理的页，很快结束。
+ */
+public class DbCompactionJobService extends JobService {
+    private static final String TAG = "DbCompaction";
+
+    private static final int JOB_ID_IDLE = 4501;
+    private static final int JOB_ID_CHARGING = 4502;
+    private static final long PERIOD_MILLIS = 24 * 3600_000L;
+    private static final int VACUUM_BATCH_PAGES = 256; // 每批释放的页数，批与批之间界面的查询可以插队
+
+    private JobParameters runningJob; // 仅在主线程访问
+    private DbExecutor.DbTask<?> currentTask;
+    private DataDBHelper.StorageStats statsBefore;
+    private long releasedPages;
+
+    /**
+     * 注册两个压缩任务，已注册时保持不变（避免每次启动都重置周期）
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            return;
+        }
+        ComponentName component = new ComponentName(context, DbCompactionJobService.class);
+        if (scheduler.getPendingJob(JOB_ID_IDLE) == null) {
+            scheduler.schedule(new JobInfo.Builder(JOB_ID_IDLE, component)
+                    .setRequiresDeviceIdle(true)
+                    .setPeriodic(PERIOD_MILLIS)
+                    .setPersisted(false)
+                    .build());
+        }
+        if (scheduler.getPendingJob(JOB_ID_CHARGING) == null) {
+            JobInfo.Builder builder = new JobInfo.Builder(JOB_ID_CHARGING, component)
+                    .setRequiresCharging(true)
+                    .setPeriodic(PERIOD_MILLIS)
+                    .setPersisted(false);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                builder.setRequiresBatteryNotLow(true);
+            }
+            scheduler.schedule(builder.build());
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        if (runningJob != null) {
+            // 另一个任务正在压缩，这次不必重复执行
+            return false;
+        }
+        runningJob = params;
+        releasedPages = 0;
+        DbExecutor dbExecutor = DbExecutor.getInstance(this);
+        currentTask = dbExecutor.getStorageStats(null, new StepCallback<DataDBHelper.StorageStats>() {
+            @Override
+            void next(DataDBHelper.StorageStats stats) {
+                statsBefore = stats;
+                enforceRetention();
+            }
+        });
+        return true;
+    }
+
+    private void enforceRetention() {
+        if (IngestConnection.isMultiProcess(this)) {
+            // 多进程模式下保留策略只在写入数据的:ingest进程执行（每次落库时定期检查），这里只做清理
+            vacuumNextBatch();
+            return;
+        }
+        currentTask = DbExecutor.getInstance(this).enforceRetention(null, new StepCallback<Integer>() {
+            @Override
+            void next(Integer deleted) {
+                if (deleted > 0) {
+                    Log.i(TAG, "保留策略删除了 " + deleted + " 条数据");
+                }
+                vacuumNextBatch();
+            }
+        });
+    }
+
+    private void vacuumNextBatch() {
+        currentTask = DbExecutor.getInstance(this).incrementalVacuum(null, VACUUM_BATCH_PAGES,
+                new StepCallback<Long>() {
+                    @Override
+                    void next(Long released) {
+                        releasedPages += released;
+                        // 直到某一批没有可释放的页为止；完整VACUUM切换模式后也会再检查一次
+                        if (released > 0) {
+                            vacuumNextBatch();
+                        } else {
+                            reportAndFinish();
+                        }
+                    }
+                });
+    }
+
+    private void reportAndFinish() {
+        currentTask = DbExecutor.getInstance(this).getStorageStats(null,
+                new StepCallback<DataDBHelper.StorageStats>() {
+                    @Override
+                    void next(DataDBHelper.StorageStats stats) {
+                        Log.i(TAG, "压缩完成，释放 " + releasedPages + " 页。压缩前：" + statsBefore
+                                + "；压缩后：" + stats);
+                        finish();
+                    }
+                });
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // 条件不再满足（设备被使用或拔掉电源）：停止后续批次，已完成的批次不回滚，下个周期继续
+        if (runningJob == null || runningJob.getJobId() != params.getJobId()) {
+            return false;
+        }
+        if (currentTask != null) {
+            currentTask.cancel(false);
+            currentTask = null;
+        }
+        runningJob = null;
+        return false;
+    }
+
+    private void finish() {
+        currentTask = null;
+        if (runningJob != null) {
+            jobFinished(runningJob, false);
+            runningJob = null;
+        }
+    }
+
+    // 压缩的每一步完成后在主线程继续下一步；任何一步失败都结束本次任务
+    private abstract class StepCallback<T> implements DbExecutor.Callback<T> {
+        abstract void next(T result);
+
+        @Override
+        public void onResult(T result) {
+            if (runningJob != null) {
+                next(result);
+            }
+        }
+
+        @Override
+        public void onError(Exception e) {
+            Log.e(TAG, "数据库压缩失败: " + e.getMessage());
+            finish();
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.example.blueteeth;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 数据库异步访问层：DataDBHelper的所有操作都在后台数据库线程上串行执行，结果通过回调投递到主线程。
+ * 每次提交返回一个DbTask（即Future），可以取消；传入LifecycleOwner时，宿主销毁后自动取消且不再回调。
+ * 界面代码不应直接调用DataDBHelper，debug构建下StrictMode会让主线程上的磁盘访问直接崩溃。
+ * 范围查询和聚合查询的结果经过QueryCache缓存，命中时不进入数据库队列。
+ */
+public class DbExecutor {
+    private static final String TAG = "DbExecutor";
+
+    private static final int QUEUE_CAPACITY = 64;
+
+    /**
+     * 在数据库线程上执行的操作
+     */
+    public interface DbCall<T> {
+        T call(DataDBHelper dbHelper) throws Exception;
+    }
+
+    /**
+     * 结果回调，总是在主线程上调用；任务被取消后两个方法都不会再被调用
+     */
+    public interface Callback<T> {
+        void onResult(T result);
+
+        default void onError(Exception e) {
+            Log.e(TAG, "数据库操作失败: " + e.getMessage());
+        }
+    }
+
+    // 单例模式
+    private static DbExecutor instance;
+
+    private final DataDBHelper dbHelper;
+    private final IngestRuntime runtime = new IngestRuntime("blueoxy-db", false, stage -> Process.setThreadPriority(stage.priority));
+    private final ExecutorService executor = runtime.register(
+            new IngestRuntime.Stage("db", 1, QUEUE_CAPACITY, Process.THREAD_PRIORITY_BACKGROUND));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final QueryCache queryCache = new QueryCache(QueryCache.DEFAULT_MAX_BYTES);
+    // 多进程模式下写入发生在采集进程，本进程收不到提交通知，缓存无法及时失效，因此不使用
+    private final boolean cacheEnabled;
+
+    public static synchronized DbExecutor getInstance(Context context) {
+        if (instance == null) {
+            instance = new DbExecutor(DataDBHelper.getInstance(context), !IngestConnection.isMultiProcess(context));
+        }
+        return instance;
+    }
+
+    private DbExecutor(DataDBHelper dbHelper, boolean cacheEnabled) {
+        this.dbHelper = dbHelper;
+        this.cacheEnabled = cacheEnabled;
+        dbHelper.addCommitListener(queryCache); // 写入提交后按时间范围使缓存失效
+    }
+
+    /**
+     * 提交任意数据库操作。owner不为空时任务与其生命周期绑定，必须在主线程调用
+     */
+    public <T> DbTask<T> submit(LifecycleOwner owner, DbCall<T> call, Callback<T> callback) {
+        DbTask<T> task = new DbTask<>(dbHelper, call, callback);
+        if (!bind(owner, task)) {
+            return task;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "数据库队列已满，操作被拒绝");
+            task.fail(e);
+        }
+        return task;
+    }
+
+    // 缓存命中：在调用线程上直接完成任务，回调仍然投递到主线程
+    private <T> DbTask<T> complete(LifecycleOwner owner, T result, Callback<T> callback) {
+        DbTask<T> task = new DbTask<>(dbHelper, db -> result, callback);
+        if (bind(owner, task)) {
+            task.run();
+        }
+        return task;
+    }
+
+    // 绑定到宿主的生命周期；宿主已销毁时直接取消任务并返回false
+    private boolean bind(LifecycleOwner owner, DbTask<?> task) {
+        if (owner == null) {
+            return true;
+        }
+        if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+            task.cancel(false);
+            return false;
+        }
+        task.bindTo(owner);
+        return true;
+    }
+
+    public DbTask<ArrayList<DataPoint>> query(LifecycleOwner owner, DataQuery query,
+            Callback<ArrayList<DataPoint>> callback) {
+        ArrayList<DataPoint> cached = cacheEnabled ? queryCache.getPoints(query) : null;
+        if (cached != null) {
+            return complete(owner, cached, callback);
+        }
+        return submit(owner, db -> {
+            long watermark = db.getCommitWatermark();
+            ArrayList<DataPoint> result = db.query(query);
+            if (cacheEnabled) {
+                queryCache.putPoints(query, watermark, result);
+            }
+            return result;
+        }, callback);
+    }
+
+    public DbTask<ArrayList<AggregateBucket>> aggregate(LifecycleOwner owner, DataQuery query, long bucketMillis,
+            Callback<ArrayList<AggregateBucket>> callback) {
+        ArrayList<AggregateBucket> cached = cacheEnabled ? queryCache.getBuckets(query, bucketMillis) : null;
+        if (cached != null) {
+            return complete(owner, cached, callback);
+        }
+        return submit(owner, db -> {
+            long watermark = db.getCommitWatermark();
+            ArrayList<AggregateBucket> result = db.aggregate(query, bucketMillis);
+            if (cacheEnabled) {
+                queryCache.putBuckets(query, bucketMillis, watermark, result);
+            }
+            return result;
+        }, callback);
+    }
+
+    public DbTask<ArrayList<DataPoint>> getHistoryData(LifecycleOwner owner,
+            Callback<ArrayList<DataPoint>> callback) {
+        return query(owner, DataDBHelper.historyQuery(), callback);
+    }
+
+    // 分页结果是筛选时的快照，不经过缓存
+    public DbTask<ArrayList<DataPoint>> queryPage(LifecycleOwner owner, DataQuery query, DataPoint after,
+            Callback<ArrayList<DataPoint>> callback) {
+        return submit(owner, db -> db.queryPage(query, after), callback);
+    }
+
+    public DbTask<ArrayList<DataDBHelper.Device>> getDevices(LifecycleOwner owner,
+            Callback<ArrayList<DataDBHelper.Device>> callback) {
+        return submit(owner, DataDBHelper::getDevices, callback);
+    }
+
+    public DbTask<HistoryDelta> getHistoryDelta(LifecycleOwner owner, long afterId, long fromMillis,
+            Callback<HistoryDelta> callback) {
+        return submit(owner, db -> db.getHistoryDelta(afterId, fromMillis), callback);
+    }
+
+    public DbTask<ArrayList<Episode>> getEpisodes(LifecycleOwner owner, long fromMillis, long toMillis, int type,
+            int limit, Callback<ArrayList<Episode>> callback) {
+        return submit(owner, db -> db.getEpisodes(fromMillis, toMillis, type, limit), callback);
+    }
+
+    public DbTask<ArrayList<AlarmEvent>> getAlarmEvents(LifecycleOwner owner, long sinceMillis, int limit,
+            Callback<ArrayList<AlarmEvent>> callback) {
+        return submit(owner, db -> db.getAlarmEvents(sinceMillis, limit), callback);
+    }
+
+    public DbTask<Integer> getDataPointCount(LifecycleOwner owner, Callback<Integer> callback) {
+        return submit(owner, DataDBHelper::getDataPointCount, callback);
+    }
+
+    public DbTask<Integer> getDataPointCountByType(LifecycleOwner owner, int type, Callback<Integer> callback) {
+        return submit(owner, db -> db.getDataPointCountByType(type), callback);
+    }
+
+    public DbTask<Integer> enforceRetention(LifecycleOwner owner, Callback<Integer> callback) {
+        return submit(owner, db -> db.enforceRetention(RetentionPolicy.getDefault(), System.currentTimeMillis()),
+                callback);
+    }
+
+    public DbTask<DataDBHelper.StorageStats> getStorageStats(LifecycleOwner owner,
+            Callback<DataDBHelper.StorageStats> callback) {
+        return submit(owner, DataDBHelper::getStorageStats, callback);
+    }
+
+    // 每次只释放一小批空闲页，调用方按需重复提交，期间界面的查询可以插队执行
+    public DbTask<Long> incrementalVacuum(LifecycleOwner owner, int maxPages, Callback<Long> callback) {
+        return submit(owner, db -> db.incrementalVacuum(maxPages), callback);
+    }
+
+    public DbTask<Boolean> addDataPoints(LifecycleOwner owner, List<DataPoint> dataPoints, Callback<Boolean> callback) {
+        return submit(owner, db -> db.addDataPoints(dataPoints), callback);
+    }
+
+    // 清空是写操作：宿主销毁时只取消尚未开始的清空，已开始的会执行完，只是不再回调
+    public DbTask<Void> clearAllData(LifecycleOwner owner, Callback<Void> callback) {
+        return submit(owner, db -> {
+            db.clearAllData();
+            return null;
+        }, callback);
+    }
+
+    public List<IngestRuntime.Stats> getStats() {
+        return runtime.getStats();
+    }
+
+    /**
+     * 查询缓存的命中/未命中等统计
+     */
+    public QueryCache.Stats getCacheStats() {
+        return queryCache.getStats();
+    }
+
+    /**
+     * 一次数据库操作。取消不会中断正在执行的SQL（避免打断事务），只保证之后不再回调
+     */
+    public class DbTask<T> extends FutureTask<T> {
+        private final Callback<T> callback;
+        private volatile boolean cancelRequested = false;
+        private LifecycleOwner owner; // 仅在主线程访问
+        private LifecycleEventObserver observer;
+
+        DbTask(DataDBHelper dbHelper, DbCall<T> call, Callback<T> callback) {
+            super(() -> call.call(dbHelper));
+            this.callback = callback;
+        }
+
+        private void bindTo(LifecycleOwner owner) {
+            this.owner = owner;
+            this.observer = (source, event) -> {
+                if (event == Lifecycle.Event.ON_DESTROY) {
+                    cancel(false);
+                }
+            };
+            owner.getLifecycle().addObserver(observer);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            cancelRequested = true;
+            // 已完成的任务也要标记，防止已经投递到主线程的回调继续执行
+            boolean cancelled = super.cancel(false);
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                unbind();
+            }
+            return cancelled;
+        }
+
+        public boolean isCancelRequested() {
+            return cancelRequested;
+        }
+
+        // 数据库线程上完成（或被取消）后，切回主线程回调
+        @Override
+        protected void done() {
+            if (cancelRequested) {
+                return;
+            }
+            mainHandler.post(this::deliver);
+        }
+
+        private void fail(Exception e) {
+            mainHandler.post(() -> {
+                unbind();
+                if (!cancelRequested && callback != null) {
+                    callback.onError(e);
+                }
+            });
+        }
+
+        private void deliver() {
+            unbind();
+            if (cancelRequested || callback == null) {
+                return;
+            }
+            T result;
+            try {
+                result = get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                callback.onError(cause instanceof Exception ? (Exception) cause : new RuntimeException(cause));
+                return;
+            } catch (InterruptedException | CancellationException e) {
+                return;
+            }
+            callback.onResult(result);
+        }
+
+        private void unbind() {
+            if (owner != null) {
+                owner.getLifecycle().removeObserver(observer);
+                owner = null;
+                observer = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.blueteeth;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 发送给下位机的控制命令，按行发送，格式与接收数据一致以\r\n结尾：
+ * RATE:[采样频率Hz]、CH[通道号]:ON/OFF、PAUSE、RESUME
+ */
+public class DeviceCommand {
+    // 采样频率的上下限(Hz)
+    public static final int MIN_RATE_HZ = 1;
+    public static final int MAX_RATE_HZ = 50;
+
+    private final String line;
+
+    private DeviceCommand(String line) {
+        this.line = line;
+    }
+
+    public static DeviceCommand setRate(int rateHz) {
+        int rate = Math.max(MIN_RATE_HZ, Math.min(MAX_RATE_HZ, rateHz));
+        return new DeviceCommand("RATE:" + rate);
+    }
+
+    /**
+     * 开启或关闭某个数据通道
+     * @param type 数据类型，对应下位机的 Data1/Data2/Data3 通道
+     */
+    public static DeviceCommand setChannelEnabled(int type, boolean enabled) {
+        return new DeviceCommand("CH" + channelOf(type) + (enabled ? ":ON" : ":OFF"));
+    }
+
+    public static DeviceCommand pause() {
+        return new DeviceCommand("PAUSE");
+    }
+
+    public static DeviceCommand resume() {
+        return new DeviceCommand("RESUME");
+    }
+
+    // DataPoint类型到下位机通道号的映射（Data1为原始ADC，Data2为氧浓度，Data3为电压）
+    private static int channelOf(int type) {
+        switch (type) {
+            case DataPoint.TYPE_RAW:
+                return 1;
+            case DataPoint.TYPE_PERCENTAGE:
+                return 2;
+            case DataPoint.TYPE_VOLTAGE:
+                return 3;
+            default:
+                throw new IllegalArgumentException("未知数据类型: " + type);
+        }
+    }
+
+    public byte[] toBytes() {
+        return (line + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public String toString() {
+        return line;
+    }
+}
@@ -1,33 +1,41 @@
 package com.example.blueteeth;
 
-import android.Manifest;
-import android.bluetooth.BluetoothDevice;
 import android.content.Context;
-import android.content.pm.PackageManager;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.BaseAdapter;
 import android.widget.TextView;
 
-import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
-import androidx.core.app.ActivityCompat;
-
-import java.util.ArrayList;
-
-public class DeviceListAdapter extends ArrayAdapter<BluetoothDevice> {
+public class DeviceListAdapter extends BaseAdapter {
 
     private final LayoutInflater inflater;
+    private final ScanResultsModel scanResults;
+    private final String unknownDeviceName;
 
-    public DeviceListAdapter(Context context, ArrayList<BluetoothDevice> devices) {
-        super(context, 0, devices);
+    public DeviceListAdapter(Context context, ScanResultsModel scanResults) {
         this.inflater = LayoutInflater.from(context);
+        this.scanResults = scanResults;
+        this.unknownDeviceName = context.getString(R.string.unknown_device);
     }
 
-    @NonNull
     @Override
-    public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
+    public int getCount() {
+        return scanResults.size();
+    }
+
+    @Override
+    public ScanResultsModel.Entry getItem(int position) {
+        return scanResults.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
         ViewHolder holder;
 
         if (convertView == null) {
@@ -40,23 +48,17 @@ public class DeviceListAdapter extends ArrayAdapter<BluetoothDevice> {
             holder = (ViewHolder) convertView.getTag();
         }
 
-        BluetoothDevice device = getItem(position);
-        if (device != null) {
-            // 检查蓝牙权限
-            if (ActivityCompat.checkSelfPermission(getContext(),
-                    Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED) {
-                String deviceName = device.getName();
-                if (deviceName != null && !deviceName.isEmpty()) {
-                    holder.deviceName.setText(deviceName);
-                } else {
-                    holder.deviceName.setText(R.string.unknown_device);
-                }
-            } else {
-                holder.deviceName.setText(R.string.unknown_device);
-            }
+        ScanResultsModel.Entry entry = getItem(position);
+
+        // 设备名称在发现时已读取并缓存（权限检查也只在那时做一次）
+        String deviceName = entry.getName();
+        holder.deviceName.setText(deviceName != null && !deviceName.isEmpty() ? deviceName : unknownDeviceName);
 
-            // 设备地址不需要权限
-            holder.deviceAddress.setText(device.getAddress());
+        // 设备地址和信号强度
+        if (entry.getRssi() != ScanResultsModel.RSSI_UNKNOWN) {
+            holder.deviceAddress.setText(entry.address + "  " + entry.getRssi() + " dBm");
+        } else {
+            holder.deviceAddress.setText(entry.address);
         }
 
         return convertView;
@@ -66,4 +68,4 @@ public class DeviceListAdapter extends ArrayAdapter<BluetoothDevice> {
         TextView deviceName;
         TextView deviceAddress;
     }
-}
\ No newline at end of file
+}
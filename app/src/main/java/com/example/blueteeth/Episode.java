@@ -0,0 +1,75 @@
+package com.example.blueteeth;
+
+/**
+ * 异常段：同一规则下连续超出范围的一段采样（例如氧浓度低于16%持续2分钟），对应 episodes 表的一行
+ */
+public class Episode {
+    private final long id; // 未入库时为0
+    private final int ruleId;
+    private final String ruleName;
+    private final int dataType; // DataPoint.TYPE_*
+    private final int deviceId;
+    private final long startMillis; // 第一个超出范围的采样时刻
+    private final long endMillis; // 最后一个超出范围的采样时刻
+    private final float minValue;
+    private final float maxValue;
+    private final int sampleCount; // 超出范围的采样数
+
+    public Episode(long id, int ruleId, String ruleName, int dataType, int deviceId, long startMillis,
+            long endMillis, float minValue, float maxValue, int sampleCount) {
+        this.id = id;
+        this.ruleId = ruleId;
+        this.ruleName = ruleName;
+        this.dataType = dataType;
+        this.deviceId = deviceId;
+        this.startMillis = startMillis;
+        this.endMillis = endMillis;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        this.sampleCount = sampleCount;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getRuleId() {
+        return ruleId;
+    }
+
+    public String getRuleName() {
+        return ruleName;
+    }
+
+    public int getDataType() {
+        return dataType;
+    }
+
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public long getEndMillis() {
+        return endMillis;
+    }
+
+    public long getDurationMillis() {
+        return endMillis - startMillis;
+    }
+
+    public float getMinValue() {
+        return minValue;
+    }
+
+    public float getMaxValue() {
+        return maxValue;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.blueteeth;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 流式异常段检测：在读取线程中逐个采样判断是否超出范围（低于/高于规则的阈值），
+ * 把连续超出范围的采样合并成一个异常段，记录开始、结束、最小值、最大值和采样数。
+ *
+ * 回到正常范围不超过mergeGapMillis的短暂波动不拆分异常段；两个采样间隔超过maxSampleGapMillis
+ * （断开连接、停止测量）时，进行中的异常段在最后一个超出范围的采样处结束。
+ * 采样处理不分配对象，只有异常段结束时才创建Episode并回调Listener。
+ * 范围来自报警规则中的低于/高于规则，不考虑报警的回差和持续时间。
+ */
+public class EpisodeDetector {
+    public static final long DEFAULT_MERGE_GAP_MILLIS = 5_000;
+    public static final long DEFAULT_MAX_SAMPLE_GAP_MILLIS = 30_000;
+
+    private static final int CHANNEL_COUNT = 3; // DataPoint.TYPE_RAW / TYPE_PERCENTAGE / TYPE_VOLTAGE
+
+    /**
+     * 异常段结束回调，在调用onSample/flush的线程中执行，应尽快返回
+     */
+    public interface Listener {
+        void onEpisodeClosed(Episode episode);
+    }
+
+    // 一条规则的检测状态
+    private static final class Tracker {
+        final AlarmRule rule;
+        boolean open = false;
+        long startMillis;
+        long lastOutMillis; // 最后一个超出范围的采样时刻
+        long returnedMillis = -1; // 回到正常范围的时刻，-1表示仍在范围外
+        long lastSampleMillis = -1;
+        float minValue;
+        float maxValue;
+        int sampleCount;
+        int deviceId;
+
+        Tracker(AlarmRule rule) {
+            this.rule = rule;
+        }
+    }
+
+    private final Listener listener;
+    private final long mergeGapMillis;
+    private final long maxSampleGapMillis;
+    private Tracker[][] trackersByType;
+
+    public EpisodeDetector(Listener listener, AlarmRule... rules) {
+        this(listener, DEFAULT_MERGE_GAP_MILLIS, DEFAULT_MAX_SAMPLE_GAP_MILLIS, rules);
+    }
+
+    public EpisodeDetector(Listener listener, long mergeGapMillis, long maxSampleGapMillis, AlarmRule... rules) {
+        if (mergeGapMillis < 0 || maxSampleGapMillis <= 0) {
+            throw new IllegalArgumentException("时间间隔无效");
+        }
+        this.listener = listener;
+        this.mergeGapMillis = mergeGapMillis;
+        this.maxSampleGapMillis = maxSampleGapMillis;
+        this.trackersByType = buildTrackers(rules);
+    }
+
+    // 替换规则，进行中的异常段先按当前状态结束
+    public synchronized void setRules(List<AlarmRule> rules) {
+        flush();
+        trackersByType = buildTrackers(rules.toArray(new AlarmRule[0]));
+    }
+
+    /**
+     * 处理一个采样
+     */
+    public synchronized void onSample(int type, long timeMillis, float value, int deviceId) {
+        if (type < 0 || type >= CHANNEL_COUNT) {
+            return;
+        }
+        for (Tracker tracker : trackersByType[type]) {
+            // 采样中断过久，异常段在中断前结束
+            if (tracker.open && timeMillis - tracker.lastSampleMillis > maxSampleGapMillis) {
+                close(tracker);
+            }
+            tracker.lastSampleMillis = timeMillis;
+
+            if (isOutOfRange(tracker.rule, value)) {
+                if (!tracker.open) {
+                    tracker.open = true;
+                    tracker.startMillis = timeMillis;
+                    tracker.minValue = value;
+                    tracker.maxValue = value;
+                    tracker.sampleCount = 0;
+                    tracker.deviceId = deviceId;
+                }
+                tracker.lastOutMillis = timeMillis;
+                tracker.returnedMillis = -1;
+                tracker.minValue = Math.min(tracker.minValue, value);
+                tracker.maxValue = Math.max(tracker.maxValue, value);
+                tracker.sampleCount++;
+            } else if (tracker.open) {
+                if (tracker.returnedMillis < 0) {
+                    tracker.returnedMillis = timeMillis;
+                }
+                if (timeMillis - tracker.returnedMillis >= mergeGapMillis) {
+                    close(tracker);
+                }
+            }
+        }
+    }
+
+    /**
+     * 结束所有进行中的异常段（断开连接或服务停止时调用）
+     */
+    public synchronized void flush() {
+        for (Tracker[] trackers : trackersByType) {
+            for (Tracker tracker : trackers) {
+                if (tracker.open) {
+                    close(tracker);
+                }
+                tracker.lastSampleMillis = -1;
+            }
+        }
+    }
+
+    private void close(Tracker tracker) {
+        tracker.open = false;
+        tracker.returnedMillis = -1;
+        AlarmRule rule = tracker.rule;
+        listener.onEpisodeClosed(new Episode(0, rule.id, rule.name, rule.dataType, tracker.deviceId,
+                tracker.startMillis, tracker.lastOutMillis, tracker.minValue, tracker.maxValue, tracker.sampleCount));
+    }
+
+    private static boolean isOutOfRange(AlarmRule rule, float value) {
+        return rule.kind == AlarmRule.KIND_BELOW ? value < rule.threshold : value > rule.threshold;
+    }
+
+    // 只保留范围类规则（低于/高于），按通道分组
+    private static Tracker[][] buildTrackers(AlarmRule[] rules) {
+        Tracker[][] trackers = new Tracker[CHANNEL_COUNT][];
+        for (int type = 0; type < CHANNEL_COUNT; type++) {
+            ArrayList<Tracker> list = new ArrayList<>();
+            for (AlarmRule rule : rules) {
+                if (rule.dataType == type
+                        && (rule.kind == AlarmRule.KIND_BELOW || rule.kind == AlarmRule.KIND_ABOVE)) {
+                    list.add(new Tracker(rule));
+                }
+            }
+            trackers[type] = list.toArray(new Tracker[0]);
+        }
+        return trackers;
+    }
+}
@@ -6,9 +6,13 @@ import android.util.Log;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.ArrayAdapter;
 import android.widget.BaseAdapter;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.ListView;
+import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -22,26 +26,68 @@ import java.util.List;
 import java.util.Locale;
 
 public class HistoryActivity extends AppCompatActivity {
+    // 筛选结果每页条数，滚动到距末尾不足PAGE_PREFETCH行时加载下一页
+    private static final int PAGE_SIZE = 100;
+    private static final int PAGE_PREFETCH = 20;
+    private static final int MAX_EPISODES = 200; // 异常段列表最多显示的条数
+
+    // 时间窗口下拉框各项对应的时长，与R.array.history_filter_windows一致
+    private static final long[] FILTER_WINDOW_MILLIS = {60 * 60 * 1000L, 24 * 60 * 60 * 1000L, 7 * 24 * 60 * 60 * 1000L};
+    // 类型下拉框各项对应的数据类型，与R.array.history_filter_types一致
+    private static final int[] FILTER_TYPES = {DataQuery.ANY_TYPE, DataPoint.TYPE_RAW, DataPoint.TYPE_PERCENTAGE, DataPoint.TYPE_VOLTAGE};
 
     private ListView historyListView;
     private Button clearButton;
     private Button backButton;
     private TextView emptyTextView;
 
-    // 历史数据
-    private ArrayList<DataPoint> historyData = new ArrayList<>();
+    // 筛选栏
+    private Spinner typeSpinner;
+    private Spinner windowSpinner;
+    private Spinner deviceSpinner;
+    private EditText minValueEdit;
+    private EditText maxValueEdit;
+    private EditText searchEdit;
+    private TextView filterStatusTextView;
+    private final ArrayList<DataDBHelper.Device> devices = new ArrayList<>();
+
+    // 筛选模式：activeFilter不为空时列表显示分页加载的筛选结果
+    private DataQuery activeFilter;
+    private final ArrayList<DataPoint> searchResults = new ArrayList<>();
+    private boolean searchExhausted = false;
+    private DbExecutor.DbTask<?> pageTask; // 正在加载的页
+
+    // 历史数据（从新到旧显示），恢复页面时只增量读取新行、裁剪过期行
+    private final HistoryList historyData = new HistoryList();
+    private long appliedClearedThroughId = DataPoint.NO_ID; // 已处理过的清空标记
     private HistoryDataAdapter adapter;
 
-    // 数据库帮助类
-    private DataDBHelper dbHelper;
+    // 数据库异步访问，所有数据库操作都不在主线程执行
+    private DbExecutor dbExecutor;
+    private DbExecutor.DbTask<?> loadTask; // 正在进行的加载
+
+    // 多进程模式下清空数据由采集进程执行，只在该模式下绑定
+    private IngestConnection ingestConnection;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_history);
 
-        // 初始化数据库帮助类
-        dbHelper = DataDBHelper.getInstance(this);
+        // 初始化数据库异步访问
+        dbExecutor = DbExecutor.getInstance(this);
+        ingestConnection = new IngestConnection(this, null, new IngestConnection.Listener() {
+            @Override
+            public void onConnected() {
+            }
+
+            @Override
+            public void onDisconnected() {
+            }
+        });
+        if (ingestConnection.isRemote()) {
+            ingestConnection.bind();
+        }
 
         // 启用返回按钮
         if (getSupportActionBar() != null) {
@@ -54,49 +100,311 @@ public class HistoryActivity extends AppCompatActivity {
         clearButton = findViewById(R.id.btn_clear_history);
         backButton = findViewById(R.id.btn_back);
         emptyTextView = findViewById(R.id.txt_empty_history);
-
-        // 加载历史数据
-        loadHistoryData();
-
-        // 设置适配器
+        typeSpinner = findViewById(R.id.spinner_filter_type);
+        windowSpinner = findViewById(R.id.spinner_filter_window);
+        deviceSpinner = findViewById(R.id.spinner_filter_device);
+        minValueEdit = findViewById(R.id.edit_filter_min);
+        maxValueEdit = findViewById(R.id.edit_filter_max);
+        searchEdit = findViewById(R.id.edit_filter_text);
+        filterStatusTextView = findViewById(R.id.txt_filter_status);
+        windowSpinner.setSelection(FILTER_WINDOW_MILLIS.length - 1);
+        loadDevices();
+
+        // 设置适配器（数据在onResume中异步加载）
         adapter = new HistoryDataAdapter();
         historyListView.setAdapter(adapter);
 
+        // 筛选模式下滚动接近末尾时加载下一页
+        historyListView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                if (activeFilter != null && firstVisibleItem + visibleItemCount >= totalItemCount - PAGE_PREFETCH) {
+                    loadNextPage();
+                }
+            }
+        });
+
         // 更新空视图状态
         updateEmptyView();
 
         // 按钮点击事件
         clearButton.setOnClickListener(v -> showClearConfirmDialog());
         backButton.setOnClickListener(v -> finish());
+        findViewById(R.id.btn_filter_apply).setOnClickListener(v -> applyFilter());
+        findViewById(R.id.btn_filter_reset).setOnClickListener(v -> resetFilter());
+        findViewById(R.id.btn_episodes).setOnClickListener(v -> showEpisodes());
     }
 
-    // 加载历史数据
-    private void loadHistoryData() {
-        // 清除当前列表
-        historyData.clear();
+    // 从异常段表读取所选时间窗口内的异常段，选中后直接定位到该段的原始数据
+    private void showEpisodes() {
+        long windowMillis = FILTER_WINDOW_MILLIS[windowSpinner.getSelectedItemPosition()];
+        long now = System.currentTimeMillis();
+        int type = FILTER_TYPES[typeSpinner.getSelectedItemPosition()];
+        dbExecutor.getEpisodes(this, now - windowMillis, Long.MAX_VALUE, type, MAX_EPISODES, episodes -> {
+            if (episodes.isEmpty()) {
+                Toast.makeText(this, "所选时间内没有异常段", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss", Locale.getDefault());
+            String[] labels = new String[episodes.size()];
+            for (int i = 0; i < episodes.size(); i++) {
+                Episode episode = episodes.get(i);
+                labels[i] = String.format(Locale.getDefault(), "%s  %s  持续%d秒  最低%.2f",
+                        format.format(new Date(episode.getStartMillis())), episode.getRuleName(),
+                        episode.getDurationMillis() / 1000, episode.getMinValue());
+            }
+            new AlertDialog.Builder(this)
+                    .setTitle("异常段")
+                    .setItems(labels, (dialog, which) -> showEpisodeData(episodes.get(which)))
+                    .setNegativeButton(R.string.cancel, null)
+                    .show();
+        });
+    }
 
+    // 进入筛选模式，只显示该异常段时间范围内的同类型数据
+    private void showEpisodeData(Episode episode) {
+        DataQuery query = new DataQuery.Builder()
+                .setTimeRange(episode.getStartMillis(), episode.getEndMillis() + 1)
+                .setType(episode.getDataType())
+                .setLimit(PAGE_SIZE)
+                .setDescending(true)
+                .build();
+        startFilter(query);
+    }
+
+    // 读取设备表，填充设备下拉框（第一项为全部设备）
+    private void loadDevices() {
+        dbExecutor.getDevices(this, result -> {
+            devices.clear();
+            devices.addAll(result);
+            ArrayList<String> labels = new ArrayList<>(devices.size() + 1);
+            labels.add("全部设备");
+            for (DataDBHelper.Device device : devices) {
+                labels.add(device.name != null ? device.name : device.address);
+            }
+            ArrayAdapter<String> deviceAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, labels);
+            deviceAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+            deviceSpinner.setAdapter(deviceAdapter);
+        });
+    }
+
+    // 根据筛选栏构建查询条件，数值输入无效时返回null
+    private DataQuery buildFilterQuery() {
+        float minValue = Float.NEGATIVE_INFINITY;
+        float maxValue = Float.POSITIVE_INFINITY;
         try {
-            // 从数据库中获取最近一周的数据
-            ArrayList<DataPoint> dbData = dbHelper.getLastWeekData();
+            String minText = minValueEdit.getText().toString().trim();
+            String maxText = maxValueEdit.getText().toString().trim();
+            if (!minText.isEmpty()) {
+                minValue = Float.parseFloat(minText);
+            }
+            if (!maxText.isEmpty()) {
+                maxValue = Float.parseFloat(maxText);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (maxValue < minValue) {
+            return null;
+        }
+
+        int devicePosition = deviceSpinner.getSelectedItemPosition();
+        long windowMillis = FILTER_WINDOW_MILLIS[windowSpinner.getSelectedItemPosition()];
+        return new DataQuery.Builder()
+                .setTimeRange(System.currentTimeMillis() - windowMillis, Long.MAX_VALUE)
+                .setType(FILTER_TYPES[typeSpinner.getSelectedItemPosition()])
+                .setValueRange(minValue, maxValue)
+                .setDeviceId(devicePosition > 0 ? devices.get(devicePosition - 1).id : DataQuery.ANY_DEVICE)
+                .setText(searchEdit.getText().toString())
+                .setLimit(PAGE_SIZE)
+                .setDescending(true)
+                .build();
+    }
 
-            // 添加到历史数据列表
-            if (dbData != null && !dbData.isEmpty()) {
-                historyData.addAll(dbData);
+    // 按筛选栏的条件筛选
+    private void applyFilter() {
+        DataQuery query = buildFilterQuery();
+        if (query == null) {
+            Toast.makeText(this, "数值范围无效", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        startFilter(query);
+    }
+
+    // 进入筛选模式，从第一页开始加载
+    private void startFilter(DataQuery query) {
+        if (loadTask != null) {
+            loadTask.cancel(false);
+            loadTask = null;
+        }
+        if (pageTask != null) {
+            pageTask.cancel(false);
+            pageTask = null;
+        }
+        activeFilter = query;
+        searchResults.clear();
+        searchExhausted = false;
+        adapter.notifyDataSetChanged();
+        historyListView.setSelection(0);
+        loadNextPage();
+    }
+
+    // 退出筛选模式，回到保留期内的完整列表
+    private void resetFilter() {
+        if (pageTask != null) {
+            pageTask.cancel(false);
+            pageTask = null;
+        }
+        activeFilter = null;
+        searchResults.clear();
+        typeSpinner.setSelection(0);
+        windowSpinner.setSelection(FILTER_WINDOW_MILLIS.length - 1);
+        deviceSpinner.setSelection(0);
+        minValueEdit.setText("");
+        maxValueEdit.setText("");
+        searchEdit.setText("");
+        filterStatusTextView.setText("");
+        adapter.notifyDataSetChanged();
+        updateEmptyView();
+        loadHistoryData();
+    }
+
+    // 加载筛选结果的下一页（键集分页，从上一页最后一行之后继续）
+    private void loadNextPage() {
+        if (activeFilter == null || searchExhausted || pageTask != null) {
+            return;
+        }
+        DataQuery query = activeFilter;
+        DataPoint after = searchResults.isEmpty() ? null : searchResults.get(searchResults.size() - 1);
+        long startNanos = System.nanoTime();
+        pageTask = dbExecutor.queryPage(this, query, after, new DbExecutor.Callback<ArrayList<DataPoint>>() {
+            @Override
+            public void onResult(ArrayList<DataPoint> page) {
+                pageTask = null;
+                searchResults.addAll(page);
+                searchExhausted = page.size() < query.limit;
+                filterStatusTextView.setText(String.format(Locale.getDefault(), "%s %d 条（%.0f ms）",
+                        searchExhausted ? "共" : "已加载", searchResults.size(), (System.nanoTime() - startNanos) / 1e6));
+                adapter.notifyDataSetChanged();
+                updateEmptyView();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                pageTask = null;
+                Log.e("HistoryActivity", "筛选历史数据失败: " + e.getMessage());
+                Toast.makeText(HistoryActivity.this, "筛选历史数据失败", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    // 加载历史数据：首次全量读取，之后只增量读取新行
+    private void loadHistoryData() {
+        // 只保留最新一次加载
+        if (loadTask != null) {
+            loadTask.cancel(false);
+        }
+        if (historyData.getMaxId() == DataPoint.NO_ID) {
+            loadFullHistory();
+        } else {
+            loadHistoryDelta();
+        }
+    }
+
+    // 全量读取保留期内的数据（可能直接命中查询缓存）
+    private void loadFullHistory() {
+        loadTask = dbExecutor.getHistoryData(this, new DbExecutor.Callback<ArrayList<DataPoint>>() {
+            @Override
+            public void onResult(ArrayList<DataPoint> dbData) {
+                loadTask = null;
+                historyData.reset(dbData);
 
                 // 记录日志
-                Log.d("HistoryActivity", "已从数据库加载 " + dbData.size() + " 条历史数据");
-            } else {
-                Log.d("HistoryActivity", "数据库中没有历史数据");
+                if (!dbData.isEmpty()) {
+                    Log.d("HistoryActivity", "已从数据库加载 " + dbData.size() + " 条历史数据");
+                } else {
+                    Log.d("HistoryActivity", "数据库中没有历史数据");
+                }
+                adapter.notifyDataSetChanged();
+                updateEmptyView();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                loadTask = null;
+                Log.e("HistoryActivity", "加载历史数据失败: " + e.getMessage());
+                Toast.makeText(HistoryActivity.this, "加载历史数据失败", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    // 增量刷新：只读取行号大于已加载最大行号的新行，再按删除标记和历史窗口裁剪旧行
+    private void loadHistoryDelta() {
+        long windowStart = DataDBHelper.historyQuery().fromMillis;
+        loadTask = dbExecutor.getHistoryDelta(this, historyData.getMaxId(), windowStart,
+                new DbExecutor.Callback<HistoryDelta>() {
+                    @Override
+                    public void onResult(HistoryDelta delta) {
+                        loadTask = null;
+                        applyHistoryDelta(delta, windowStart);
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        loadTask = null;
+                        Log.e("HistoryActivity", "刷新历史数据失败: " + e.getMessage());
+                    }
+                });
+    }
+
+    private void applyHistoryDelta(HistoryDelta delta, long windowStart) {
+        // 记住第一个可见行，更新后滚动回同一行；停在顶部时直接显示新数据
+        DataPoint anchor = null;
+        int anchorTop = 0;
+        int firstVisible = historyListView.getFirstVisiblePosition();
+        View firstView = historyListView.getChildAt(0);
+        if (firstView != null && (firstVisible > 0 || firstView.getTop() < 0) && firstVisible < historyData.size()) {
+            anchor = historyData.get(firstVisible);
+            anchorTop = firstView.getTop();
+        }
+
+        historyData.addAll(delta.added);
+        int removed = 0;
+        if (delta.clearedThroughId > appliedClearedThroughId) {
+            removed += historyData.removeThroughId(delta.clearedThroughId);
+            appliedClearedThroughId = delta.clearedThroughId;
+        }
+        long trimmedBefore = Math.max(windowStart, delta.deletedBeforeMillis);
+        removed += historyData.trimOlderThan(trimmedBefore);
+        // 保留策略按类型删除时，只移除对应类型的行
+        for (int type = 0; type < delta.deletedBeforeByType.length; type++) {
+            if (delta.deletedBeforeByType[type] > trimmedBefore) {
+                removed += historyData.trimTypeOlderThan(type, delta.deletedBeforeByType[type]);
+            }
+        }
+        if (delta.added.isEmpty() && removed == 0) {
+            return;
+        }
+        Log.d("HistoryActivity", "增量刷新历史数据：新增 " + delta.added.size() + " 条，移除 " + removed + " 条");
+
+        adapter.notifyDataSetChanged();
+        updateEmptyView();
+        if (anchor != null) {
+            int position = historyData.positionOf(anchor);
+            if (position >= 0) {
+                historyListView.setSelectionFromTop(position, anchorTop);
             }
-        } catch (Exception e) {
-            Log.e("HistoryActivity", "加载历史数据失败: " + e.getMessage());
-            Toast.makeText(this, "加载历史数据失败", Toast.LENGTH_SHORT).show();
         }
     }
 
     // 更新空视图状态
     private void updateEmptyView() {
-        if (historyData.isEmpty()) {
+        emptyTextView.setText(activeFilter != null ? "没有符合条件的记录" : "暂无历史数据");
+        if (adapter.getCount() == 0) {
             emptyTextView.setVisibility(View.VISIBLE);
             historyListView.setVisibility(View.GONE);
         } else {
@@ -120,37 +428,49 @@ public class HistoryActivity extends AppCompatActivity {
         builder.show();
     }
 
-    // 清除历史数据
+    // 清除历史数据：删除整张表可能较慢，在数据库线程执行
     private void clearHistoryData() {
-        try {
-            // 清除数据库中的所有数据
-            dbHelper.clearAllData();
+        clearButton.setEnabled(false);
+        ingestConnection.clearAllData(dbExecutor, this, new DbExecutor.Callback<Void>() {
+            @Override
+            public void onResult(Void result) {
+                clearButton.setEnabled(true);
 
-            // 清除内存中的数据列表
-            historyData.clear();
+                // 清除内存中的数据列表
+                historyData.clear();
+                searchResults.clear();
 
-            // 通知适配器数据已更改
-            adapter.notifyDataSetChanged();
+                // 通知适配器数据已更改
+                adapter.notifyDataSetChanged();
 
-            // 更新空视图状态
-            updateEmptyView();
+                // 更新空视图状态
+                updateEmptyView();
 
-            // 显示成功消息
-            Toast.makeText(this, "历史记录已清除", Toast.LENGTH_SHORT).show();
-        } catch (Exception e) {
-            Log.e("HistoryActivity", "清除历史数据失败: " + e.getMessage());
-            Toast.makeText(this, "清除历史数据失败", Toast.LENGTH_SHORT).show();
-        }
+                // 显示成功消息
+                Toast.makeText(HistoryActivity.this, "历史记录已清除", Toast.LENGTH_SHORT).show();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                clearButton.setEnabled(true);
+                Log.e("HistoryActivity", "清除历史数据失败: " + e.getMessage());
+                Toast.makeText(HistoryActivity.this, "清除历史数据失败", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        ingestConnection.unbind();
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        // 每次恢复时刷新数据，以便显示最新数据
-        loadHistoryData();
-        if (adapter != null) {
-            adapter.notifyDataSetChanged();
-            updateEmptyView();
+        // 每次恢复时刷新数据，以便显示最新数据；筛选结果是快照，不自动刷新
+        if (activeFilter == null) {
+            loadHistoryData();
         }
     }
 
@@ -167,17 +487,22 @@ public class HistoryActivity extends AppCompatActivity {
     private class HistoryDataAdapter extends BaseAdapter {
         @Override
         public int getCount() {
-            return historyData.size();
+            return activeFilter != null ? searchResults.size() : historyData.size();
         }
 
         @Override
         public DataPoint getItem(int position) {
-            return historyData.get(position);
+            return activeFilter != null ? searchResults.get(position) : historyData.get(position);
         }
 
         @Override
         public long getItemId(int position) {
-            return position;
+            return getItem(position).getId();
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
         }
 
         @Override
@@ -223,7 +548,7 @@ public class HistoryActivity extends AppCompatActivity {
             // 设置氧浓度项目的特殊颜色
             if (dataPoint.getType() == DataPoint.TYPE_PERCENTAGE) {
                 float value = dataPoint.getValue();
-                if (value < 16.0f) {
+                if (value < AlarmRule.DEFAULT_LOW_OXYGEN_THRESHOLD) {
                     holder.valueTextView.setTextColor(getResources().getColor(R.color.chart_red));
                 } else {
                     holder.valueTextView.setTextColor(getResources().getColor(R.color.chart_blue));
@@ -0,0 +1,23 @@
+package com.example.blueteeth;
+
+import java.util.ArrayList;
+
+/**
+ * 一次增量读取的结果：新增的行（按行号升序）和读取时的删除标记
+ */
+public class HistoryDelta {
+    public final ArrayList<DataPoint> added;
+    public final long maxId; // 新的高水位行号，下次从这里继续读取
+    public final long deletedBeforeMillis; // 采样时间早于此值的行已被删除（所有类型）
+    public final long[] deletedBeforeByType; // 按DataPoint.TYPE_*下标：该类型采样时间早于此值的行已被删除
+    public final long clearedThroughId; // 行号不大于此值的行已被清空，NO_ID表示没有清空过
+
+    public HistoryDelta(ArrayList<DataPoint> added, long maxId, long deletedBeforeMillis, long[] deletedBeforeByType,
+            long clearedThroughId) {
+        this.added = added;
+        this.maxId = maxId;
+        this.deletedBeforeMillis = deletedBeforeMillis;
+        this.deletedBeforeByType = deletedBeforeByType;
+        this.clearedThroughId = clearedThroughId;
+    }
+}
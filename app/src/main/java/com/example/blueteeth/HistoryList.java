@@ -0,0 +1,173 @@
+package com.example.blueteeth;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 历史记录列表：内部按采样时间升序保存，对外按从新到旧的位置访问。
+ * 新行追加在尾部；过期的行从头部跳过（记录偏移量，积累够多时再压缩），
+ * 因此增量刷新的开销只与新增和过期的行数有关，与列表总长度无关。只在主线程使用。
+ */
+public class HistoryList {
+    private static final int MIN_COMPACT_HEAD = 1024;
+
+    private static final Comparator<DataPoint> BY_TIME = (a, b) -> Long.compare(a.getTimeMillis(), b.getTimeMillis());
+
+    private final ArrayList<DataPoint> rows = new ArrayList<>();
+    private int head = 0; // rows中[0, head)是已移除的行
+    private long maxId = DataPoint.NO_ID;
+
+    public int size() {
+        return rows.size() - head;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 按从新到旧的位置获取，position为0是最新的一行
+     */
+    public DataPoint get(int position) {
+        return rows.get(rows.size() - 1 - position);
+    }
+
+    /**
+     * 已加载的最大行号，NO_ID表示尚未加载
+     */
+    public long getMaxId() {
+        return maxId;
+    }
+
+    public void clear() {
+        rows.clear();
+        head = 0;
+        maxId = DataPoint.NO_ID;
+    }
+
+    /**
+     * 用完整的查询结果替换全部内容（任意顺序）
+     */
+    public void reset(List<DataPoint> points) {
+        clear();
+        rows.addAll(points);
+        Collections.sort(rows, BY_TIME);
+        for (DataPoint point : points) {
+            maxId = Math.max(maxId, point.getId());
+        }
+    }
+
+    /**
+     * 加入新行。新行的采样时间通常不早于当前最新的行，直接追加；
+     * 补传的旧数据按时间二分插入
+     */
+    public void addAll(List<DataPoint> points) {
+        for (DataPoint point : points) {
+            if (size() == 0 || point.getTimeMillis() >= rows.get(rows.size() - 1).getTimeMillis()) {
+                rows.add(point);
+            } else {
+                rows.add(insertionIndex(point.getTimeMillis()), point);
+            }
+            maxId = Math.max(maxId, point.getId());
+        }
+    }
+
+    /**
+     * 移除采样时间早于cutoffMillis的行
+     * @return 移除的行数
+     */
+    public int trimOlderThan(long cutoffMillis) {
+        int removed = 0;
+        while (head < rows.size() && rows.get(head).getTimeMillis() < cutoffMillis) {
+            rows.set(head, null);
+            head++;
+            removed++;
+        }
+        compactIfNeeded();
+        return removed;
+    }
+
+    /**
+     * 只移除某一类型中采样时间早于cutoffMillis的行（按类型执行保留策略后），其他类型的行保持顺序不动
+     * @return 移除的行数
+     */
+    public int trimTypeOlderThan(int type, long cutoffMillis) {
+        int end = insertionIndex(cutoffMillis - 1); // 第一个不早于cutoffMillis的行
+        // 把[head, end)中保留的行向后移到紧挨end的位置，前面空出的部分并入头部
+        int write = end;
+        for (int read = end - 1; read >= head; read--) {
+            DataPoint point = rows.get(read);
+            if (point.getType() != type) {
+                rows.set(--write, point);
+            }
+        }
+        int removed = write - head;
+        for (int i = head; i < write; i++) {
+            rows.set(i, null);
+        }
+        head = write;
+        compactIfNeeded();
+        return removed;
+    }
+
+    /**
+     * 移除行号不大于id的行（数据库被清空时）
+     * @return 移除的行数
+     */
+    public int removeThroughId(long id) {
+        int before = size();
+        if (id >= maxId) {
+            rows.clear();
+            head = 0;
+            return before;
+        }
+        int write = head;
+        for (int read = head; read < rows.size(); read++) {
+            DataPoint point = rows.get(read);
+            if (point.getId() > id) {
+                rows.set(write++, point);
+            }
+        }
+        rows.subList(write, rows.size()).clear();
+        return before - size();
+    }
+
+    /**
+     * 查找某一行当前的位置（从新到旧），不存在时返回-1
+     */
+    public int positionOf(DataPoint point) {
+        int index = insertionIndex(point.getTimeMillis());
+        // insertionIndex指向同一时间的最后一行之后，向前查找同一对象
+        for (int i = index - 1; i >= head && rows.get(i).getTimeMillis() == point.getTimeMillis(); i--) {
+            if (rows.get(i) == point) {
+                return rows.size() - 1 - i;
+            }
+        }
+        return -1;
+    }
+
+    // 第一个采样时间大于timeMillis的下标
+    private int insertionIndex(long timeMillis) {
+        int low = head;
+        int high = rows.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (rows.get(mid).getTimeMillis() <= timeMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // 头部已移除的行超过一半时才整体前移，摊还开销为O(1)
+    private void compactIfNeeded() {
+        if (head >= MIN_COMPACT_HEAD && head > rows.size() / 2) {
+            rows.subList(0, head).clear();
+            head = 0;
+        }
+    }
+}
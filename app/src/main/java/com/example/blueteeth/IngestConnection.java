@@ -0,0 +1,452 @@
+package com.example.blueteeth;
+
+import android.app.Service;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.RemoteException;
+import android.util.Log;
+
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 界面与采集服务之间的连接，屏蔽单进程和多进程两种模式：
+ * 单进程模式直接绑定BluetoothService（LocalBinder）；多进程模式绑定运行在:ingest进程的RemoteIngestService，
+ * 控制命令走AIDL，采样从共享内存环形缓冲区读入本进程的镜像窗口，界面拿到的视图和消息与单进程模式相同。
+ *
+ * 模式在应用启动时（BlueOxyApplication，启用StrictMode之前）读取设置并确定，修改设置后重启应用生效。只在主线程使用。
+ */
+public class IngestConnection {
+    private static final String TAG = "IngestConnection";
+    private static final String PREFS_NAME = "ingest_settings";
+    private static final String KEY_MULTI_PROCESS = "multi_process";
+    private static final int MAX_BATCH_POINTS = 1000; // 与UiBatchDispatcher单帧上限一致
+
+    private static Boolean multiProcess; // 本进程使用的模式，第一次读取后不再变化
+    private static Boolean preference; // 设置的缓存，之后在主线程读取时不再访问SharedPreferences
+
+    /**
+     * 连接状态回调，在主线程调用
+     */
+    public interface Listener {
+        void onConnected();
+
+        void onDisconnected();
+    }
+
+    /**
+     * 已知设备回调，在主线程调用
+     */
+    public interface KnownDevicesCallback {
+        void onKnownDevices(List<KnownDeviceCache.KnownDevice> devices);
+    }
+
+    private final Context context;
+    private final Handler target; // 接收MESSAGE_STATUS / MESSAGE_ALARM / MESSAGE_DATA_BATCH，可以为null
+    private final Listener listener;
+    private final boolean remote;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean bound = false;
+    private boolean connected = false;
+
+    // 单进程模式
+    private BluetoothService localService;
+
+    // 多进程模式
+    private IIngestService remoteService;
+    private SampleRing.Reader ringReader;
+    private ChannelWindow[] mirrorWindows;
+    private ArrayDeque<DataPoint> pendingBatch; // 只在drainRing读取期间非null，超出上限时丢弃最早的采样
+    private final AtomicLong notifiedWriteCount = new AtomicLong();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+    /**
+     * @param target 接收服务消息的Handler；只读取实时窗口的界面传null，不会替换其他界面设置的Handler
+     */
+    public IngestConnection(Context context, Handler target, Listener listener) {
+        this.context = context;
+        this.target = target;
+        this.listener = listener;
+        this.remote = isMultiProcess(context);
+    }
+
+    /**
+     * 系统是否支持多进程模式（需要SharedMemory，API 27）
+     */
+    public static boolean isMultiProcessSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1;
+    }
+
+    /**
+     * 读取设置并确定本进程使用的模式。读取SharedPreferences会访问磁盘，
+     * 应在应用启动时启用StrictMode之前调用一次，之后主线程上的查询只读取缓存
+     */
+    public static synchronized void init(Context context) {
+        if (preference == null) {
+            preference = prefs(context).getBoolean(KEY_MULTI_PROCESS, false);
+        }
+        if (multiProcess == null) {
+            multiProcess = isMultiProcessSupported() && preference;
+        }
+    }
+
+    /**
+     * 本进程使用的模式
+     */
+    public static synchronized boolean isMultiProcess(Context context) {
+        init(context);
+        return multiProcess;
+    }
+
+    public static synchronized boolean getMultiProcessPreference(Context context) {
+        init(context);
+        return preference;
+    }
+
+    // 保存设置，重启应用后生效；设置在init时已加载，这里只在后台写入
+    public static synchronized void setMultiProcessPreference(Context context, boolean enabled) {
+        init(context);
+        preference = enabled;
+        prefs(context).edit().putBoolean(KEY_MULTI_PROCESS, enabled).apply();
+    }
+
+    /**
+     * 本进程模式下应启动和绑定的服务
+     */
+    public static Class<? extends Service> serviceClass(Context context) {
+        return isMultiProcess(context) ? RemoteIngestService.class : BluetoothService.class;
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public boolean isRemote() {
+        return remote;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public void bind() {
+        if (!bound) {
+            bound = context.bindService(new Intent(context, serviceClass(context)), serviceConnection,
+                    Context.BIND_AUTO_CREATE);
+        }
+    }
+
+    public void unbind() {
+        if (!bound) {
+            return;
+        }
+        if (localService != null && target != null) {
+            localService.setHandler(null);
+        }
+        if (remoteService != null) {
+            try {
+                remoteService.unregisterCallback(callback);
+            } catch (RemoteException e) {
+                Log.d(TAG, "采集进程已退出");
+            }
+        }
+        context.unbindService(serviceConnection);
+        bound = false;
+        onServiceLost();
+    }
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            if (remote) {
+                if (!attachRemote(IIngestService.Stub.asInterface(service))) {
+                    return;
+                }
+            } else {
+                localService = ((BluetoothService.LocalBinder) service).getService();
+                if (target != null) {
+                    localService.setHandler(target);
+                }
+            }
+            connected = true;
+            listener.onConnected();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            onServiceLost();
+        }
+    };
+
+    private void onServiceLost() {
+        localService = null;
+        remoteService = null;
+        ringReader = null;
+        if (connected) {
+            connected = false;
+            listener.onDisconnected();
+        }
+    }
+
+    // 注册回调并映射共享内存，先把环形缓冲区中已有的采样读入镜像窗口
+    private boolean attachRemote(IIngestService service) {
+        try {
+            SharedSampleRing sharedRing = service.getSampleRing();
+            SampleRing ring = sharedRing.getRing();
+            long writeCount = ring.getWriteCount();
+            ringReader = ring.newReader(Math.max(0, writeCount - ring.getCapacity()));
+            if (mirrorWindows == null) {
+                mirrorWindows = new ChannelWindow[3];
+                for (int type = 0; type < mirrorWindows.length; type++) {
+                    mirrorWindows[type] = new ChannelWindow(BluetoothService.DEFAULT_LIVE_WINDOW_MILLIS,
+                            BluetoothService.MAX_LIVE_WINDOW_SAMPLES);
+                }
+            }
+            remoteService = service;
+            ringReader.poll(writeCount, mirrorConsumer);
+            service.registerCallback(callback);
+            return true;
+        } catch (RemoteException | RuntimeException e) {
+            Log.e(TAG, "连接采集进程失败", e);
+            remoteService = null;
+            ringReader = null;
+            return false;
+        }
+    }
+
+    // 采集进程的回调在Binder线程执行，转到主线程后以与单进程模式相同的消息发给界面
+    private final IIngestCallback.Stub callback = new IIngestCallback.Stub() {
+        @Override
+        public void onStateChanged(int state) {
+            if (target != null) {
+                target.obtainMessage(BluetoothService.MESSAGE_STATUS, state, -1).sendToTarget();
+            }
+        }
+
+        @Override
+        public void onAlarm(AlarmRule rule, int event) {
+            if (target != null) {
+                target.obtainMessage(BluetoothService.MESSAGE_ALARM, rule.id, event, rule).sendToTarget();
+            }
+        }
+
+        @Override
+        public void onSamples(long writeCount) {
+            notifiedWriteCount.accumulateAndGet(writeCount, Math::max);
+            // 主线程忙时多次通知合并为一次读取
+            if (drainScheduled.compareAndSet(false, true)) {
+                mainHandler.post(drainRing);
+            }
+        }
+    };
+
+    private final SampleRing.Consumer mirrorConsumer = (type, timeMillis, value) -> {
+        if (type < 0 || type >= mirrorWindows.length) {
+            return;
+        }
+        mirrorWindows[type].add(timeMillis, value);
+        if (pendingBatch != null) {
+            if (pendingBatch.size() == MAX_BATCH_POINTS) {
+                pendingBatch.pollFirst();
+            }
+            pendingBatch.addLast(new DataPoint(value, type, timeMillis, DataPoint.NO_DEVICE));
+        }
+    };
+
+    // 把新采样读入镜像窗口，并作为一个批次发给界面
+    private final Runnable drainRing = () -> {
+        drainScheduled.set(false);
+        if (ringReader == null) {
+            return;
+        }
+        if (target == null) {
+            ringReader.poll(notifiedWriteCount.get(), mirrorConsumer);
+            return;
+        }
+        pendingBatch = new ArrayDeque<>();
+        ringReader.poll(notifiedWriteCount.get(), mirrorConsumer);
+        ArrayDeque<DataPoint> points = pendingBatch;
+        pendingBatch = null;
+        if (!points.isEmpty()) {
+            target.obtainMessage(UiBatchDispatcher.MESSAGE_DATA_BATCH,
+                    new UiBatchDispatcher.Batch(new ArrayList<>(points), new ArrayList<>())).sendToTarget();
+        }
+    };
+
+    public void connect(String address) {
+        if (localService != null) {
+            localService.connect(address);
+        } else if (remoteService != null) {
+            try {
+                remoteService.connect(address);
+            } catch (RemoteException e) {
+                Log.e(TAG, "连接命令发送失败", e);
+            }
+        }
+    }
+
+    public int getState() {
+        if (localService != null) {
+            return localService.getState();
+        }
+        if (remoteService != null) {
+            try {
+                return remoteService.getState();
+            } catch (RemoteException e) {
+                Log.e(TAG, "读取连接状态失败", e);
+            }
+        }
+        return BluetoothService.STATE_DISCONNECTED;
+    }
+
+    public boolean isMeasuring() {
+        if (localService != null) {
+            return localService.isMeasuring();
+        }
+        if (remoteService != null) {
+            try {
+                return remoteService.isMeasuring();
+            } catch (RemoteException e) {
+                Log.e(TAG, "读取测量状态失败", e);
+            }
+        }
+        return false;
+    }
+
+    public void startMeasuring() {
+        if (localService != null) {
+            localService.startMeasuring();
+        } else if (remoteService != null) {
+            try {
+                remoteService.startMeasuring();
+            } catch (RemoteException e) {
+                Log.e(TAG, "开始测量命令发送失败", e);
+            }
+        }
+    }
+
+    public void stopMeasuring() {
+        if (localService != null) {
+            localService.stopMeasuring();
+        } else if (remoteService != null) {
+            try {
+                remoteService.stopMeasuring();
+            } catch (RemoteException e) {
+                Log.e(TAG, "停止测量命令发送失败", e);
+            }
+        }
+    }
+
+    public void addSubscriber() {
+        if (localService != null) {
+            localService.addSubscriber();
+        } else if (remoteService != null) {
+            try {
+                remoteService.addSubscriber(callback);
+            } catch (RemoteException e) {
+                Log.e(TAG, "订阅失败", e);
+            }
+        }
+    }
+
+    public void removeSubscriber() {
+        if (localService != null) {
+            localService.removeSubscriber();
+        } else if (remoteService != null) {
+            try {
+                remoteService.removeSubscriber(callback);
+            } catch (RemoteException e) {
+                Log.e(TAG, "取消订阅失败", e);
+            }
+        }
+    }
+
+    /**
+     * 读取已知设备。已知设备由采集服务记录：单进程模式下在服务的控制线程读取；
+     * 多进程模式下向:ingest进程获取，界面进程不保留自己的副本，之后连接过的设备再次读取即可看到。未连接时不回调
+     */
+    public void loadKnownDevices(KnownDevicesCallback callback) {
+        if (localService != null) {
+            localService.loadKnownDevices(callback);
+        } else if (remoteService != null) {
+            try {
+                callback.onKnownDevices(KnownDeviceCache.fromJson(remoteService.getKnownDevices()));
+            } catch (RemoteException e) {
+                Log.e(TAG, "读取已知设备失败", e);
+            }
+        }
+    }
+
+    /**
+     * 清空数据库：单进程模式下在本进程的数据库线程执行；多进程模式下由采集进程执行，
+     * 界面进程不直接删除数据，采集进程的保留策略和删除标记不会因此失准。多进程模式下未连接时回调onError
+     */
+    public void clearAllData(DbExecutor dbExecutor, LifecycleOwner owner, DbExecutor.Callback<Void> callback) {
+        if (!remote) {
+            dbExecutor.clearAllData(owner, callback);
+            return;
+        }
+        IIngestService service = remoteService;
+        if (service == null) {
+            callback.onError(new IllegalStateException("采集服务未连接"));
+            return;
+        }
+        // 跨进程调用会阻塞到清空完成，放在数据库线程执行
+        dbExecutor.submit(owner, db -> {
+            service.clearAllData();
+            return null;
+        }, callback);
+    }
+
+    public float getLowOxygenThreshold() {
+        if (localService != null) {
+            return localService.getLowOxygenThreshold();
+        }
+        if (remoteService != null) {
+            try {
+                return remoteService.getLowOxygenThreshold();
+            } catch (RemoteException e) {
+                Log.e(TAG, "读取报警阈值失败", e);
+            }
+        }
+        return AlarmRule.DEFAULT_LOW_OXYGEN_THRESHOLD;
+    }
+
+    /**
+     * 所有通道最新的maxCount个采样，按时间合并
+     */
+    public ArrayList<DataPoint> getRecentDataPoints(int maxCount) {
+        if (localService != null) {
+            return localService.getRecentDataPoints(maxCount);
+        }
+        if (mirrorWindows != null) {
+            return ChannelWindow.mergeRecent(mirrorWindows, maxCount);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * 一个通道实时窗口的只读视图；多进程模式下读取本进程的镜像窗口。未连接时返回null
+     */
+    public ChannelWindow.View getChannelView(int type) {
+        if (localService != null) {
+            return localService.getChannelView(type);
+        }
+        if (mirrorWindows != null && connected) {
+            return mirrorWindows[type].newView();
+        }
+        return null;
+    }
+}
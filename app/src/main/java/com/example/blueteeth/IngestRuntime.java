@@ -0,0 +1,266 @@
+package com.example.blueteeth;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 数据采集运行时：为服务的各个处理阶段（控制、Socket读写、命令、持久化）提供命名的、有界的线程池，
+ * 取代每次连接都新建的Thread子类。
+ *
+ * 每个阶段有固定的线程数上限、任务队列容量和线程优先级；线程的启动和退出可以通过Listener观察，
+ * 各阶段的任务计数可以通过getStats()查询。JVM单元测试中可以选择使用虚拟线程（需要JDK 21及以上，
+ * 不支持时自动退回平台线程）。本类不依赖Android，线程优先级由调用方通过PriorityPolicy设置。
+ */
+public class IngestRuntime {
+
+    /**
+     * 一个处理阶段的配置
+     */
+    public static class Stage {
+        public final String name;
+        public final int maxThreads;
+        public final int queueCapacity;
+        public final int priority; // Linux nice值，与Android的THREAD_PRIORITY_*一致，越小优先级越高
+
+        public Stage(String name, int maxThreads, int queueCapacity, int priority) {
+            if (maxThreads <= 0 || queueCapacity <= 0) {
+                throw new IllegalArgumentException("线程数和队列容量必须大于0");
+            }
+            this.name = name;
+            this.maxThreads = maxThreads;
+            this.queueCapacity = queueCapacity;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * 线程优先级策略，在工作线程自身中调用（Android的Process.setThreadPriority只作用于调用线程）
+     */
+    public interface PriorityPolicy {
+        void apply(Stage stage);
+    }
+
+    /**
+     * 线程生命周期回调，在工作线程中调用
+     */
+    public interface Listener {
+        void onThreadStarted(Stage stage, String threadName);
+
+        void onThreadFinished(Stage stage, String threadName);
+    }
+
+    /**
+     * 一个阶段的运行统计快照
+     */
+    public static class Stats {
+        public final String stage;
+        public final int liveThreads;
+        public final int activeTasks;
+        public final int queuedTasks;
+        public final long completedTasks;
+        public final long rejectedTasks;
+
+        Stats(String stage, int liveThreads, int activeTasks, int queuedTasks,
+                long completedTasks, long rejectedTasks) {
+            this.stage = stage;
+            this.liveThreads = liveThreads;
+            this.activeTasks = activeTasks;
+            this.queuedTasks = queuedTasks;
+            this.completedTasks = completedTasks;
+            this.rejectedTasks = rejectedTasks;
+        }
+
+        @Override
+        public String toString() {
+            return stage + "{threads=" + liveThreads + ", active=" + activeTasks + ", queued=" + queuedTasks
+                    + ", completed=" + completedTasks + ", rejected=" + rejectedTasks + "}";
+        }
+    }
+
+    private final String prefix;
+    private final boolean useVirtualThreads;
+    private final PriorityPolicy priorityPolicy;
+    private volatile Listener listener;
+    private final List<StageExecutor> executors = new ArrayList<>();
+
+    /**
+     * @param prefix 线程名前缀，线程名为 prefix-stage-序号
+     * @param preferVirtualThreads 是否尝试使用虚拟线程（仅在JDK 21及以上的JVM中生效，Android上总是平台线程）
+     * @param priorityPolicy 线程优先级策略，为null时把nice值换算为Thread.setPriority
+     */
+    public IngestRuntime(String prefix, boolean preferVirtualThreads, PriorityPolicy priorityPolicy) {
+        this.prefix = prefix;
+        this.useVirtualThreads = preferVirtualThreads && virtualThreadBuilder() != null;
+        this.priorityPolicy = priorityPolicy != null ? priorityPolicy : stage -> {
+            int javaPriority = Thread.NORM_PRIORITY - stage.priority / 4;
+            javaPriority = Math.max(Thread.MIN_PRIORITY, Math.min(Thread.MAX_PRIORITY, javaPriority));
+            Thread.currentThread().setPriority(javaPriority);
+        };
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public boolean isUsingVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * 注册一个处理阶段并返回其执行器。任务队列已满时提交会抛出RejectedExecutionException
+     */
+    public synchronized ExecutorService register(Stage stage) {
+        StageExecutor executor = new StageExecutor(stage, new StageThreadFactory(stage));
+        executors.add(executor);
+        return executor;
+    }
+
+    public synchronized List<Stats> getStats() {
+        List<Stats> stats = new ArrayList<>(executors.size());
+        for (StageExecutor executor : executors) {
+            stats.add(executor.snapshot());
+        }
+        return Collections.unmodifiableList(stats);
+    }
+
+    /**
+     * 按注册顺序关闭所有阶段：已提交的任务仍会执行，不再接受新任务。不阻塞调用线程
+     */
+    public synchronized void shutdown() {
+        for (StageExecutor executor : executors) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 等待所有阶段结束（用于测试和后台线程，不要在主线程调用）
+     * @return 是否在超时前全部结束
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        List<StageExecutor> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(executors);
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (StageExecutor executor : snapshot) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !executor.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+            // 线程池终止时工作线程可能还在执行退出回调，等待它们全部结束
+            while (executor.threadFactory.liveThreads.get() > 0) {
+                if (System.nanoTime() >= deadline) {
+                    return false;
+                }
+                Thread.sleep(1);
+            }
+        }
+        return true;
+    }
+
+    // 有界线程池，记录被拒绝的任务数
+    private static class StageExecutor extends ThreadPoolExecutor {
+        private final Stage stage;
+        private final StageThreadFactory threadFactory;
+        private final AtomicLong rejected = new AtomicLong();
+
+        StageExecutor(Stage stage, StageThreadFactory threadFactory) {
+            super(stage.maxThreads, stage.maxThreads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(stage.queueCapacity), threadFactory);
+            this.stage = stage;
+            this.threadFactory = threadFactory;
+            allowCoreThreadTimeOut(true); // 空闲线程超时退出，例如断开连接后的读取线程
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            try {
+                super.execute(command);
+            } catch (RejectedExecutionException e) {
+                rejected.incrementAndGet();
+                throw e;
+            }
+        }
+
+        Stats snapshot() {
+            return new Stats(stage.name, threadFactory.liveThreads.get(), getActiveCount(),
+                    getQueue().size(), getCompletedTaskCount(), rejected.get());
+        }
+    }
+
+    private class StageThreadFactory implements ThreadFactory {
+        private final Stage stage;
+        private final AtomicInteger sequence = new AtomicInteger();
+        final AtomicInteger liveThreads = new AtomicInteger();
+
+        StageThreadFactory(Stage stage) {
+            this.stage = stage;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            String name = prefix + "-" + stage.name + "-" + sequence.incrementAndGet();
+            Runnable body = () -> {
+                liveThreads.incrementAndGet();
+                if (!useVirtualThreads) {
+                    priorityPolicy.apply(stage);
+                }
+                Listener l = listener;
+                if (l != null) {
+                    l.onThreadStarted(stage, name);
+                }
+                try {
+                    runnable.run();
+                } finally {
+                    l = listener;
+                    if (l != null) {
+                        l.onThreadFinished(stage, name);
+                    }
+                    liveThreads.decrementAndGet();
+                }
+            };
+
+            Thread thread = useVirtualThreads ? newVirtualThread(name, body) : null;
+            if (thread == null) {
+                thread = new Thread(body, name);
+                thread.setDaemon(true);
+            }
+            return thread;
+        }
+    }
+
+    // 通过反射使用 Thread.ofVirtual()，源码保持Java 11兼容
+    private static Object virtualThreadBuilder() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            return ofVirtual.invoke(null);
+        } catch (Exception | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static Thread newVirtualThread(String name, Runnable body) {
+        try {
+            Object builder = virtualThreadBuilder();
+            if (builder == null) {
+                return null;
+            }
+            // 通过公开接口Thread.Builder调用，实现类不对外可见
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class).invoke(builder, name);
+            return (Thread) builderType.getMethod("unstarted", Runnable.class).invoke(builder, body);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
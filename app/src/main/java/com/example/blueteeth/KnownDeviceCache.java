@@ -0,0 +1,200 @@
+package com.example.blueteeth;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 已知设备缓存：记录成功连接过的传感器（地址、名称、可用的RFCOMM通道、是否需要反射方式创建Socket），
+ * 持久化在SharedPreferences中，下次启动时可跳过扫描直接连接。
+ * 只由采集服务所在的进程使用；多进程模式下界面通过IngestConnection.loadKnownDevices向:ingest进程获取，
+ * 不在界面进程保留一份不会更新的副本
+ */
+public class KnownDeviceCache {
+    private static final String TAG = "KnownDeviceCache";
+
+    private static final String PREFS_NAME = "known_devices";
+    private static final String KEY_DEVICES = "devices";
+    private static final int MAX_DEVICES = 8; // 最多记录的设备数
+
+    // 未知RFCOMM通道
+    public static final int CHANNEL_UNKNOWN = -1;
+
+    /**
+     * 一个已知设备
+     */
+    public static class KnownDevice {
+        public final String address;
+        public final String name;
+        public final int rfcommChannel; // 上次可用的通道，CHANNEL_UNKNOWN表示未知
+        public final boolean usedReflectionFallback; // 上次是否需要通过反射createRfcommSocket连接
+        public final long lastConnectedMillis;
+
+        public KnownDevice(String address, String name, int rfcommChannel,
+                boolean usedReflectionFallback, long lastConnectedMillis) {
+            this.address = address;
+            this.name = name;
+            this.rfcommChannel = rfcommChannel;
+            this.usedReflectionFallback = usedReflectionFallback;
+            this.lastConnectedMillis = lastConnectedMillis;
+        }
+    }
+
+    // 单例模式
+    private static KnownDeviceCache instance;
+
+    private final Context context;
+    private SharedPreferences prefs; // 首次访问时打开，getSharedPreferences会读文件，不在主线程创建
+    private ArrayList<KnownDevice> devices; // 按最近连接时间排序，首次访问时加载
+
+    public static synchronized KnownDeviceCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new KnownDeviceCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // 只保存上下文，可以在主线程创建；存储在第一次读写时（服务的控制线程或数据库线程）才打开
+    private KnownDeviceCache(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * 获取所有已知设备（最近连接的在前）。首次调用会读取存储，不要在主线程调用
+     */
+    public synchronized List<KnownDevice> getDevices() {
+        ensureLoaded();
+        return new ArrayList<>(devices);
+    }
+
+    public synchronized KnownDevice get(String address) {
+        ensureLoaded();
+        for (KnownDevice device : devices) {
+            if (device.address.equals(address)) {
+                return device;
+            }
+        }
+        return null;
+    }
+
+    public synchronized KnownDevice getMostRecent() {
+        ensureLoaded();
+        return devices.isEmpty() ? null : devices.get(0);
+    }
+
+    /**
+     * 记录一次成功连接
+     */
+    public synchronized void recordConnection(String address, String name, int rfcommChannel,
+            boolean usedReflectionFallback) {
+        ensureLoaded();
+        KnownDevice previous = null;
+        for (int i = 0; i < devices.size(); i++) {
+            if (devices.get(i).address.equals(address)) {
+                previous = devices.remove(i);
+                break;
+            }
+        }
+
+        // 本次未能读到名称或通道时沿用之前记录的值
+        String deviceName = name != null ? name : (previous != null ? previous.name : null);
+        int channel = rfcommChannel != CHANNEL_UNKNOWN ? rfcommChannel
+                : (previous != null ? previous.rfcommChannel : CHANNEL_UNKNOWN);
+
+        devices.add(0, new KnownDevice(address, deviceName, channel, usedReflectionFallback,
+                System.currentTimeMillis()));
+        while (devices.size() > MAX_DEVICES) {
+            devices.remove(devices.size() - 1);
+        }
+        save();
+    }
+
+    // 缓存的通道连接失败时调用，下次改用标准方式连接
+    public synchronized void forgetChannel(String address) {
+        ensureLoaded();
+        for (int i = 0; i < devices.size(); i++) {
+            KnownDevice device = devices.get(i);
+            if (device.address.equals(address)) {
+                devices.set(i, new KnownDevice(device.address, device.name, CHANNEL_UNKNOWN,
+                        false, device.lastConnectedMillis));
+                save();
+                return;
+            }
+        }
+    }
+
+    private void ensureLoaded() {
+        if (devices != null) {
+            return;
+        }
+        devices = fromJson(getPrefs().getString(KEY_DEVICES, null));
+    }
+
+    private void save() {
+        String json = toJson(devices);
+        if (json != null) {
+            getPrefs().edit().putString(KEY_DEVICES, json).apply();
+        }
+    }
+
+    /**
+     * 设备列表的JSON形式，用于持久化和跨进程传递；序列化失败时返回null
+     */
+    public static String toJson(List<KnownDevice> devices) {
+        JSONArray array = new JSONArray();
+        try {
+            for (KnownDevice device : devices) {
+                JSONObject object = new JSONObject();
+                object.put("address", device.address);
+                object.put("name", device.name != null ? device.name : JSONObject.NULL);
+                object.put("channel", device.rfcommChannel);
+                object.put("reflection", device.usedReflectionFallback);
+                object.put("lastConnected", device.lastConnectedMillis);
+                array.put(object);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "保存已知设备失败: " + e.getMessage());
+            return null;
+        }
+        return array.toString();
+    }
+
+    /**
+     * 解析toJson的结果，json为null或格式错误时返回已解析的部分
+     */
+    public static ArrayList<KnownDevice> fromJson(String json) {
+        ArrayList<KnownDevice> devices = new ArrayList<>();
+        if (json == null) {
+            return devices;
+        }
+        try {
+            JSONArray array = new JSONArray(json);
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject object = array.getJSONObject(i);
+                devices.add(new KnownDevice(
+                        object.getString("address"),
+                        object.isNull("name") ? null : object.getString("name"),
+                        object.optInt("channel", CHANNEL_UNKNOWN),
+                        object.optBoolean("reflection", false),
+                        object.optLong("lastConnected", 0)));
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "读取已知设备失败: " + e.getMessage());
+        }
+        return devices;
+    }
+
+    private SharedPreferences getPrefs() {
+        if (prefs == null) {
+            prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        }
+        return prefs;
+    }
+}
@@ -11,11 +11,14 @@ import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.Button;
 import android.widget.ListView;
 import android.widget.ProgressBar;
+import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -25,6 +28,8 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Set;
 
 public class MainActivity extends AppCompatActivity {
@@ -33,14 +38,60 @@ public class MainActivity extends AppCompatActivity {
     private static final int REQUEST_LOCATION_PERMISSION = 2;
     private static final int REQUEST_BLUETOOTH_PERMISSIONS = 3;
 
+    // 扫描结果列表批量刷新间隔(毫秒)
+    private static final long LIST_UPDATE_INTERVAL = 300;
+
     private BluetoothAdapter bluetoothAdapter;
-    private ArrayList<BluetoothDevice> deviceList = new ArrayList<>();
+    private final ScanResultsModel scanResults = new ScanResultsModel();
     private DeviceListAdapter deviceAdapter;
 
+    // 已知设备（成功连接过的传感器），无需扫描即可直接点击连接；由采集服务提供，连接服务后和每次回到界面时读取
+    private List<KnownDeviceCache.KnownDevice> knownDevices = new ArrayList<>();
+    private IngestConnection ingestConnection;
+
+    // 缓存BLUETOOTH_CONNECT权限状态，避免每发现一个设备或绑定一行都检查一次
+    private boolean hasConnectPermission = false;
+
+    // 合并扫描期间的列表刷新，每个间隔最多刷新一次
+    // 新发现的设备先放在pendingResults中，刷新时才写入适配器使用的scanResults并立即通知列表，
+    // 两次刷新之间列表的内容和顺序不会变化（否则ListView布局时会抛出异常，点击的位置也可能对应到别的设备）
+    private final Handler listUpdateHandler = new Handler(Looper.getMainLooper());
+    private final LinkedHashMap<String, PendingResult> pendingResults = new LinkedHashMap<>();
+    private boolean listUpdatePending = false;
+    private final Runnable listUpdateRunnable = () -> {
+        listUpdatePending = false;
+        boolean changed = false;
+        for (PendingResult result : pendingResults.values()) {
+            changed |= scanResults.update(result.device, result.address, result.name, result.rssi, result.seenMillis);
+        }
+        pendingResults.clear();
+        if (changed) {
+            deviceAdapter.notifyDataSetChanged();
+        }
+    };
+
+    // 尚未写入列表的扫描结果，同一设备多次发现时合并
+    private static class PendingResult {
+        final BluetoothDevice device;
+        final String address;
+        String name;
+        int rssi;
+        long seenMillis;
+
+        PendingResult(BluetoothDevice device, String address, String name, int rssi, long seenMillis) {
+            this.device = device;
+            this.address = address;
+            this.name = name;
+            this.rssi = rssi;
+            this.seenMillis = seenMillis;
+        }
+    }
+
     private Button scanButton;
     private TextView statusTextView;
     private ListView deviceListView;
     private ProgressBar progressBar;
+    private Switch multiProcessSwitch;
 
     private boolean isScanning = false;
 
@@ -54,21 +105,34 @@ public class MainActivity extends AppCompatActivity {
 
         // 初始化蓝牙
         initializeBluetooth();
+        refreshPermissionCache();
 
         // 设置设备列表适配器
-        deviceAdapter = new DeviceListAdapter(this, deviceList);
+        deviceAdapter = new DeviceListAdapter(this, scanResults);
         deviceListView.setAdapter(deviceAdapter);
 
         // 设置点击监听
         setClickListeners();
-        
-        // 启动蓝牙前台服务
+
+        // 启动蓝牙前台服务，连接后显示已知设备
         startBluetoothService();
+        ingestConnection = new IngestConnection(this, null, new IngestConnection.Listener() {
+            @Override
+            public void onConnected() {
+                loadKnownDevices();
+            }
+
+            @Override
+            public void onDisconnected() {
+            }
+        });
+        ingestConnection.bind();
     }
     
     // 启动蓝牙前台服务
     private void startBluetoothService() {
-        Intent serviceIntent = new Intent(this, BluetoothService.class);
+        // 单进程或多进程模式对应不同的服务
+        Intent serviceIntent = new Intent(this, IngestConnection.serviceClass(this));
         
         // 在Android 8.0以上需要使用startForegroundService
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -78,11 +142,87 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    // 重新检查并缓存蓝牙连接权限
+    private void refreshPermissionCache() {
+        hasConnectPermission = ActivityCompat.checkSelfPermission(this,
+                Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    // 添加或更新一个扫描到的设备，并安排一次批量刷新
+    private void addScannedDevice(BluetoothDevice device, int rssi) {
+        String name = null;
+        if (hasConnectPermission) {
+            try {
+                name = device.getName();
+            } catch (SecurityException e) {
+                hasConnectPermission = false;
+            }
+        }
+
+        queueResult(device, device.getAddress(), name, rssi, System.currentTimeMillis());
+    }
+
+    // 加入待刷新的结果：名称和信号强度只在新值有效时覆盖，与ScanResultsModel.update的规则一致
+    private void queueResult(BluetoothDevice device, String address, String name, int rssi, long nowMillis) {
+        PendingResult pending = pendingResults.get(address);
+        if (pending == null) {
+            pendingResults.put(address, new PendingResult(device, address, name, rssi, nowMillis));
+        } else {
+            if (name != null) {
+                pending.name = name;
+            }
+            if (rssi != ScanResultsModel.RSSI_UNKNOWN) {
+                pending.rssi = rssi;
+            }
+            pending.seenMillis = nowMillis;
+        }
+        scheduleListUpdate();
+    }
+
+    // 向采集服务读取已知设备，在主线程加入列表；活动销毁后不再处理
+    private void loadKnownDevices() {
+        ingestConnection.loadKnownDevices(devices -> {
+            if (isDestroyed()) {
+                return;
+            }
+            knownDevices = devices;
+            addKnownDevices();
+        });
+    }
+
+    private void addKnownDevices() {
+        if (bluetoothAdapter == null) {
+            return;
+        }
+        for (KnownDeviceCache.KnownDevice knownDevice : knownDevices) {
+            if (!scanResults.contains(knownDevice.address) && !pendingResults.containsKey(knownDevice.address)) {
+                BluetoothDevice device = bluetoothAdapter.getRemoteDevice(knownDevice.address);
+                queueResult(device, knownDevice.address, knownDevice.name,
+                        ScanResultsModel.RSSI_UNKNOWN, knownDevice.lastConnectedMillis);
+            }
+        }
+    }
+
+    private void scheduleListUpdate() {
+        if (!listUpdatePending) {
+            listUpdatePending = true;
+            listUpdateHandler.postDelayed(listUpdateRunnable, LIST_UPDATE_INTERVAL);
+        }
+    }
+
     private void initializeUI() {
         scanButton = findViewById(R.id.btn_scan);
         statusTextView = findViewById(R.id.txt_status);
         deviceListView = findViewById(R.id.list_devices);
         progressBar = findViewById(R.id.progress_scan);
+        multiProcessSwitch = findViewById(R.id.switch_multi_process);
+
+        // 采集模式在进程启动时确定，开关只保存设置
+        multiProcessSwitch.setChecked(IngestConnection.getMultiProcessPreference(this));
+        if (!IngestConnection.isMultiProcessSupported()) {
+            multiProcessSwitch.setEnabled(false);
+            multiProcessSwitch.setText(R.string.multi_process_unsupported);
+        }
     }
 
     private void initializeBluetooth() {
@@ -108,6 +248,11 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void setClickListeners() {
+        multiProcessSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            IngestConnection.setMultiProcessPreference(this, isChecked);
+            Toast.makeText(this, R.string.multi_process_restart, Toast.LENGTH_SHORT).show();
+        });
+
         // 扫描按钮点击事件
         scanButton.setOnClickListener(v -> {
             if (isScanning) {
@@ -124,8 +269,8 @@ public class MainActivity extends AppCompatActivity {
                 stopScan();
             }
 
-            BluetoothDevice device = deviceList.get(position);
-            connectToDevice(device);
+            ScanResultsModel.Entry entry = scanResults.get(position);
+            connectToDevice(entry.device, entry.getName());
         });
     }
 
@@ -153,19 +298,21 @@ public class MainActivity extends AppCompatActivity {
         }
 
         // 清空设备列表
-        deviceList.clear();
+        scanResults.clear();
+        pendingResults.clear();
+        listUpdateHandler.removeCallbacks(listUpdateRunnable);
+        listUpdatePending = false;
+        deviceAdapter.notifyDataSetChanged();
+
+        // 保留已知设备
+        addKnownDevices();
 
         // 添加已配对设备
-        if (ActivityCompat.checkSelfPermission(this,
-                Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED) {
+        refreshPermissionCache();
+        if (hasConnectPermission) {
             Set<BluetoothDevice> pairedDevices = bluetoothAdapter.getBondedDevices();
-            if (pairedDevices.size() > 0) {
-                for (BluetoothDevice device : pairedDevices) {
-                    if (!deviceList.contains(device)) {
-                        deviceList.add(device);
-                    }
-                }
-                deviceAdapter.notifyDataSetChanged();
+            for (BluetoothDevice device : pairedDevices) {
+                addScannedDevice(device, ScanResultsModel.RSSI_UNKNOWN);
             }
         }
 
@@ -191,19 +338,14 @@ public class MainActivity extends AppCompatActivity {
         progressBar.setVisibility(View.GONE);
     }
 
-    private void connectToDevice(BluetoothDevice device) {
+    private void connectToDevice(BluetoothDevice device, String deviceName) {
         statusTextView.setText(R.string.connecting);
 
-        // 启动数据显示界面，并传递设备信息
+        // 启动数据显示界面，并传递设备信息（名称使用扫描时缓存的值）
         Intent intent = new Intent(MainActivity.this, DataDisplayActivity.class);
         intent.putExtra("device_address", device.getAddress());
-        if (ActivityCompat.checkSelfPermission(this,
-                Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED) {
-            intent.putExtra("device_name",
-                    device.getName() != null ? device.getName() : getString(R.string.unknown_device));
-        } else {
-            intent.putExtra("device_name", getString(R.string.unknown_device));
-        }
+        intent.putExtra("device_name",
+                deviceName != null ? deviceName : getString(R.string.unknown_device));
         startActivity(intent);
     }
 
@@ -233,11 +375,11 @@ public class MainActivity extends AppCompatActivity {
                 // 扫描结束
                 stopScan();
             } else if (BluetoothDevice.ACTION_FOUND.equals(action)) {
-                // 找到设备
+                // 找到设备，按地址去重并记录信号强度，列表刷新合并处理
                 BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
-                if (device != null && !deviceList.contains(device)) {
-                    deviceList.add(device);
-                    deviceAdapter.notifyDataSetChanged();
+                if (device != null) {
+                    int rssi = intent.getShortExtra(BluetoothDevice.EXTRA_RSSI, (short) ScanResultsModel.RSSI_UNKNOWN);
+                    addScannedDevice(device, rssi);
                 }
             }
         }
@@ -271,6 +413,7 @@ public class MainActivity extends AppCompatActivity {
                 break;
 
             case REQUEST_BLUETOOTH_PERMISSIONS:
+                refreshPermissionCache();
                 boolean allGranted = true;
                 for (int result : grantResults) {
                     if (result != PackageManager.PERMISSION_GRANTED) {
@@ -288,12 +431,25 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // 用户可能在设置中修改了权限，回到界面时重新检查一次
+        refreshPermissionCache();
+        // 离开期间可能连接过新的设备
+        if (ingestConnection.isConnected()) {
+            loadKnownDevices();
+        }
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
 
         // 注销广播接收器
         unregisterReceiver(bluetoothReceiver);
+        listUpdateHandler.removeCallbacks(listUpdateRunnable);
+        ingestConnection.unbind();
 
         // 停止扫描
         if (ActivityCompat.checkSelfPermission(this,
@@ -0,0 +1,181 @@
+package com.example.blueteeth;
+
+import java.util.Arrays;
+
+/**
+ * 按时间分桶的最小/最大值降采样：把一个通道的实时窗口压缩到固定数量的桶，每个桶保留最小值和最大值两个点
+ * （按时间先后），尖峰和低谷不会因为降采样而消失。叠加图中每个通道各用一个实例，
+ * 绘制的点数只取决于桶数，与窗口中的采样数和通道数的乘积无关。
+ *
+ * 作为ChannelWindow.Reader使用，读取期间有写入时会被重新调用，每次都从头计算。
+ * 输出数组预先分配，只在空白段很多导致桶数超出时扩容。只在一个线程中使用。
+ */
+public class MinMaxDownsampler implements ChannelWindow.Reader {
+    private final int maxBuckets;
+
+    private long[] times;
+    private float[] values;
+    private int count;
+    private int[] segmentEnds; // 每段在输出中的结束位置（不含），相邻两段之间是没有数据的空白
+    private int segmentCount;
+    private float minValue;
+    private float maxValue;
+
+    // 正在累积的桶
+    private long bucketIndex;
+    private long minTime;
+    private float bucketMin;
+    private long maxTime;
+    private float bucketMax;
+    private boolean bucketOpen;
+
+    public MinMaxDownsampler(int maxBuckets) {
+        if (maxBuckets <= 0) {
+            throw new IllegalArgumentException("桶数必须为正数");
+        }
+        this.maxBuckets = maxBuckets;
+        this.times = new long[maxBuckets * 2];
+        this.values = new float[maxBuckets * 2];
+        this.segmentEnds = new int[4];
+    }
+
+    @Override
+    public void read(ChannelWindow.View view) {
+        clear();
+        int size = view.size();
+        if (size == 0) {
+            return;
+        }
+
+        long gapMillis = TimeAxis.gapThresholdMillis(view);
+        long startTime = view.timeAt(0);
+        long span = view.timeAt(size - 1) - startTime;
+        // 采样数不超过输出容量时原样输出，只按空白段切分
+        long bucketMillis = size <= maxBuckets * 2 ? 0 : span / maxBuckets + 1;
+
+        long previousTime = startTime;
+        for (int i = 0; i < size; i++) {
+            long time = view.timeAt(i);
+            float value = view.valueAt(i);
+            minValue = Math.min(minValue, value);
+            maxValue = Math.max(maxValue, value);
+
+            if (i > 0 && time - previousTime > gapMillis) {
+                flushBucket();
+                endSegment();
+            }
+            previousTime = time;
+
+            if (bucketMillis == 0) {
+                append(time, value);
+                continue;
+            }
+            long index = (time - startTime) / bucketMillis;
+            if (bucketOpen && index != bucketIndex) {
+                flushBucket();
+            }
+            if (!bucketOpen) {
+                bucketOpen = true;
+                bucketIndex = index;
+                minTime = maxTime = time;
+                bucketMin = bucketMax = value;
+            } else if (value < bucketMin) {
+                bucketMin = value;
+                minTime = time;
+            } else if (value > bucketMax) {
+                bucketMax = value;
+                maxTime = time;
+            }
+        }
+        flushBucket();
+        endSegment();
+    }
+
+    /**
+     * 清空输出，保留已分配的数组
+     */
+    public void clear() {
+        count = 0;
+        segmentCount = 0;
+        minValue = Float.POSITIVE_INFINITY;
+        maxValue = Float.NEGATIVE_INFINITY;
+        bucketOpen = false;
+    }
+
+    // 桶内的最小值和最大值按时间顺序输出，两者是同一个采样时只输出一次
+    private void flushBucket() {
+        if (!bucketOpen) {
+            return;
+        }
+        bucketOpen = false;
+        if (minTime == maxTime) {
+            append(minTime, bucketMin);
+        } else if (minTime < maxTime) {
+            append(minTime, bucketMin);
+            append(maxTime, bucketMax);
+        } else {
+            append(maxTime, bucketMax);
+            append(minTime, bucketMin);
+        }
+    }
+
+    private void endSegment() {
+        int start = segmentCount == 0 ? 0 : segmentEnds[segmentCount - 1];
+        if (count == start) {
+            return;
+        }
+        if (segmentCount == segmentEnds.length) {
+            segmentEnds = Arrays.copyOf(segmentEnds, segmentCount * 2);
+        }
+        segmentEnds[segmentCount++] = count;
+    }
+
+    private void append(long time, float value) {
+        if (count == times.length) {
+            times = Arrays.copyOf(times, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+        }
+        times[count] = time;
+        values[count] = value;
+        count++;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public long timeAt(int position) {
+        return times[position];
+    }
+
+    public float valueAt(int position) {
+        return values[position];
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    public int segmentStart(int segment) {
+        return segment == 0 ? 0 : segmentEnds[segment - 1];
+    }
+
+    public int segmentEnd(int segment) {
+        return segmentEnds[segment];
+    }
+
+    /**
+     * 降采样前全部采样的最小值和最大值（空时为正/负无穷）
+     */
+    public float getMinValue() {
+        return minValue;
+    }
+
+    public float getMaxValue() {
+        return maxValue;
+    }
+}
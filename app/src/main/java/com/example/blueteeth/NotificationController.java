@@ -0,0 +1,158 @@
+package com.example.blueteeth;
+
+import android.annotation.SuppressLint;
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.core.app.NotificationCompat;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 前台服务通知：整个服务生命周期复用同一个NotificationCompat.Builder和PendingIntent，
+ * 显示连接/测量状态，测量时再显示最新氧浓度和实测采样频率。
+ *
+ * 状态和采样的变化只标记"需要更新"，合并为每秒最多一次提交；文字与上次提交的相同时不调用NotificationManager。
+ * 熄屏时（VisibilityBudget批量模式）实时数值不触发更新，亮屏时由refresh补上。
+ * setStatus和onSample可以在任意线程调用，构建和提交在主线程执行。
+ */
+public class NotificationController {
+    private static final long MIN_INTERVAL_MILLIS = 1000;
+
+    private final NotificationManager manager;
+    private final int notificationId;
+    private final VisibilityBudget budget;
+    private final NotificationCompat.Builder builder; // 仅主线程访问
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean updateScheduled = new AtomicBoolean(false);
+    // 服务销毁后控制线程排队的断开、读取线程的采样仍可能调用setStatus/onSample，不能再提交通知
+    private volatile boolean released = false;
+
+    private volatile String status;
+    private volatile boolean showLive = false; // 测量中才显示实时数值
+    private volatile float latestOxygen = Float.NaN;
+    private final AtomicLong oxygenSamples = new AtomicLong();
+    private volatile long lastPostMillis = 0; // SystemClock.uptimeMillis
+
+    // 以下仅主线程访问
+    private String postedText;
+    private long rateBaseSamples;
+    private long rateBaseMillis;
+
+    public NotificationController(Context context, String channelId, int notificationId, String title,
+                                  VisibilityBudget budget) {
+        this.manager = context.getSystemService(NotificationManager.class);
+        this.notificationId = notificationId;
+        this.budget = budget;
+
+        // 创建点击通知后的意图（打开主活动），只创建一次
+        Intent notificationIntent = new Intent(context, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+                context, 0, notificationIntent, PendingIntent.FLAG_IMMUTABLE);
+        this.builder = new NotificationCompat.Builder(context, channelId)
+                .setContentTitle(title)
+                .setSmallIcon(R.drawable.ic_bluetooth)
+                .setContentIntent(pendingIntent)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setShowWhen(false);
+    }
+
+    /**
+     * 构建第一条通知供startForeground使用（在主线程调用），视为已经提交
+     */
+    public Notification start(String initialStatus) {
+        status = initialStatus;
+        postedText = initialStatus;
+        lastPostMillis = SystemClock.uptimeMillis();
+        rateBaseMillis = lastPostMillis;
+        return builder.setContentText(initialStatus).build();
+    }
+
+    /**
+     * 更新状态文字
+     * @param live 是否在状态后显示实时氧浓度和采样频率
+     */
+    public void setStatus(String status, boolean live) {
+        this.status = status;
+        this.showLive = live;
+        schedule();
+    }
+
+    // 读取线程每个采样调用一次，只记录数值和计数，每秒最多安排一次更新
+    public void onSample(int type, float value) {
+        if (type != DataPoint.TYPE_PERCENTAGE) {
+            return;
+        }
+        latestOxygen = value;
+        oxygenSamples.incrementAndGet();
+        if (showLive && !budget.isBatchMode()) {
+            schedule();
+        }
+    }
+
+    /**
+     * 亮屏后补上熄屏期间没有显示的实时数值
+     */
+    public void refresh() {
+        schedule();
+    }
+
+    // 服务销毁时调用（主线程）：之后不再提交更新，并移除通知，避免留下无法清除的常驻通知
+    public void release() {
+        released = true;
+        mainHandler.removeCallbacks(postUpdate);
+        manager.cancel(notificationId);
+    }
+
+    private void schedule() {
+        if (!released && updateScheduled.compareAndSet(false, true)) {
+            long delay = lastPostMillis + MIN_INTERVAL_MILLIS - SystemClock.uptimeMillis();
+            mainHandler.postDelayed(postUpdate, Math.max(0, delay));
+        }
+    }
+
+    @SuppressLint("NotificationPermission")
+    private final Runnable postUpdate = () -> {
+        updateScheduled.set(false);
+        if (released) {
+            return;
+        }
+        String text = buildText();
+        if (text.equals(postedText)) {
+            return;
+        }
+        postedText = text;
+        lastPostMillis = SystemClock.uptimeMillis();
+        budget.countWakeup(VisibilityBudget.WAKEUP_NOTIFICATION);
+        manager.notify(notificationId, builder.setContentText(text).build());
+    };
+
+    // 采样频率按两次更新之间收到的氧浓度采样数计算，取整后显示，避免小数抖动导致每秒都提交
+    private String buildText() {
+        long now = SystemClock.uptimeMillis();
+        long samples = oxygenSamples.get();
+        long elapsed = now - rateBaseMillis;
+        float rateHz = elapsed > 0 ? (samples - rateBaseSamples) * 1000f / elapsed : 0f;
+        rateBaseSamples = samples;
+        rateBaseMillis = now;
+
+        String text = status;
+        if (!showLive) {
+            return text;
+        }
+        float oxygen = latestOxygen;
+        if (Float.isNaN(oxygen)) {
+            return String.format(Locale.US, "%s · %d Hz", text, Math.round(rateHz));
+        }
+        return String.format(Locale.US, "%s · 氧浓度 %.1f%% · %d Hz", text, oxygen, Math.round(rateHz));
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.blueteeth;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 范围查询结果的内存LRU缓存，按查询条件（类型、时间范围、条数、排序）和分辨率（分桶时长，0为原始数据）做键，
+ * 按估算字节数限制总大小。
+ *
+ * 失效由写入方的提交水位驱动：DataDBHelper每次提交都带一个递增的水位和受影响的时间范围，
+ * 只有时间范围与之重叠的条目会被移除，其余条目继续有效。查询开始前记下水位，
+ * 写回缓存时若期间有重叠的提交，结果可能已过期，直接丢弃。
+ */
+public class QueryCache implements DataDBHelper.CommitListener {
+    public static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    // 估算的单行内存占用（对象头、字段和时间字符串）
+    private static final int ESTIMATED_DATA_POINT_BYTES = 96;
+    private static final int ESTIMATED_BUCKET_BYTES = 40;
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    // 保留最近的提交记录，用于判断查询期间是否有重叠的写入
+    private static final int MAX_RECENT_COMMITS = 128;
+
+    /**
+     * 缓存统计快照
+     */
+    public static class Stats {
+        public final long hits;
+        public final long misses;
+        public final long invalidations; // 因写入失效的条目数
+        public final long evictions; // 因超出大小被淘汰的条目数
+        public final long discardedPuts; // 查询期间数据已变化而未写入的结果数
+        public final int entries;
+        public final long bytes;
+        public final long maxBytes;
+
+        Stats(long hits, long misses, long invalidations, long evictions, long discardedPuts,
+                int entries, long bytes, long maxBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.invalidations = invalidations;
+            this.evictions = evictions;
+            this.discardedPuts = discardedPuts;
+            this.entries = entries;
+            this.bytes = bytes;
+            this.maxBytes = maxBytes;
+        }
+
+        public float hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0f : (float) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return "QueryCache{hits=" + hits + ", misses=" + misses + ", invalidations=" + invalidations
+                    + ", evictions=" + evictions + ", discarded=" + discardedPuts + ", entries=" + entries
+                    + ", bytes=" + bytes + "/" + maxBytes + "}";
+        }
+    }
+
+    private static final class Key {
+        final DataQuery query;
+        final long bucketMillis;
+
+        Key(DataQuery query, long bucketMillis) {
+            this.query = query;
+            this.bucketMillis = bucketMillis;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return bucketMillis == other.bucketMillis && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * query.hashCode() + Long.hashCode(bucketMillis);
+        }
+    }
+
+    private static final class Entry {
+        final List<?> rows;
+        final long bytes;
+
+        Entry(List<?> rows, long bytes) {
+            this.rows = rows;
+            this.bytes = bytes;
+        }
+    }
+
+    // 一次提交：水位和受影响的时间范围 [fromMillis, toMillis]
+    private static final class Commit {
+        final long watermark;
+        final long fromMillis;
+        final long toMillis;
+
+        Commit(long watermark, long fromMillis, long toMillis) {
+            this.watermark = watermark;
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // 访问顺序
+    private final ArrayDeque<Commit> recentCommits = new ArrayDeque<>();
+    private long oldestTrackedWatermark = 0; // 早于此水位开始的查询无法判断，一律不缓存
+    private long bytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long invalidations = 0;
+    private long evictions = 0;
+    private long discardedPuts = 0;
+
+    public QueryCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("缓存大小必须大于0");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 查找原始数据查询的结果，未命中返回null。返回的是副本，调用方可以随意修改
+     */
+    public ArrayList<DataPoint> getPoints(DataQuery query) {
+        return get(new Key(query, 0));
+    }
+
+    public ArrayList<AggregateBucket> getBuckets(DataQuery query, long bucketMillis) {
+        return get(new Key(query, bucketMillis));
+    }
+
+    /**
+     * 写入原始数据查询的结果
+     * @param startWatermark 查询开始前读取的提交水位
+     */
+    public void putPoints(DataQuery query, long startWatermark, List<DataPoint> rows) {
+        put(new Key(query, 0), startWatermark, rows, ESTIMATED_DATA_POINT_BYTES);
+    }
+
+    public void putBuckets(DataQuery query, long bucketMillis, long startWatermark, List<AggregateBucket> rows) {
+        put(new Key(query, bucketMillis), startWatermark, rows, ESTIMATED_BUCKET_BYTES);
+    }
+
+    @Override
+    public synchronized void onCommit(long watermark, long fromMillis, long toMillis) {
+        recentCommits.addLast(new Commit(watermark, fromMillis, toMillis));
+        while (recentCommits.size() > MAX_RECENT_COMMITS) {
+            oldestTrackedWatermark = recentCommits.removeFirst().watermark;
+        }
+
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> entry = iterator.next();
+            if (overlaps(entry.getKey().query, fromMillis, toMillis)) {
+                bytes -= entry.getValue().bytes;
+                iterator.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        invalidations += entries.size();
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, invalidations, evictions, discardedPuts, entries.size(), bytes, maxBytes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized <T> ArrayList<T> get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new ArrayList<>((List<T>) entry.rows);
+    }
+
+    private synchronized void put(Key key, long startWatermark, List<?> rows, int bytesPerRow) {
+        long entryBytes = ENTRY_OVERHEAD_BYTES + (long) rows.size() * bytesPerRow;
+        // 单个结果过大时不缓存，避免把其他条目全部挤掉
+        if (entryBytes > maxBytes / 2) {
+            return;
+        }
+        if (changedSince(key.query, startWatermark)) {
+            discardedPuts++;
+            return;
+        }
+
+        Entry previous = entries.put(key, new Entry(new ArrayList<>(rows), entryBytes));
+        if (previous != null) {
+            bytes -= previous.bytes;
+        }
+        bytes += entryBytes;
+
+        // 按访问顺序淘汰最久未使用的条目
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            bytes -= eldest.bytes;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    // 查询开始后是否有与其时间范围重叠的提交
+    private boolean changedSince(DataQuery query, long startWatermark) {
+        if (startWatermark < oldestTrackedWatermark) {
+            return true;
+        }
+        Iterator<Commit> iterator = recentCommits.descendingIterator();
+        while (iterator.hasNext()) {
+            Commit commit = iterator.next();
+            if (commit.watermark <= startWatermark) {
+                break;
+            }
+            if (overlaps(query, commit.fromMillis, commit.toMillis)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 查询范围 [from, to) 与提交范围 [fromMillis, toMillis] 是否重叠
+    private static boolean overlaps(DataQuery query, long fromMillis, long toMillis) {
+        return fromMillis < query.toMillis && toMillis >= query.fromMillis;
+    }
+}
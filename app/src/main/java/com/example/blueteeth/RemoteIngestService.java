@@ -0,0 +1,233 @@
+package com.example.blueteeth;
+
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.RemoteCallbackList;
+import android.os.RemoteException;
+import android.system.ErrnoException;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 多进程模式下的采集服务，运行在独立的:ingest进程中（见AndroidManifest），
+ * 界面进程的图表计算和GC停顿不会延误蓝牙读取。采集逻辑与BluetoothService完全相同，
+ * 区别只在对外接口：控制命令通过AIDL（IIngestService），每个采样写入共享内存环形缓冲区，
+ * 状态、报警和"有新采样"通知通过单向回调（IIngestCallback）发给界面进程。需要API 27。
+ */
+@RequiresApi(api = Build.VERSION_CODES.O_MR1)
+public class RemoteIngestService extends BluetoothService {
+    private static final String TAG = "RemoteIngestService";
+
+    // 3个通道 × 最高采样频率 × 60秒，界面进程停顿一分钟以内不丢数据
+    private static final int RING_CAPACITY = 3 * DeviceCommand.MAX_RATE_HZ * 60;
+
+    // 每个进程只创建一次，服务重建后继续使用；读取线程退出前可能仍在写入，因此不随服务销毁而释放
+    private static SharedSampleRing sharedRing;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // 每个回调名下未取消的订阅数，只在主线程访问
+    private final Map<IBinder, Integer> subscriptions = new HashMap<>();
+    // 界面进程退出时不会再调用removeSubscriber，由Binder死亡通知释放它的订阅，否则采样频率和可见性预算一直按有人观看计算
+    private final RemoteCallbackList<IIngestCallback> callbacks = new RemoteCallbackList<IIngestCallback>() {
+        @Override
+        public void onCallbackDied(IIngestCallback callback) {
+            IBinder binder = callback.asBinder();
+            mainHandler.post(() -> {
+                releaseSubscriptions(binder);
+                updateForwarding();
+            });
+        }
+    };
+
+    // 把服务发给界面Handler的消息转换为跨进程回调（在本进程主线程执行）
+    private final Handler forwardingHandler = new Handler(Looper.getMainLooper()) {
+        @Override
+        public void handleMessage(@NonNull Message msg) {
+            switch (msg.what) {
+                case UiBatchDispatcher.MESSAGE_DATA_BATCH:
+                    // 每帧最多一条批量消息，借此限制"有新采样"通知的频率
+                    long writeCount = sharedRing.getRing().getWriteCount();
+                    broadcast(callback -> callback.onSamples(writeCount));
+                    break;
+                case MESSAGE_STATUS:
+                    int state = msg.arg1;
+                    broadcast(callback -> callback.onStateChanged(state));
+                    break;
+                case MESSAGE_ALARM:
+                    AlarmRule rule = (AlarmRule) msg.obj;
+                    int event = msg.arg2;
+                    broadcast(callback -> callback.onAlarm(rule, event));
+                    break;
+            }
+        }
+    };
+
+    private interface CallbackCall {
+        void call(IIngestCallback callback) throws RemoteException;
+    }
+
+    @Override
+    public void onCreate() {
+        if (sharedRing == null) {
+            try {
+                sharedRing = SharedSampleRing.create("blueoxy-ingest-ring", RING_CAPACITY);
+            } catch (ErrnoException e) {
+                // 没有共享内存时无法工作，让服务启动失败而不是静默丢数据
+                throw new IllegalStateException("创建共享内存失败", e);
+            }
+        }
+        super.onCreate();
+        setSampleRing(sharedRing.getRing());
+    }
+
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return ingestBinder;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        callbacks.kill();
+        setSampleRing(null);
+    }
+
+    private void broadcast(CallbackCall call) {
+        int count = callbacks.beginBroadcast();
+        try {
+            for (int i = 0; i < count; i++) {
+                try {
+                    call.call(callbacks.getBroadcastItem(i));
+                } catch (RemoteException e) {
+                    // 对方进程已退出，RemoteCallbackList会自动移除
+                    Log.d(TAG, "回调失败: " + e.getMessage());
+                }
+            }
+        } finally {
+            callbacks.finishBroadcast();
+        }
+    }
+
+    private void addSubscriber(IBinder binder) {
+        subscriptions.merge(binder, 1, Integer::sum);
+        addSubscriber();
+    }
+
+    private void removeSubscriber(IBinder binder) {
+        Integer count = subscriptions.get(binder);
+        if (count == null) {
+            return;
+        }
+        if (count == 1) {
+            subscriptions.remove(binder);
+        } else {
+            subscriptions.put(binder, count - 1);
+        }
+        removeSubscriber();
+    }
+
+    // 取消一个回调名下剩余的全部订阅
+    private void releaseSubscriptions(IBinder binder) {
+        Integer count = subscriptions.remove(binder);
+        if (count == null) {
+            return;
+        }
+        Log.i(TAG, "释放已断开界面的订阅: " + count);
+        for (int i = 0; i < count; i++) {
+            removeSubscriber();
+        }
+    }
+
+    // 有界面订阅时才让服务产生界面消息
+    private void updateForwarding() {
+        setHandler(callbacks.getRegisteredCallbackCount() > 0 ? forwardingHandler : null);
+    }
+
+    // AIDL实现在Binder线程执行；会改变服务状态的命令切回主线程，与单进程模式的调用线程一致
+    private final IIngestService.Stub ingestBinder = new IIngestService.Stub() {
+        @Override
+        public void registerCallback(IIngestCallback callback) {
+            callbacks.register(callback);
+            mainHandler.post(RemoteIngestService.this::updateForwarding);
+        }
+
+        @Override
+        public void unregisterCallback(IIngestCallback callback) {
+            callbacks.unregister(callback);
+            IBinder binder = callback.asBinder();
+            mainHandler.post(() -> {
+                releaseSubscriptions(binder);
+                updateForwarding();
+            });
+        }
+
+        @Override
+        public SharedSampleRing getSampleRing() {
+            return sharedRing;
+        }
+
+        @Override
+        public void connect(String address) {
+            mainHandler.post(() -> RemoteIngestService.this.connect(address));
+        }
+
+        @Override
+        public int getState() {
+            return RemoteIngestService.this.getState();
+        }
+
+        @Override
+        public boolean isMeasuring() {
+            return RemoteIngestService.this.isMeasuring();
+        }
+
+        @Override
+        public void startMeasuring() {
+            mainHandler.post(RemoteIngestService.this::startMeasuring);
+        }
+
+        @Override
+        public void stopMeasuring() {
+            mainHandler.post(RemoteIngestService.this::stopMeasuring);
+        }
+
+        @Override
+        public void addSubscriber(IIngestCallback callback) {
+            IBinder binder = callback.asBinder();
+            mainHandler.post(() -> RemoteIngestService.this.addSubscriber(binder));
+        }
+
+        @Override
+        public void removeSubscriber(IIngestCallback callback) {
+            IBinder binder = callback.asBinder();
+            mainHandler.post(() -> RemoteIngestService.this.removeSubscriber(binder));
+        }
+
+        @Override
+        public float getLowOxygenThreshold() {
+            return RemoteIngestService.this.getLowOxygenThreshold();
+        }
+
+        @Override
+        public String getKnownDevices() {
+            return getKnownDevicesJson();
+        }
+
+        @Override
+        public void clearAllData() {
+            // 在Binder线程同步执行，调用方（界面进程的数据库线程）等待清空完成
+            DataDBHelper.getInstance(RemoteIngestService.this).clearAllData();
+        }
+    };
+}
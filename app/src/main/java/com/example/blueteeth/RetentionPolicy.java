@@ -0,0 +1,138 @@
+package com.example.blueteeth;
+
+/**
+ * 数据保留策略（不可变），由Builder构建：按数据层级和数据类型分别限制最长保留时间、最多行数和最多占用字节数，
+ * 任一限制超出时从最旧的数据开始删除。由后台压缩（DataDBHelper.enforceRetention）定期执行。
+ *
+ * 字节数按数据库已用页面平均到每行估算，换算成行数上限后与行数限制取较小者。
+ */
+public final class RetentionPolicy {
+    public static final int TIER_RAW = 0; // 原始采样（data_points）
+    public static final int TIER_EPISODES = 1; // 异常段（episodes）
+    public static final int TIER_ALARMS = 2; // 报警事件（alarm_events）
+    public static final int TIER_COUNT = 3;
+
+    public static final int ANY_TYPE = -1; // 适用于没有单独设置的所有类型（每个类型各自计算）
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private static final long DAY_MILLIS = 24 * 3600_000L;
+    private static final long MIB = 1024 * 1024;
+
+    // 没有任何原始数据年龄限制时，历史列表显示的时间范围
+    private static final long DEFAULT_HISTORY_WINDOW_MILLIS = 7 * DAY_MILLIS;
+
+    private static volatile RetentionPolicy defaultPolicy;
+
+    /**
+     * 一个层级中一个类型的限制
+     */
+    public static final class Limit {
+        public final long maxAgeMillis; // UNLIMITED表示不限制
+        public final long maxRows;
+        public final long maxBytes;
+
+        public Limit(long maxAgeMillis, long maxRows, long maxBytes) {
+            if (maxAgeMillis <= 0 || maxRows <= 0 || maxBytes <= 0) {
+                throw new IllegalArgumentException("保留限制必须为正数");
+            }
+            this.maxAgeMillis = maxAgeMillis;
+            this.maxRows = maxRows;
+            this.maxBytes = maxBytes;
+        }
+
+        /**
+         * 按每行平均字节数换算后的行数上限
+         */
+        public long effectiveMaxRows(long bytesPerRow) {
+            if (bytesPerRow <= 0 || maxBytes == UNLIMITED) {
+                return maxRows;
+            }
+            return Math.min(maxRows, Math.max(1, maxBytes / bytesPerRow));
+        }
+    }
+
+    // [层级][类型 + 1]，下标0是ANY_TYPE
+    private final Limit[][] limits;
+
+    private RetentionPolicy(Builder builder) {
+        this.limits = new Limit[TIER_COUNT][];
+        for (int tier = 0; tier < TIER_COUNT; tier++) {
+            this.limits[tier] = builder.limits[tier].clone();
+        }
+    }
+
+    /**
+     * 默认策略：原始采样每个通道保留7天、最多100万行、64MB；异常段和报警事件保留90天、最多5万行、8MB
+     */
+    public static RetentionPolicy defaults() {
+        return new Builder()
+                .setLimit(TIER_RAW, ANY_TYPE, new Limit(7 * DAY_MILLIS, 1_000_000, 64 * MIB))
+                .setLimit(TIER_EPISODES, ANY_TYPE, new Limit(90 * DAY_MILLIS, 50_000, 8 * MIB))
+                .setLimit(TIER_ALARMS, ANY_TYPE, new Limit(90 * DAY_MILLIS, 50_000, 8 * MIB))
+                .build();
+    }
+
+    /**
+     * 当前使用的策略
+     */
+    public static RetentionPolicy getDefault() {
+        RetentionPolicy policy = defaultPolicy;
+        if (policy == null) {
+            policy = defaults();
+            defaultPolicy = policy;
+        }
+        return policy;
+    }
+
+    // 替换当前策略，下次压缩时生效
+    public static void setDefault(RetentionPolicy policy) {
+        defaultPolicy = policy;
+    }
+
+    /**
+     * 层级中某个类型的限制，没有单独设置时取ANY_TYPE的限制，都没有时返回null（不限制）
+     */
+    public Limit getLimit(int tier, int type) {
+        Limit[] tierLimits = limits[tier];
+        int index = type + 1;
+        if (index > 0 && index < tierLimits.length && tierLimits[index] != null) {
+            return tierLimits[index];
+        }
+        return tierLimits[0];
+    }
+
+    /**
+     * 历史列表的时间范围：原始采样中保留最久的类型的最长保留时间
+     */
+    public long getHistoryWindowMillis() {
+        long window = 0;
+        for (int type = 0; type < DataPoint.TYPE_COUNT; type++) {
+            Limit limit = getLimit(TIER_RAW, type);
+            if (limit == null || limit.maxAgeMillis == UNLIMITED) {
+                return DEFAULT_HISTORY_WINDOW_MILLIS;
+            }
+            window = Math.max(window, limit.maxAgeMillis);
+        }
+        return window;
+    }
+
+    public static final class Builder {
+        private final Limit[][] limits = new Limit[TIER_COUNT][DataPoint.TYPE_COUNT + 1];
+
+        /**
+         * @param type DataPoint.TYPE_*，或ANY_TYPE
+         * @param limit 单独设置类型时null表示沿用ANY_TYPE的限制；ANY_TYPE为null时不限制
+         */
+        public Builder setLimit(int tier, int type, Limit limit) {
+            if (tier < 0 || tier >= TIER_COUNT || type < ANY_TYPE || type >= DataPoint.TYPE_COUNT) {
+                throw new IllegalArgumentException("无效的层级或类型: " + tier + ", " + type);
+            }
+            limits[tier][type + 1] = limit;
+            return this;
+        }
+
+        public RetentionPolicy build() {
+            return new RetentionPolicy(this);
+        }
+    }
+}
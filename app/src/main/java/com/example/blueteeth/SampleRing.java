@@ -0,0 +1,179 @@
+package com.example.blueteeth;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 跨进程采样环形缓冲区：采集进程的读取线程（唯一的写入方）把每个采样写入共享内存，
+ * 界面进程按序号读取。布局为头部（魔数、容量、已写入总数）加定长记录（序号、时间、数值、类型）。
+ *
+ * 每条记录先把序号置为-1，再写数据，最后写入序号；读取方在读数据前后各检查一次序号，
+ * 正在写入或已被覆盖（读取方落后超过一圈）的记录会被识别出来并跳过，不会读到半条记录。
+ * 写入总数通过Binder回调通知读取方，Binder调用保证对方看到通知前写入的全部记录。
+ * 缓冲区可以是SharedMemory的映射，也可以是普通的ByteBuffer（测试中使用文件映射）。
+ */
+public class SampleRing {
+    private static final int MAGIC = 0x424f5852; // "BOXR"
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_CAPACITY = 4;
+    private static final int OFFSET_WRITE_COUNT = 8;
+    private static final int HEADER_BYTES = 64;
+
+    // 记录布局：序号(long) 时间(long) 数值(float) 类型(int)
+    private static final int RECORD_SEQUENCE = 0;
+    private static final int RECORD_TIME = 8;
+    private static final int RECORD_VALUE = 16;
+    private static final int RECORD_TYPE = 20;
+    private static final int RECORD_BYTES = 24;
+
+    /**
+     * 读取回调，在调用poll的线程执行
+     */
+    public interface Consumer {
+        void accept(int type, long timeMillis, float value);
+    }
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private long writeCount; // 只由写入方使用
+
+    /**
+     * 容纳capacity条记录需要的字节数
+     */
+    public static int bytesFor(int capacity) {
+        return HEADER_BYTES + capacity * RECORD_BYTES;
+    }
+
+    /**
+     * 在空白缓冲区上初始化（写入方使用）
+     */
+    public static SampleRing create(ByteBuffer buffer, int capacity) {
+        if (capacity <= 0 || buffer.capacity() < bytesFor(capacity)) {
+            throw new IllegalArgumentException("缓冲区不足以容纳 " + capacity + " 条记录");
+        }
+        buffer.order(ByteOrder.nativeOrder());
+        for (int i = 0; i < capacity; i++) {
+            buffer.putLong(HEADER_BYTES + i * RECORD_BYTES + RECORD_SEQUENCE, -1);
+        }
+        buffer.putLong(OFFSET_WRITE_COUNT, 0);
+        buffer.putInt(OFFSET_CAPACITY, capacity);
+        buffer.putInt(OFFSET_MAGIC, MAGIC);
+        return new SampleRing(buffer);
+    }
+
+    /**
+     * 连接已初始化的缓冲区（读取方使用）
+     */
+    public static SampleRing attach(ByteBuffer buffer) {
+        return new SampleRing(buffer.order(ByteOrder.nativeOrder()));
+    }
+
+    private SampleRing(ByteBuffer buffer) {
+        if (buffer.getInt(OFFSET_MAGIC) != MAGIC) {
+            throw new IllegalStateException("缓冲区不是采样环形缓冲区");
+        }
+        this.buffer = buffer;
+        this.capacity = buffer.getInt(OFFSET_CAPACITY);
+        this.writeCount = buffer.getLong(OFFSET_WRITE_COUNT);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 追加一个采样，只能在唯一的写入线程调用，不分配对象
+     */
+    public void append(int type, long timeMillis, float value) {
+        long sequence = writeCount;
+        int offset = recordOffset(sequence);
+        buffer.putLong(offset + RECORD_SEQUENCE, -1);
+        buffer.putLong(offset + RECORD_TIME, timeMillis);
+        buffer.putFloat(offset + RECORD_VALUE, value);
+        buffer.putInt(offset + RECORD_TYPE, type);
+        buffer.putLong(offset + RECORD_SEQUENCE, sequence);
+        writeCount = sequence + 1;
+        buffer.putLong(OFFSET_WRITE_COUNT, writeCount);
+    }
+
+    /**
+     * 已写入的记录总数（头部中的值）
+     */
+    public long getWriteCount() {
+        return buffer.getLong(OFFSET_WRITE_COUNT);
+    }
+
+    /**
+     * 从position开始的读取游标，position小于写入总数减容量时最早的部分已被覆盖
+     */
+    public Reader newReader(long position) {
+        return new Reader(position);
+    }
+
+    private int recordOffset(long sequence) {
+        return HEADER_BYTES + (int) (sequence % capacity) * RECORD_BYTES;
+    }
+
+    /**
+     * 读取游标，只能在一个线程中使用
+     */
+    public final class Reader {
+        private long position;
+        private long lostCount = 0;
+
+        private Reader(long position) {
+            this.position = position;
+        }
+
+        // 下一条要读取的记录序号
+        public long getPosition() {
+            return position;
+        }
+
+        // 因落后超过一圈被覆盖而丢失的记录数
+        public long getLostCount() {
+            return lostCount;
+        }
+
+        /**
+         * 读取序号小于writeCount的全部新记录
+         * @param writeCount 写入方通知的写入总数
+         * @return 交给consumer的记录数
+         */
+        public int poll(long writeCount, Consumer consumer) {
+            long oldest = writeCount - capacity;
+            if (position < oldest) {
+                lostCount += oldest - position;
+                position = oldest;
+            }
+            int delivered = 0;
+            while (position < writeCount) {
+                int offset = recordOffset(position);
+                long sequence = buffer.getLong(offset + RECORD_SEQUENCE);
+                if (sequence != position) {
+                    if (sequence > position) {
+                        // 已被新一圈覆盖
+                        lostCount++;
+                        position++;
+                        continue;
+                    }
+                    // 正在写入（-1）或尚未可见，下次再读；若是正在被覆盖，下次会看到更大的序号
+                    break;
+                }
+                long timeMillis = buffer.getLong(offset + RECORD_TIME);
+                float value = buffer.getFloat(offset + RECORD_VALUE);
+                int type = buffer.getInt(offset + RECORD_TYPE);
+                if (buffer.getLong(offset + RECORD_SEQUENCE) != position) {
+                    // 读取期间被覆盖
+                    lostCount++;
+                    position++;
+                    continue;
+                }
+                consumer.accept(type, timeMillis, value);
+                position++;
+                delivered++;
+            }
+            return delivered;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.blueteeth;
+
+import android.bluetooth.BluetoothDevice;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * 扫描结果模型：按地址建立哈希索引实现O(1)去重，记录信号强度和最后发现时间，
+ * 列表始终按信号强度从强到弱排序（二分查找插入）
+ */
+public class ScanResultsModel {
+    // 未知信号强度（如已配对但本次未扫描到的设备）
+    public static final int RSSI_UNKNOWN = Short.MIN_VALUE;
+
+    /**
+     * 一个扫描到的设备
+     */
+    public static class Entry {
+        public final BluetoothDevice device;
+        public final String address;
+        private String name; // 发现时读取一次并缓存，列表绑定时不再访问设备对象
+        private int rssi;
+        private long lastSeenMillis;
+
+        Entry(BluetoothDevice device, String address, String name, int rssi, long lastSeenMillis) {
+            this.device = device;
+            this.address = address;
+            this.name = name;
+            this.rssi = rssi;
+            this.lastSeenMillis = lastSeenMillis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getRssi() {
+            return rssi;
+        }
+
+        public long getLastSeenMillis() {
+            return lastSeenMillis;
+        }
+    }
+
+    private final HashMap<String, Entry> byAddress = new HashMap<>();
+    private final ArrayList<Entry> sorted = new ArrayList<>();
+
+    /**
+     * 添加或更新一个设备
+     * @param address 设备地址（由调用方传入，避免单元测试依赖真实设备对象）
+     * @param name 设备名称，为null时保留之前的名称
+     * @param rssi 信号强度，RSSI_UNKNOWN表示未知
+     * @return 列表内容或顺序是否发生变化
+     */
+    public boolean update(BluetoothDevice device, String address, String name, int rssi, long nowMillis) {
+        Entry entry = byAddress.get(address);
+        if (entry == null) {
+            entry = new Entry(device, address, name, rssi, nowMillis);
+            byAddress.put(address, entry);
+            sorted.add(insertionIndex(rssi), entry);
+            return true;
+        }
+
+        entry.lastSeenMillis = nowMillis;
+        boolean changed = false;
+        if (name != null && !name.equals(entry.name)) {
+            entry.name = name;
+            changed = true;
+        }
+        // 已配对设备再次扫描到时会带上信号强度，只有强度变化时才调整位置
+        if (rssi != RSSI_UNKNOWN && rssi != entry.rssi) {
+            sorted.remove(indexOf(entry));
+            entry.rssi = rssi;
+            sorted.add(insertionIndex(rssi), entry);
+            changed = true;
+        }
+        return changed;
+    }
+
+    public boolean contains(String address) {
+        return byAddress.containsKey(address);
+    }
+
+    public Entry get(int position) {
+        return sorted.get(position);
+    }
+
+    public int size() {
+        return sorted.size();
+    }
+
+    public void clear() {
+        byAddress.clear();
+        sorted.clear();
+    }
+
+    // 二分查找插入位置：信号强的在前，相同强度时新加入的排在后面
+    private int insertionIndex(int rssi) {
+        int low = 0;
+        int high = sorted.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted.get(mid).rssi >= rssi) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // 在相同信号强度的区间内查找条目位置
+    private int indexOf(Entry entry) {
+        int index = insertionIndex(entry.rssi) - 1;
+        while (index >= 0 && sorted.get(index) != entry) {
+            index--;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.blueteeth;
+
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+import android.system.OsConstants;
+
+import androidx.annotation.RequiresApi;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * 放在共享内存（SharedMemory/ashmem）中的SampleRing：采集进程创建并写入，
+ * 通过Binder把文件描述符交给界面进程一次，之后界面进程直接从映射的内存读取采样。需要API 27。
+ */
+@RequiresApi(api = Build.VERSION_CODES.O_MR1)
+public class SharedSampleRing implements Parcelable, Closeable {
+    private final SharedMemory memory;
+    private final ByteBuffer buffer;
+    private final SampleRing ring;
+
+    /**
+     * 创建可写的环形缓冲区（采集进程使用）
+     * @param capacity 记录条数
+     */
+    public static SharedSampleRing create(String name, int capacity) throws ErrnoException {
+        SharedMemory memory = SharedMemory.create(name, SampleRing.bytesFor(capacity));
+        try {
+            ByteBuffer buffer = memory.mapReadWrite();
+            memory.setProtect(OsConstants.PROT_READ); // 其他进程只能只读映射
+            return new SharedSampleRing(memory, buffer, SampleRing.create(buffer, capacity));
+        } catch (ErrnoException | RuntimeException e) {
+            memory.close();
+            throw e;
+        }
+    }
+
+    private SharedSampleRing(SharedMemory memory, ByteBuffer buffer, SampleRing ring) {
+        this.memory = memory;
+        this.buffer = buffer;
+        this.ring = ring;
+    }
+
+    public SampleRing getRing() {
+        return ring;
+    }
+
+    @Override
+    public void close() {
+        SharedMemory.unmap(buffer);
+        memory.close();
+    }
+
+    @Override
+    public int describeContents() {
+        return CONTENTS_FILE_DESCRIPTOR;
+    }
+
+    // 只传递共享内存的文件描述符
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeParcelable(memory, 0); // 作为返回值写出时也不关闭自己持有的共享内存
+    }
+
+    // 接收方只读映射
+    public static final Creator<SharedSampleRing> CREATOR = new Creator<SharedSampleRing>() {
+        @Override
+        public SharedSampleRing createFromParcel(Parcel in) {
+            SharedMemory memory = in.readParcelable(SharedMemory.class.getClassLoader());
+            try {
+                ByteBuffer buffer = memory.mapReadOnly();
+                return new SharedSampleRing(memory, buffer, SampleRing.attach(buffer));
+            } catch (ErrnoException e) {
+                memory.close();
+                throw new IllegalStateException("映射共享内存失败", e);
+            }
+        }
+
+        @Override
+        public SharedSampleRing[] newArray(int size) {
+            return new SharedSampleRing[size];
+        }
+    };
+}
@@ -0,0 +1,209 @@
+package com.example.blueteeth;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 预写溢出日志：采样点先以固定长度记录写入内存映射文件，再由数据库写入线程异步批量落库。
+ * 文件按环形缓冲区使用，头部记录已落库的最大序号；进程被杀后重启时，
+ * 序号大于该值的记录会被重新回放到数据库（至少一次语义）。
+ *
+ * 文件布局：
+ * [头部 32字节] magic(4) + version(4) + drainedSeq(8) + 保留(16)
+ * [记录 24字节] timeMillis(8) + deviceId(2) + type(2) + value(4) + seq(8)，seq最后写入，seq为0表示空槽
+ * （早期记录的deviceId位置为0，即设备未知，格式兼容）
+ */
+public class SpillLog implements Closeable {
+    private static final int MAGIC = 0x424F5831; // "BOX1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int OFFSET_DRAINED_SEQ = 8;
+    private static final int RECORD_SIZE = 24;
+    private static final int OFFSET_DEVICE_ID = 8; // 与type共用原来4字节type字段的高两字节（大端）
+    private static final int OFFSET_TYPE = 10;
+    private static final int MAX_DEVICE_ID = 0xFFFF;
+    private static final int OFFSET_VALUE = 12;
+    private static final int OFFSET_SEQ = 16;
+
+    /**
+     * 日志中的一条采样记录
+     */
+    public static class Record {
+        public final long seq;
+        public final long timeMillis;
+        public final int type;
+        public final int deviceId;
+        public final float value;
+
+        Record(long seq, long timeMillis, int type, int deviceId, float value) {
+            this.seq = seq;
+            this.timeMillis = timeMillis;
+            this.type = type;
+            this.deviceId = deviceId;
+            this.value = value;
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+
+    private int writeSlot; // 下一条记录写入的槽位
+    private int readSlot; // 下一条待落库记录的槽位
+    private int pendingCount; // 尚未落库的记录数
+    private long nextSeq;
+    private long drainedSeq;
+
+    /**
+     * 打开（或创建）溢出日志
+     * @param path 日志文件
+     * @param capacityRecords 最多可缓存的未落库记录数
+     */
+    public SpillLog(File path, int capacityRecords) throws IOException {
+        slotCount = capacityRecords;
+        long size = HEADER_SIZE + (long) RECORD_SIZE * capacityRecords;
+
+        file = new RandomAccessFile(path, "rw");
+        boolean fresh = file.length() != size;
+        if (fresh) {
+            file.setLength(0);
+            file.setLength(size);
+        }
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        if (fresh || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            // 新文件或格式不符，重新初始化
+            for (int i = 0; i < slotCount; i++) {
+                buffer.putLong(slotOffset(i) + OFFSET_SEQ, 0);
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(OFFSET_DRAINED_SEQ, 0);
+        }
+        recover();
+    }
+
+    // 扫描所有槽位，找出序号大于已落库序号的记录，恢复读写位置
+    private void recover() {
+        drainedSeq = buffer.getLong(OFFSET_DRAINED_SEQ);
+        long maxSeq = drainedSeq;
+        long minPendingSeq = Long.MAX_VALUE;
+        int minPendingSlot = 0;
+        int maxSlot = -1;
+        pendingCount = 0;
+
+        for (int i = 0; i < slotCount; i++) {
+            long seq = buffer.getLong(slotOffset(i) + OFFSET_SEQ);
+            if (seq > drainedSeq) {
+                // 只有已落库的槽位才会被覆盖，所以序号大于drainedSeq的记录都是待落库记录
+                pendingCount++;
+                if (seq < minPendingSeq) {
+                    minPendingSeq = seq;
+                    minPendingSlot = i;
+                }
+            }
+            if (seq > maxSeq) {
+                maxSeq = seq;
+                maxSlot = i;
+            }
+        }
+
+        nextSeq = maxSeq + 1;
+        if (pendingCount > 0) {
+            readSlot = minPendingSlot;
+            writeSlot = (maxSlot + 1) % slotCount;
+        } else {
+            readSlot = 0;
+            writeSlot = 0;
+        }
+    }
+
+    /**
+     * 追加一条记录
+     * @return 记录序号；日志已满时返回-1，调用方应直接写数据库
+     */
+    public synchronized long append(long timeMillis, int type, int deviceId, float value) {
+        if (pendingCount >= slotCount) {
+            return -1;
+        }
+        long seq = nextSeq++;
+        int offset = slotOffset(writeSlot);
+        buffer.putLong(offset, timeMillis);
+        buffer.putShort(offset + OFFSET_TYPE, (short) type);
+        // 超出两字节的设备行号记为未知
+        buffer.putShort(offset + OFFSET_DEVICE_ID, (short) (deviceId > 0 && deviceId <= MAX_DEVICE_ID ? deviceId : 0));
+        buffer.putFloat(offset + OFFSET_VALUE, value);
+        // 序号最后写入，保证有序号的记录内容完整
+        buffer.putLong(offset + OFFSET_SEQ, seq);
+
+        writeSlot = (writeSlot + 1) % slotCount;
+        pendingCount++;
+        return seq;
+    }
+
+    /**
+     * 读取最多maxCount条待落库记录（按序号顺序），不会移动读位置
+     */
+    public synchronized List<Record> peekPending(int maxCount) {
+        int count = Math.min(maxCount, pendingCount);
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        List<Record> records = new ArrayList<>(count);
+        int slot = readSlot;
+        for (int i = 0; i < count; i++) {
+            int offset = slotOffset(slot);
+            records.add(new Record(
+                    buffer.getLong(offset + OFFSET_SEQ),
+                    buffer.getLong(offset),
+                    buffer.getShort(offset + OFFSET_TYPE),
+                    buffer.getShort(offset + OFFSET_DEVICE_ID) & MAX_DEVICE_ID,
+                    buffer.getFloat(offset + OFFSET_VALUE)));
+            slot = (slot + 1) % slotCount;
+        }
+        return records;
+    }
+
+    /**
+     * 标记记录已写入数据库，释放对应槽位
+     * @param lastSeq 本次落库的最后一条记录序号
+     * @param count 本次落库的记录数
+     */
+    public synchronized void markDrained(long lastSeq, int count) {
+        int released = Math.min(count, pendingCount);
+        readSlot = (readSlot + released) % slotCount;
+        pendingCount -= released;
+        drainedSeq = lastSeq;
+        buffer.putLong(OFFSET_DRAINED_SEQ, lastSeq);
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    public synchronized long getDrainedSeq() {
+        return drainedSeq;
+    }
+
+    // 把映射内容刷到存储设备（正常关闭或进入后台时调用）
+    public synchronized void sync() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.blueteeth;
+
+import com.github.mikephil.charting.formatter.ValueFormatter;
+
+import java.util.Arrays;
+
+/**
+ * 图表的时间轴：X值是相对基准时刻的秒数，按真实时间间隔排列，而不是数据在列表中的下标，
+ * 断连和暂停在图上显示为空白，缩放和平移后的可见范围可以直接换算成数据库的时间范围查询。
+ *
+ * 基准时刻按分钟对齐，数据窗口向前移动时保持不变，已生成的X值和标签都不必重建；
+ * 标签按秒缓存，刷新时同一刻度不会重复格式化。只在主线程使用。
+ */
+public class TimeAxis extends ValueFormatter {
+    private static final long ORIGIN_ALIGN_MILLIS = 60_000;
+    // float秒在这个跨度内仍能精确到毫秒（2^24毫秒约4.6小时），超出后重新选择基准
+    private static final long MAX_SPAN_MILLIS = 4 * 3600_000L;
+    private static final int LABEL_CACHE_SIZE = 32; // 按秒直接映射，远多于一屏的刻度数
+
+    // 相邻采样间隔超过典型间隔的这个倍数（且不少于MIN_GAP_MILLIS）视为没有数据的空白段
+    private static final int GAP_FACTOR = 5;
+    private static final long MIN_GAP_MILLIS = 2000;
+
+    private long originMillis = Long.MIN_VALUE;
+    private final long[] cachedSeconds = new long[LABEL_CACHE_SIZE];
+    private final String[] cachedLabels = new String[LABEL_CACHE_SIZE];
+    private TimeFormatter cachedFormatter; // 时区变化后格式化器会重建，缓存的标签随之作废
+
+    public TimeAxis() {
+        clearLabels();
+    }
+
+    /**
+     * 保证[fromMillis, toMillis]能用当前基准表示，必要时重新选择基准
+     * @return 基准是否变化；变化后之前生成的X值都要重建
+     */
+    public boolean ensureRange(long fromMillis, long toMillis) {
+        if (originMillis != Long.MIN_VALUE && fromMillis >= originMillis && toMillis - originMillis <= MAX_SPAN_MILLIS) {
+            return false;
+        }
+        originMillis = Math.floorDiv(fromMillis, ORIGIN_ALIGN_MILLIS) * ORIGIN_ALIGN_MILLIS;
+        clearLabels();
+        return true;
+    }
+
+    public long getOriginMillis() {
+        return originMillis;
+    }
+
+    public float toX(long millis) {
+        return (millis - originMillis) / 1000f;
+    }
+
+    public long toMillis(float x) {
+        return originMillis + Math.round(x * 1000.0);
+    }
+
+    @Override
+    public String getFormattedValue(float value) {
+        TimeFormatter formatter = TimeFormatter.getDefault();
+        if (formatter != cachedFormatter) {
+            clearLabels();
+            cachedFormatter = formatter;
+        }
+        long second = Math.floorDiv(toMillis(value), 1000);
+        int slot = (int) Math.floorMod(second, LABEL_CACHE_SIZE);
+        if (cachedSeconds[slot] != second) {
+            cachedSeconds[slot] = second;
+            cachedLabels[slot] = formatter.formatTime(second * 1000);
+        }
+        return cachedLabels[slot];
+    }
+
+    private void clearLabels() {
+        Arrays.fill(cachedSeconds, Long.MIN_VALUE);
+        Arrays.fill(cachedLabels, null);
+    }
+
+    // 典型间隔取相邻间隔的中位数，采样率调整或少量空白不会影响判断；降采样时也用它切分空白段
+    static long gapThresholdMillis(ChannelWindow.Samples view) {
+        int count = view.size() - 1;
+        if (count <= 0) {
+            return MIN_GAP_MILLIS;
+        }
+        long[] intervals = new long[count];
+        for (int i = 0; i < count; i++) {
+            intervals[i] = view.timeAt(i + 1) - view.timeAt(i);
+        }
+        Arrays.sort(intervals);
+        return Math.max(MIN_GAP_MILLIS, intervals[count / 2] * GAP_FACTOR);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.blueteeth;
+
+import java.util.TimeZone;
+
+/**
+ * 线程安全的时间格式化（"HH:mm:ss" 和 "yyyy-MM-dd HH:mm:ss"）。
+ * 同一秒内的采样共享同一个字符串：结果按秒缓存，命中时不分配任何对象；
+ * 未命中时按时区偏移直接计算日期和时分秒，不经过SimpleDateFormat/Calendar。
+ * 缓存条目不可变，通过volatile整体替换，多个线程同时使用无需加锁。
+ *
+ * 时区在构造时确定；系统时区变化后新建实例即可。
+ */
+public final class TimeFormatter {
+    private static final long SECONDS_PER_DAY = 86400;
+
+    private static volatile TimeFormatter defaultInstance = new TimeFormatter(TimeZone.getDefault());
+
+    // 一秒及其格式化结果
+    private static final class Cached {
+        final long epochSecond;
+        final String text;
+
+        Cached(long epochSecond, String text) {
+            this.epochSecond = epochSecond;
+            this.text = text;
+        }
+    }
+
+    private final TimeZone zone;
+    private volatile Cached lastTime = new Cached(Long.MIN_VALUE, null);
+    private volatile Cached lastDateTime = new Cached(Long.MIN_VALUE, null);
+
+    public TimeFormatter(TimeZone zone) {
+        this.zone = (TimeZone) zone.clone(); // 私有副本，不受外部修改影响
+    }
+
+    /**
+     * 使用系统默认时区的共享实例
+     */
+    public static TimeFormatter getDefault() {
+        return defaultInstance;
+    }
+
+    /**
+     * 系统时区变化后调用，之后的格式化使用新时区
+     */
+    public static void resetDefault() {
+        defaultInstance = new TimeFormatter(TimeZone.getDefault());
+    }
+
+    /**
+     * 格式化为 "HH:mm:ss"（本地时间）
+     */
+    public String formatTime(long timeMillis) {
+        long epochSecond = Math.floorDiv(timeMillis, 1000);
+        Cached cached = lastTime;
+        if (cached.epochSecond == epochSecond) {
+            return cached.text;
+        }
+        char[] chars = new char[8];
+        writeTime(chars, 0, localSecondOfDay(timeMillis, epochSecond));
+        String text = new String(chars);
+        lastTime = new Cached(epochSecond, text);
+        return text;
+    }
+
+    /**
+     * 格式化为 "yyyy-MM-dd HH:mm:ss"（本地时间）
+     */
+    public String formatDateTime(long timeMillis) {
+        long epochSecond = Math.floorDiv(timeMillis, 1000);
+        Cached cached = lastDateTime;
+        if (cached.epochSecond == epochSecond) {
+            return cached.text;
+        }
+        long localSecond = epochSecond + zone.getOffset(timeMillis) / 1000;
+        char[] chars = new char[19];
+        writeDate(chars, Math.floorDiv(localSecond, SECONDS_PER_DAY));
+        chars[10] = ' ';
+        writeTime(chars, 11, (int) Math.floorMod(localSecond, SECONDS_PER_DAY));
+        String text = new String(chars);
+        lastDateTime = new Cached(epochSecond, text);
+        return text;
+    }
+
+    private int localSecondOfDay(long timeMillis, long epochSecond) {
+        long localSecond = epochSecond + zone.getOffset(timeMillis) / 1000;
+        return (int) Math.floorMod(localSecond, SECONDS_PER_DAY);
+    }
+
+    // HH:mm:ss
+    private static void writeTime(char[] chars, int offset, int secondOfDay) {
+        writeTwoDigits(chars, offset, secondOfDay / 3600);
+        chars[offset + 2] = ':';
+        writeTwoDigits(chars, offset + 3, secondOfDay / 60 % 60);
+        chars[offset + 5] = ':';
+        writeTwoDigits(chars, offset + 6, secondOfDay % 60);
+    }
+
+    // yyyy-MM-dd，由1970-01-01起的天数换算为公历日期
+    private static void writeDate(char[] chars, long epochDay) {
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153; // 从三月开始计
+        int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        writeTwoDigits(chars, 0, year / 100);
+        writeTwoDigits(chars, 2, year % 100);
+        chars[4] = '-';
+        writeTwoDigits(chars, 5, month);
+        chars[7] = '-';
+        writeTwoDigits(chars, 8, day);
+    }
+
+    private static void writeTwoDigits(char[] chars, int offset, int value) {
+        chars[offset] = (char) ('0' + value / 10);
+        chars[offset + 1] = (char) ('0' + value % 10);
+    }
+}
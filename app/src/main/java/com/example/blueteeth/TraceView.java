@@ -0,0 +1,208 @@
+package com.example.blueteeth;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * 示波器式的实时波形：直接从通道实时窗口（环形缓冲区）读取最近一段时间的采样，
+ * 用Canvas.drawLines一次画出，最新的采样在右边缘，随时间向左滚动。
+ *
+ * 线段坐标写入尺寸变化时分配好的float[]，每个像素列最多一条竖线和一条连线，
+ * 点数只取决于视图宽度；绘制过程不创建任何对象。可见时每个垂直同步重绘一次。只在主线程使用。
+ */
+public class TraceView extends View {
+    private static final long DEFAULT_WINDOW_MILLIS = 10_000;
+    // 相邻采样间隔超过这个值时不连线，断连和暂停显示为空白
+    private static final long GAP_MILLIS = 2000;
+    private static final int GRID_LINES = 4;
+
+    private final Paint tracePaint = new Paint();
+    private final Paint gridPaint = new Paint();
+    private final ChannelWindow.Reader frameReader = this::buildLines;
+
+    private ChannelWindow.View source;
+    private long windowMillis = DEFAULT_WINDOW_MILLIS;
+    private float[] lines = new float[0]; // 每条线段4个值：x0, y0, x1, y1
+    private int lineValues;
+    private float[] gridLines = new float[0];
+
+    // 当前帧的参数，buildLines在视图读取回调中使用
+    private long frameRightMillis;
+    private int plotWidth;
+    private int plotHeight;
+
+    public TraceView(Context context) {
+        this(context, null);
+    }
+
+    public TraceView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        tracePaint.setColor(Color.RED);
+        tracePaint.setStrokeWidth(2f);
+        tracePaint.setAntiAlias(true);
+        tracePaint.setStyle(Paint.Style.STROKE);
+        gridPaint.setColor(Color.LTGRAY);
+        gridPaint.setStrokeWidth(1f);
+    }
+
+    /**
+     * 设置数据来源，null表示不显示
+     */
+    public void setSource(ChannelWindow.View source) {
+        this.source = source;
+        invalidate();
+    }
+
+    public void setTraceColor(int color) {
+        tracePaint.setColor(color);
+        invalidate();
+    }
+
+    /**
+     * 横轴显示的时间跨度，不超过实时窗口的时长才有意义
+     */
+    public void setWindowMillis(long windowMillis) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("时间跨度必须为正数");
+        }
+        this.windowMillis = windowMillis;
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        plotWidth = w;
+        plotHeight = h;
+        // 每个像素列一条竖线（列内最小到最大）加一条到下一列的连线
+        lines = new float[(w + 1) * 2 * 4];
+        gridLines = new float[(GRID_LINES + 1) * 4];
+        for (int i = 0; i <= GRID_LINES; i++) {
+            float y = h * i / (float) GRID_LINES;
+            gridLines[i * 4] = 0;
+            gridLines[i * 4 + 1] = y;
+            gridLines[i * 4 + 2] = w;
+            gridLines[i * 4 + 3] = y;
+        }
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        if (visibility == VISIBLE) {
+            invalidate(); // 重新开始逐帧重绘
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        canvas.drawLines(gridLines, gridPaint);
+        if (source == null || plotWidth == 0 || plotHeight == 0) {
+            return;
+        }
+        frameRightMillis = System.currentTimeMillis();
+        lineValues = 0;
+        source.read(frameReader);
+        if (lineValues > 0) {
+            canvas.drawLines(lines, 0, lineValues, tracePaint);
+        }
+        // 可见时下一个垂直同步继续绘制；不可见时停止，重新可见时由onVisibilityChanged恢复
+        if (isShown()) {
+            postInvalidateOnAnimation();
+        }
+    }
+
+    // 把窗口中可见的采样按像素列归并成线段；读取期间有写入时会被重新调用，每次从头写入
+    private void buildLines(ChannelWindow.View view) {
+        lineValues = 0;
+        int size = view.size();
+        long leftMillis = frameRightMillis - windowMillis;
+        int start = firstAtOrAfter(view, leftMillis);
+        if (start >= size) {
+            return;
+        }
+
+        // 纵轴按可见范围自动缩放
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = start; i < size; i++) {
+            float value = view.valueAt(i);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        float range = max - min;
+        if (range <= 0) {
+            range = 1f;
+            min -= 0.5f;
+        }
+        float yScale = (plotHeight - 1) / range;
+        float xScale = plotWidth / (float) windowMillis;
+
+        int column = -1;
+        float columnMin = 0;
+        float columnMax = 0;
+        float lastY = 0;
+        long lastTime = 0;
+        for (int i = start; i < size; i++) {
+            long time = view.timeAt(i);
+            float y = plotHeight - 1 - (view.valueAt(i) - min) * yScale;
+            int x = Math.min(plotWidth, (int) ((time - leftMillis) * xScale));
+            if (x == column) {
+                columnMin = Math.min(columnMin, y);
+                columnMax = Math.max(columnMax, y);
+            } else {
+                if (column >= 0) {
+                    addColumn(column, columnMin, columnMax);
+                    if (time - lastTime <= GAP_MILLIS) {
+                        addLine(column, lastY, x, y);
+                    }
+                }
+                column = x;
+                columnMin = y;
+                columnMax = y;
+            }
+            lastY = y;
+            lastTime = time;
+        }
+        if (column >= 0) {
+            addColumn(column, columnMin, columnMax);
+        }
+    }
+
+    // 采样按时间排序，二分查找可见范围的第一个采样
+    private static int firstAtOrAfter(ChannelWindow.View view, long timeMillis) {
+        int low = 0;
+        int high = view.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (view.timeAt(mid) < timeMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void addColumn(int x, float minY, float maxY) {
+        if (maxY - minY >= 1f) {
+            addLine(x, minY, x, maxY);
+        }
+    }
+
+    private void addLine(float x0, float y0, float x1, float y1) {
+        if (lineValues + 4 > lines.length) {
+            return; // 每列最多两条线段，不会发生
+        }
+        lines[lineValues] = x0;
+        lines[lineValues + 1] = y0;
+        lines[lineValues + 2] = x1;
+        lines[lineValues + 3] = y1;
+        lineValues += 4;
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.blueteeth;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.view.Choreographer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * UI批量分发器：将读取线程产生的数据点（以及可选的原始数据行）合并，
+ * 每个显示帧（vsync）最多向UI Handler发送一条消息。没有可见的界面时（见VisibilityBudget）不产生批次
+ */
+public class UiBatchDispatcher {
+    // 批量数据消息类型
+    public static final int MESSAGE_DATA_BATCH = 3;
+
+    // 单帧内最多缓存的条目数，防止UI线程卡顿时无限增长
+    private static final int MAX_PENDING_POINTS = 1000;
+    private static final int MAX_PENDING_LINES = 256;
+
+    /**
+     * 一帧内累积的数据
+     */
+    public static class Batch {
+        public final ArrayList<DataPoint> dataPoints;
+        public final ArrayList<String> lines; // 未开启原始行回显时为空列表
+
+        Batch(ArrayList<DataPoint> dataPoints, ArrayList<String> lines) {
+            this.dataPoints = dataPoints;
+            this.lines = lines;
+        }
+
+        // 获取本批次中指定类型的最新数据点，没有则返回null
+        public DataPoint getLatest(int type) {
+            for (int i = dataPoints.size() - 1; i >= 0; i--) {
+                DataPoint point = dataPoints.get(i);
+                if (point.getType() == type) {
+                    return point;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final VisibilityBudget budget;
+    private final Object lock = new Object();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // 达到上限后每个新采样都要丢掉最旧的一个，用双端队列使两端的操作都是O(1)
+    private final ArrayDeque<DataPoint> pendingPoints = new ArrayDeque<>();
+    private ArrayList<String> pendingLines = new ArrayList<>();
+    private boolean frameScheduled = false;
+    private boolean released = false;
+
+    private volatile Handler target;
+    private volatile boolean rawLineEchoEnabled = false;
+
+    // 在下一帧开始时把累积的数据一次性发出
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> flush();
+
+    // Choreographer必须在主线程获取，所以先切到主线程再注册帧回调
+    private final Runnable scheduleFrame = () -> Choreographer.getInstance().postFrameCallback(frameCallback);
+
+    public UiBatchDispatcher(VisibilityBudget budget) {
+        this.budget = budget;
+    }
+
+    public void setTarget(Handler target) {
+        this.target = target;
+    }
+
+    // 原始数据行回显默认关闭，只有有人监听时才复制数据行
+    public void setRawLineEchoEnabled(boolean enabled) {
+        this.rawLineEchoEnabled = enabled;
+    }
+
+    public boolean isRawLineEchoEnabled() {
+        return rawLineEchoEnabled && target != null && budget.isUiVisible();
+    }
+
+    // 读取线程调用：加入一个数据点；界面不可见时丢弃，界面恢复后从实时窗口读取
+    public void postDataPoint(DataPoint dataPoint) {
+        if (target == null || !budget.isUiVisible()) {
+            return;
+        }
+        synchronized (lock) {
+            if (pendingPoints.size() >= MAX_PENDING_POINTS) {
+                pendingPoints.pollFirst();
+            }
+            pendingPoints.addLast(dataPoint);
+            scheduleLocked();
+        }
+    }
+
+    // 读取线程调用：加入一条原始数据行（仅在开启回显时生效）
+    public void postLine(String line) {
+        if (!isRawLineEchoEnabled()) {
+            return;
+        }
+        synchronized (lock) {
+            if (pendingLines.size() < MAX_PENDING_LINES) {
+                pendingLines.add(line);
+            }
+            scheduleLocked();
+        }
+    }
+
+    private void scheduleLocked() {
+        if (!frameScheduled && !released) {
+            frameScheduled = true;
+            mainHandler.post(scheduleFrame);
+        }
+    }
+
+    // 在主线程执行：取出累积的数据并发送一条批量消息
+    private void flush() {
+        ArrayList<DataPoint> points;
+        ArrayList<String> lines;
+        synchronized (lock) {
+            frameScheduled = false;
+            if (pendingPoints.isEmpty() && pendingLines.isEmpty()) {
+                return;
+            }
+            points = new ArrayList<>(pendingPoints);
+            pendingPoints.clear();
+            lines = pendingLines;
+            pendingLines = new ArrayList<>();
+        }
+
+        Handler handler = target;
+        if (handler != null) {
+            budget.countWakeup(VisibilityBudget.WAKEUP_UI_FRAME);
+            Message msg = handler.obtainMessage(MESSAGE_DATA_BATCH, new Batch(points, lines));
+            msg.sendToTarget();
+        }
+    }
+
+    // 服务销毁时调用，移除尚未执行的帧回调
+    public void release() {
+        synchronized (lock) {
+            released = true;
+            pendingPoints.clear();
+            pendingLines.clear();
+        }
+        mainHandler.removeCallbacks(scheduleFrame);
+        mainHandler.post(() -> Choreographer.getInstance().removeFrameCallback(frameCallback));
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.blueteeth;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 可见性预算：服务根据界面是否可见、屏幕是否点亮决定花多少CPU在"给人看"的工作上。
+ * - 没有可见的界面（没有订阅者或屏幕关闭）时不再产生界面批次，主线程不会被逐帧唤醒
+ * - 屏幕关闭时进入批量落库模式，采样在溢出日志中累积，定时一次写入数据库
+ *
+ * 同时按来源统计唤醒次数（界面帧、落库、通知），每次屏幕状态变化时结束一个统计周期，
+ * 便于比较亮屏和熄屏时每分钟的唤醒次数。状态方法线程安全。
+ */
+public class VisibilityBudget {
+    public static final int WAKEUP_UI_FRAME = 0; // 向界面发送一个批次
+    public static final int WAKEUP_DB_FLUSH = 1; // 写入线程执行一次落库
+    public static final int WAKEUP_NOTIFICATION = 2; // 向NotificationManager提交一次通知
+    public static final int WAKEUP_KIND_COUNT = 3;
+
+    private static final String[] WAKEUP_NAMES = {"界面帧", "落库", "通知"};
+
+    /**
+     * 一个统计周期内各来源的唤醒次数
+     */
+    public static class Stats {
+        public final boolean screenOn; // 周期内的屏幕状态
+        public final long durationMillis;
+        private final long[] counts;
+
+        Stats(boolean screenOn, long durationMillis, long[] counts) {
+            this.screenOn = screenOn;
+            this.durationMillis = durationMillis;
+            this.counts = counts;
+        }
+
+        public long getCount(int kind) {
+            return counts[kind];
+        }
+
+        public long getTotal() {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            return total;
+        }
+
+        // 每分钟的唤醒次数，周期太短时按1秒计算
+        public double perMinute(int kind) {
+            return counts[kind] * 60_000.0 / Math.max(1000, durationMillis);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(screenOn ? "亮屏" : "熄屏");
+            builder.append(String.format(Locale.US, " %ds:", durationMillis / 1000));
+            for (int kind = 0; kind < WAKEUP_KIND_COUNT; kind++) {
+                builder.append(String.format(Locale.US, " %s %d次(%.1f/分钟)", WAKEUP_NAMES[kind], counts[kind],
+                        perMinute(kind)));
+            }
+            return builder.toString();
+        }
+    }
+
+    private final AtomicLongArray wakeups = new AtomicLongArray(WAKEUP_KIND_COUNT);
+    private int visibleCount = 0;
+    private boolean screenOn = true;
+    private long periodStartMillis;
+    // 读取线程每个采样都要查询，单独保存计算结果，查询时不加锁
+    private volatile boolean uiVisible = false;
+    private volatile boolean batchMode = false;
+
+    /**
+     * 初始状态为亮屏、没有可见界面
+     */
+    public VisibilityBudget(long nowMillis) {
+        this.periodStartMillis = nowMillis;
+    }
+
+    public synchronized void addVisible() {
+        visibleCount++;
+        update();
+    }
+
+    public synchronized void removeVisible() {
+        visibleCount = Math.max(0, visibleCount - 1);
+        update();
+    }
+
+    /**
+     * 屏幕状态变化，结束当前统计周期
+     * @return 刚结束的周期的统计；状态没有变化时返回null，周期继续
+     */
+    public synchronized Stats setScreenOn(boolean screenOn, long nowMillis) {
+        if (screenOn == this.screenOn) {
+            return null;
+        }
+        Stats finished = takePeriod(nowMillis);
+        this.screenOn = screenOn;
+        update();
+        return finished;
+    }
+
+    private void update() {
+        uiVisible = screenOn && visibleCount > 0;
+        batchMode = !screenOn;
+    }
+
+    /**
+     * 是否有人能看到界面；否则不必产生界面批次
+     */
+    public boolean isUiVisible() {
+        return uiVisible;
+    }
+
+    /**
+     * 是否处于批量落库模式（屏幕关闭）
+     */
+    public boolean isBatchMode() {
+        return batchMode;
+    }
+
+    public void countWakeup(int kind) {
+        wakeups.incrementAndGet(kind);
+    }
+
+    /**
+     * 当前周期到目前为止的统计，不结束周期
+     */
+    public synchronized Stats peek(long nowMillis) {
+        long[] counts = new long[WAKEUP_KIND_COUNT];
+        for (int kind = 0; kind < WAKEUP_KIND_COUNT; kind++) {
+            counts[kind] = wakeups.get(kind);
+        }
+        return new Stats(screenOn, nowMillis - periodStartMillis, counts);
+    }
+
+    private Stats takePeriod(long nowMillis) {
+        long[] counts = new long[WAKEUP_KIND_COUNT];
+        for (int kind = 0; kind < WAKEUP_KIND_COUNT; kind++) {
+            counts[kind] = wakeups.getAndSet(kind, 0);
+        }
+        Stats stats = new Stats(screenOn, nowMillis - periodStartMillis, counts);
+        periodStartMillis = nowMillis;
+        return stats;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.blueteeth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ChannelWindowTest {
+
+    @Test
+    public void evictsSamplesOlderThanDuration() {
+        ChannelWindow window = new ChannelWindow(1000, 100);
+        for (long time = 0; time <= 2000; time += 100) {
+            window.add(time, time / 100f);
+        }
+        // 写入t=2000时早于t=1000的采样被淘汰
+        ChannelWindow.Snapshot snapshot = window.snapshot();
+        assertEquals(11, snapshot.count);
+        assertEquals(1000, snapshot.timesMillis[0]);
+        assertEquals(2000, snapshot.timesMillis[snapshot.count - 1]);
+        assertEquals(10f, snapshot.values[0], 0f);
+    }
+
+    @Test
+    public void evictsOldestWhenFull() {
+        // 容量超过初始大小，先扩容再覆盖最早的采样
+        ChannelWindow window = new ChannelWindow(Long.MAX_VALUE / 2, 300);
+        for (int i = 0; i < 700; i++) {
+            window.add(i, i);
+        }
+        assertEquals(300, window.size());
+        assertEquals(699, window.getLatestTimeMillis());
+
+        ChannelWindow.Snapshot snapshot = window.snapshot();
+        for (int i = 0; i < snapshot.count; i++) {
+            assertEquals(400 + i, snapshot.timesMillis[i]);
+        }
+
+        // 视图跨越环形缓冲区的末尾按时间顺序读取
+        ChannelWindow.SampleCopy copy = new ChannelWindow.SampleCopy();
+        window.newView().read(copy);
+        assertEquals(300, copy.size());
+        for (int i = 0; i < copy.size(); i++) {
+            assertEquals(400 + i, copy.timeAt(i));
+            assertEquals(400 + i, copy.valueAt(i), 0f);
+        }
+    }
+
+    @Test
+    public void viewFallsBackToCopyWhenWritesInterleave() {
+        ChannelWindow window = new ChannelWindow(Long.MAX_VALUE / 2, 1000);
+        for (int i = 0; i < 10; i++) {
+            window.add(i, i);
+        }
+        // 模拟写入线程：每次读取期间都写入一个采样，乐观读全部失败后改为在读锁下复制
+        int[] calls = {0};
+        int[] lastSize = {0};
+        window.newView().read(view -> {
+            calls[0]++;
+            lastSize[0] = view.size();
+            for (int i = 0; i < view.size(); i++) {
+                assertEquals(i < 10 ? i : 100 + i - 9, view.timeAt(i));
+            }
+            window.add(100 + calls[0], 0f);
+        });
+
+        // 4次乐观读加1次复制
+        assertEquals(5, calls[0]);
+        // 复制发生在第4次写入之后；最后一次回调里的写入不影响已复制的内容
+        assertEquals(14, lastSize[0]);
+        assertEquals(15, window.size());
+    }
+
+    @Test
+    public void sampleCopyIsDetachedFromWindow() {
+        ChannelWindow window = new ChannelWindow(Long.MAX_VALUE / 2, 100);
+        ChannelWindow.SampleCopy copy = new ChannelWindow.SampleCopy();
+        window.newView().read(copy);
+        assertTrue(copy.isEmpty());
+
+        for (int i = 0; i < 5; i++) {
+            window.add(i, i * 2f);
+        }
+        window.newView().read(copy);
+        window.add(5, 10f);
+        window.clear();
+
+        assertEquals(5, copy.size());
+        assertEquals(4, copy.timeAt(4));
+        assertEquals(8f, copy.valueAt(4), 0f);
+        try {
+            copy.timeAt(5);
+            fail("越界访问应抛出异常");
+        } catch (IndexOutOfBoundsException expected) {
+            // 预期
+        }
+    }
+}
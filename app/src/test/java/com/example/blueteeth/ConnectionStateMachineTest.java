@@ -0,0 +1,124 @@
+package com.example.blueteeth;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * 连接状态机单元测试，包括多线程并发压力测试
+ */
+public class ConnectionStateMachineTest {
+
+    @Test
+    public void connectMeasureDisconnect() {
+        ConnectionStateMachine machine = new ConnectionStateMachine();
+        assertEquals(ConnectionStateMachine.STATE_DISCONNECTED, machine.getState());
+
+        // 未连接时不能开始测量
+        assertFalse(machine.startMeasuring());
+
+        long generation = machine.beginConnect();
+        assertEquals(ConnectionStateMachine.STATE_CONNECTING, machine.getState());
+        assertTrue(machine.onConnected(generation));
+        assertTrue(machine.startMeasuring());
+        assertTrue(machine.isMeasuring());
+
+        // 连接断开时测量标志随之清除
+        assertTrue(machine.onConnectionLost(generation));
+        assertEquals(ConnectionStateMachine.STATE_DISCONNECTED, machine.getState());
+        assertFalse(machine.isMeasuring());
+    }
+
+    @Test
+    public void staleGenerationIsRejected() {
+        ConnectionStateMachine machine = new ConnectionStateMachine();
+        long first = machine.beginConnect();
+        long second = machine.beginConnect();
+
+        // 旧连接线程的回调不能影响新连接
+        assertFalse(machine.onConnected(first));
+        assertFalse(machine.onConnectFailed(first));
+        assertEquals(ConnectionStateMachine.STATE_CONNECTING, machine.getState());
+
+        assertTrue(machine.onConnected(second));
+        machine.disconnect();
+        assertFalse(machine.onConnectionLost(second));
+        assertEquals(ConnectionStateMachine.STATE_DISCONNECTED, machine.getState());
+    }
+
+    @Test
+    public void concurrentTransitionsKeepInvariants() throws Exception {
+        final int threadCount = 16;
+        final int opsPerThread = 20000;
+        final ConnectionStateMachine machine = new ConnectionStateMachine();
+        final AtomicInteger violations = new AtomicInteger();
+        final AtomicLong generationBumps = new AtomicLong();
+
+        // 每次转换都必须满足：测量中一定处于已连接状态
+        machine.setListener((oldState, newState, measuring) -> {
+            if (measuring && newState != ConnectionStateMachine.STATE_CONNECTED) {
+                violations.incrementAndGet();
+            }
+        });
+
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            final long seed = t;
+            Thread thread = new Thread(() -> {
+                Random random = new Random(seed);
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < opsPerThread; i++) {
+                    long generation = machine.getGeneration();
+                    switch (random.nextInt(7)) {
+                        case 0:
+                            machine.beginConnect();
+                            generationBumps.incrementAndGet();
+                            break;
+                        case 1:
+                            machine.onConnected(generation);
+                            break;
+                        case 2:
+                            machine.onConnectFailed(generation);
+                            break;
+                        case 3:
+                            machine.onConnectionLost(generation);
+                            break;
+                        case 4:
+                            machine.disconnect();
+                            generationBumps.incrementAndGet();
+                            break;
+                        case 5:
+                            machine.startMeasuring();
+                            break;
+                        default:
+                            machine.stopMeasuring();
+                            break;
+                    }
+                }
+            }, "StateMachineStress-" + t);
+            threads.add(thread);
+            thread.start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals("测量标志与连接状态不一致", 0, violations.get());
+        // 每次发起连接和断开都恰好产生一个新代数，没有丢失更新
+        assertEquals(generationBumps.get(), machine.getGeneration());
+    }
+}
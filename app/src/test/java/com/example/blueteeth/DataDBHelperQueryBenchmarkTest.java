@@ -0,0 +1,212 @@
+package com.example.blueteeth;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 查询层基准测试（Robolectric，JVM上运行真实SQLite）：
+ * 对比旧的查询方式（SELECT *、逐行getColumnIndex、在Java中聚合）和新的预编译/投影/SQL聚合接口。
+ * 只断言结果一致，耗时打印到标准输出，不作为通过条件。
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class DataDBHelperQueryBenchmarkTest {
+    private static final int SAMPLE_COUNT = 20000;
+    private static final long SAMPLE_INTERVAL_MILLIS = 200;
+    private static final long BUCKET_MILLIS = 60_000;
+    private static final int ROUNDS = 5;
+
+    private DataDBHelper dbHelper;
+    private long startMillis;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.getApplication();
+        DataDBHelper.resetInstance();
+        dbHelper = DataDBHelper.getInstance(context);
+        dbHelper.clearAllData();
+
+        startMillis = System.currentTimeMillis() - SAMPLE_COUNT * SAMPLE_INTERVAL_MILLIS;
+        ArrayList<DataPoint> batch = new ArrayList<>(SAMPLE_COUNT);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            long time = startMillis + i * SAMPLE_INTERVAL_MILLIS;
+            int type = i % 3;
+            float value = type == DataPoint.TYPE_PERCENTAGE ? 18f + (i % 50) / 10f : i % 1024;
+            batch.add(new DataPoint("00:00:00", value, type, time));
+        }
+        assertTrue(dbHelper.addDataPoints(batch));
+    }
+
+    @After
+    public void tearDown() {
+        DataDBHelper.resetInstance();
+    }
+
+    @Test
+    public void countByType() {
+        long legacyNanos = 0;
+        long newNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int type = 0; type < 3; type++) {
+                long t0 = System.nanoTime();
+                int legacy = legacyCountByType(type);
+                long t1 = System.nanoTime();
+                int current = dbHelper.getDataPointCountByType(type);
+                long t2 = System.nanoTime();
+                legacyNanos += t1 - t0;
+                newNanos += t2 - t1;
+                assertEquals(legacy, current);
+            }
+        }
+        report("按类型计数", legacyNanos, newNanos);
+    }
+
+    @Test
+    public void rangeQueryByType() {
+        long from = startMillis + SAMPLE_COUNT / 2 * SAMPLE_INTERVAL_MILLIS;
+        DataQuery query = new DataQuery.Builder()
+                .setTimeRange(from, Long.MAX_VALUE)
+                .setType(DataPoint.TYPE_PERCENTAGE)
+                .setDescending(true)
+                .build();
+
+        long legacyNanos = 0;
+        long newNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long t0 = System.nanoTime();
+            List<DataPoint> legacy = legacyRangeQuery(from, DataPoint.TYPE_PERCENTAGE);
+            long t1 = System.nanoTime();
+            List<DataPoint> current = dbHelper.query(query);
+            long t2 = System.nanoTime();
+            legacyNanos += t1 - t0;
+            newNanos += t2 - t1;
+
+            assertEquals(legacy.size(), current.size());
+            assertEquals(legacy.get(0).getValue(), current.get(0).getValue(), 0f);
+        }
+        report("时间范围+类型查询", legacyNanos, newNanos);
+    }
+
+    @Test
+    public void limitedQueryReturnsNewestFirst() {
+        DataQuery query = new DataQuery.Builder().setLimit(10).setDescending(true).build();
+        List<DataPoint> latest = dbHelper.query(query);
+        assertEquals(10, latest.size());
+        for (int i = 1; i < latest.size(); i++) {
+            assertTrue(latest.get(i - 1).getTimeMillis() > latest.get(i).getTimeMillis());
+        }
+    }
+
+    @Test
+    public void bucketedAggregate() {
+        DataQuery query = new DataQuery.Builder().setType(DataPoint.TYPE_PERCENTAGE).build();
+
+        long legacyNanos = 0;
+        long newNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long t0 = System.nanoTime();
+            List<AggregateBucket> legacy = legacyAggregate(DataPoint.TYPE_PERCENTAGE);
+            long t1 = System.nanoTime();
+            List<AggregateBucket> current = dbHelper.aggregate(query, BUCKET_MILLIS);
+            long t2 = System.nanoTime();
+            legacyNanos += t1 - t0;
+            newNanos += t2 - t1;
+
+            assertEquals(legacy.size(), current.size());
+            for (int i = 0; i < legacy.size(); i++) {
+                assertEquals(legacy.get(i).bucketStartMillis, current.get(i).bucketStartMillis);
+                assertEquals(legacy.get(i).count, current.get(i).count);
+                assertEquals(legacy.get(i).min, current.get(i).min, 1e-4f);
+                assertEquals(legacy.get(i).max, current.get(i).max, 1e-4f);
+                assertEquals(legacy.get(i).average, current.get(i).average, 1e-3f);
+            }
+        }
+        report("分桶聚合", legacyNanos, newNanos);
+    }
+
+    // 旧方式：类型拼接进SQL，每次重新编译
+    private int legacyCountByType(int type) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + DataDBHelper.TABLE_DATA_POINTS
+                + " WHERE " + DataDBHelper.COLUMN_TYPE + " = " + type, null);
+        cursor.moveToFirst();
+        int count = cursor.getInt(0);
+        cursor.close();
+        return count;
+    }
+
+    // 旧方式：SELECT *，逐行查找列下标，在Java中按类型过滤
+    private List<DataPoint> legacyRangeQuery(long fromMillis, int type) {
+        ArrayList<DataPoint> result = new ArrayList<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.query(DataDBHelper.TABLE_DATA_POINTS, null,
+                DataDBHelper.COLUMN_TIME_MS + " >= ?", new String[] {String.valueOf(fromMillis)},
+                null, null, DataDBHelper.COLUMN_TIME_MS + " DESC");
+        while (cursor.moveToNext()) {
+            int timestampIndex = cursor.getColumnIndex(DataDBHelper.COLUMN_TIMESTAMP);
+            int valueIndex = cursor.getColumnIndex(DataDBHelper.COLUMN_VALUE);
+            int typeIndex = cursor.getColumnIndex(DataDBHelper.COLUMN_TYPE);
+            int timeIndex = cursor.getColumnIndex(DataDBHelper.COLUMN_TIME_MS);
+            if (cursor.getInt(typeIndex) != type) {
+                continue;
+            }
+            result.add(new DataPoint(cursor.getString(timestampIndex), cursor.getFloat(valueIndex),
+                    cursor.getInt(typeIndex), cursor.getLong(timeIndex)));
+        }
+        cursor.close();
+        return result;
+    }
+
+    // 旧方式：取出全部数据后在Java中分桶聚合
+    private List<AggregateBucket> legacyAggregate(int type) {
+        List<DataPoint> points = legacyRangeQuery(0, type);
+        ArrayList<AggregateBucket> buckets = new ArrayList<>();
+        long currentBucket = Long.MIN_VALUE;
+        int count = 0;
+        double sum = 0;
+        float min = 0;
+        float max = 0;
+        // 查询结果从新到旧，倒序遍历得到升序分桶
+        for (int i = points.size() - 1; i >= 0; i--) {
+            DataPoint point = points.get(i);
+            long bucket = point.getTimeMillis() / BUCKET_MILLIS * BUCKET_MILLIS;
+            if (bucket != currentBucket) {
+                if (count > 0) {
+                    buckets.add(new AggregateBucket(currentBucket, count, (float) (sum / count), min, max));
+                }
+                currentBucket = bucket;
+                count = 0;
+                sum = 0;
+                min = Float.MAX_VALUE;
+                max = -Float.MAX_VALUE;
+            }
+            count++;
+            sum += point.getValue();
+            min = Math.min(min, point.getValue());
+            max = Math.max(max, point.getValue());
+        }
+        if (count > 0) {
+            buckets.add(new AggregateBucket(currentBucket, count, (float) (sum / count), min, max));
+        }
+        return buckets;
+    }
+
+    private static void report(String name, long legacyNanos, long newNanos) {
+        System.out.println(String.format("%s: 旧方式 %.2f ms, 新方式 %.2f ms（%d 轮）",
+                name, legacyNanos / 1e6, newNanos / 1e6, ROUNDS));
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.blueteeth;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * 保留策略（Robolectric，JVM上运行真实SQLite）：行数在上限以内时不删除任何行，
+ * 即使数据是由其他进程清空或删除的；删除标记保存在数据库中，其他进程也能读到
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class DataDBHelperRetentionTest {
+    private static final int MAX_ROWS = 100;
+    private static final long SAMPLE_INTERVAL_MILLIS = 200;
+
+    private final RetentionPolicy policy = new RetentionPolicy.Builder()
+            .setLimit(RetentionPolicy.TIER_RAW, RetentionPolicy.ANY_TYPE,
+                    new RetentionPolicy.Limit(RetentionPolicy.UNLIMITED, MAX_ROWS, RetentionPolicy.UNLIMITED))
+            .build();
+
+    private Context context;
+    private DataDBHelper dbHelper;
+    private long nextMillis;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        DataDBHelper.resetInstance();
+        dbHelper = DataDBHelper.getInstance(context);
+        dbHelper.clearAllData();
+        nextMillis = System.currentTimeMillis() - 3600_000L;
+    }
+
+    @After
+    public void tearDown() {
+        DataDBHelper.resetInstance();
+    }
+
+    private long addSamples(int count) {
+        long first = nextMillis;
+        ArrayList<DataPoint> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            batch.add(new DataPoint("00:00:00", 20.9f, DataPoint.TYPE_PERCENTAGE, nextMillis));
+            nextMillis += SAMPLE_INTERVAL_MILLIS;
+        }
+        assertTrue(dbHelper.addDataPoints(batch));
+        return first;
+    }
+
+    @Test
+    public void capDeletesOnlyExcessRows() {
+        long first = addSamples(MAX_ROWS + 50);
+        assertEquals(50, dbHelper.enforceRetention(policy, nextMillis));
+        assertEquals(MAX_ROWS, dbHelper.getDataPointCountByType(DataPoint.TYPE_PERCENTAGE));
+
+        HistoryDelta delta = dbHelper.getHistoryDelta(DataPoint.NO_ID, Long.MIN_VALUE);
+        assertEquals(first + 50 * SAMPLE_INTERVAL_MILLIS, delta.added.get(0).getTimeMillis());
+        assertEquals(first + 49 * SAMPLE_INTERVAL_MILLIS + 1,
+                delta.deletedBeforeByType[DataPoint.TYPE_PERCENTAGE]);
+    }
+
+    @Test
+    public void keepsRowsUnderCapAfterClearAllData() {
+        addSamples(MAX_ROWS + 50);
+        dbHelper.enforceRetention(policy, nextMillis);
+        dbHelper.clearAllData();
+
+        addSamples(40);
+        assertEquals(0, dbHelper.enforceRetention(policy, nextMillis));
+        assertEquals(40, dbHelper.getDataPointCountByType(DataPoint.TYPE_PERCENTAGE));
+    }
+
+    @Test
+    public void keepsRowsUnderCapAfterClearByAnotherProcess() {
+        addSamples(MAX_ROWS + 50);
+        dbHelper.enforceRetention(policy, nextMillis);
+        // 模拟界面进程清空：绕过本进程的DataDBHelper直接删除
+        dbHelper.getWritableDatabase().delete(DataDBHelper.TABLE_DATA_POINTS, null, null);
+
+        addSamples(40);
+        assertEquals(0, dbHelper.enforceRetention(policy, nextMillis));
+        assertEquals(40, dbHelper.getDataPointCountByType(DataPoint.TYPE_PERCENTAGE));
+    }
+
+    @Test
+    public void deletionMarksAreVisibleToAnotherProcess() {
+        addSamples(MAX_ROWS + 50);
+        dbHelper.enforceRetention(policy, nextMillis);
+        long maxId = dbHelper.getHistoryDelta(DataPoint.NO_ID, Long.MIN_VALUE).maxId;
+        dbHelper.clearAllData();
+
+        // 重新打开数据库，相当于另一个进程中的DataDBHelper
+        DataDBHelper.resetInstance();
+        dbHelper = DataDBHelper.getInstance(context);
+        HistoryDelta delta = dbHelper.getHistoryDelta(DataPoint.NO_ID, Long.MIN_VALUE);
+        assertTrue(delta.added.isEmpty());
+        assertTrue(delta.clearedThroughId >= maxId);
+        assertTrue(delta.deletedBeforeByType[DataPoint.TYPE_PERCENTAGE] > Long.MIN_VALUE);
+        // 没有删除过的类型不影响所有类型共同的标记
+        assertEquals(Long.MIN_VALUE, delta.deletedBeforeMillis);
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.blueteeth;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.*;
+
+/**
+ * 采集抖动对比：界面负载很重（大量分配和计算）时，50Hz采集循环的每个采样比预定时刻晚多少。
+ * 单进程模式下采集线程与负载在同一个JVM中，共享GC停顿；多进程模式下采集循环在子JVM中运行，
+ * 通过文件映射的SampleRing（代替设备上的SharedMemory）把采样交给负载所在的进程。
+ *
+ * 每个采样的数值就是它的延迟（微秒），读取方据此统计p50/p99/最大值并打印；
+ * 计时结果取决于机器，只打印不断言，断言只检查环形缓冲区传递的正确性。
+ */
+public class IngestJitterBenchmarkTest {
+    private static final int SAMPLE_COUNT = 150;
+    private static final int RING_CAPACITY = 256; // 大于采样总数，正确读取时不应丢失
+    private static final int LOAD_THREADS = 2;
+
+    @Test
+    public void singleProcess() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SampleRing.bytesFor(RING_CAPACITY));
+        SampleRing ring = SampleRing.create(buffer, RING_CAPACITY);
+        Thread ingest = new Thread(() -> IngestProcess.runIngestLoop(ring, SAMPLE_COUNT), "ingest");
+
+        UiLoad load = new UiLoad();
+        load.start();
+        try {
+            ingest.start();
+            float[] lateness = readAll(ring, () -> !ingest.isAlive());
+            ingest.join();
+            report("单进程", lateness);
+        } finally {
+            load.stop();
+        }
+    }
+
+    @Test
+    public void multiProcess() throws Exception {
+        File java = new File(System.getProperty("java.home"), "bin/java");
+        Assume.assumeTrue("找不到java可执行文件", java.canExecute());
+
+        File file = File.createTempFile("sample-ring", ".bin");
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SampleRing.bytesFor(RING_CAPACITY));
+            SampleRing ring = SampleRing.create(buffer, RING_CAPACITY);
+
+            String classPath = codeSource(IngestProcess.class) + File.pathSeparator + codeSource(SampleRing.class);
+            Process child = new ProcessBuilder(java.getPath(), "-cp", classPath, IngestProcess.class.getName(),
+                    file.getPath(), Integer.toString(SAMPLE_COUNT))
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+
+            UiLoad load = new UiLoad();
+            load.start();
+            try {
+                float[] lateness = readAll(ring, () -> !child.isAlive());
+                assertTrue("采集进程未退出", child.waitFor(10, TimeUnit.SECONDS));
+                assertEquals(0, child.exitValue());
+                report("多进程", lateness);
+            } finally {
+                load.stop();
+                child.destroy();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void readerSkipsOverwrittenRecords() {
+        ByteBuffer buffer = ByteBuffer.allocate(SampleRing.bytesFor(8));
+        SampleRing ring = SampleRing.create(buffer, 8);
+        for (int i = 0; i < 20; i++) {
+            ring.append(i % 3, 1000L + i, i);
+        }
+        SampleRing.Reader reader = SampleRing.attach(buffer).newReader(0);
+        List<Float> values = new ArrayList<>();
+        int delivered = reader.poll(ring.getWriteCount(), (type, timeMillis, value) -> {
+            assertEquals((int) value % 3, type);
+            assertEquals(1000L + (long) value, timeMillis);
+            values.add(value);
+        });
+        // 落后超过一圈时只能读到最新的8条，其余计为丢失
+        assertEquals(8, delivered);
+        assertEquals(12, reader.getLostCount());
+        assertEquals(Float.valueOf(12), values.get(0));
+        assertEquals(20, reader.getPosition());
+        assertEquals(0, reader.poll(ring.getWriteCount(), (type, timeMillis, value) -> fail()));
+    }
+
+    private interface Done {
+        boolean get();
+    }
+
+    // 像界面进程那样轮询读取，直到写入方结束并读完全部记录
+    private static float[] readAll(SampleRing ring, Done writerDone) {
+        SampleRing.Reader reader = ring.newReader(0);
+        float[] lateness = new float[SAMPLE_COUNT];
+        long[] expectedTime = {0};
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (reader.getPosition() < SAMPLE_COUNT && System.nanoTime() < deadline) {
+            boolean done = writerDone.get();
+            reader.poll(ring.getWriteCount(), (type, timeMillis, value) -> {
+                assertEquals(DataPoint.TYPE_PERCENTAGE, type);
+                assertEquals("采样应按顺序到达", expectedTime[0], timeMillis);
+                assertTrue(value >= 0);
+                lateness[(int) timeMillis] = value;
+                expectedTime[0]++;
+            });
+            if (done && reader.getPosition() == ring.getWriteCount()) {
+                break;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(16)); // 约一帧
+        }
+        assertEquals(SAMPLE_COUNT, reader.getPosition());
+        assertEquals(SAMPLE_COUNT, expectedTime[0]);
+        assertEquals(0, reader.getLostCount());
+        return lateness;
+    }
+
+    private static void report(String mode, float[] lateness) {
+        float[] sorted = lateness.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%s: 采样 %d 个，延迟 p50 %.0fus，p99 %.0fus，最大 %.0fus%n", mode, sorted.length,
+                sorted[sorted.length / 2], sorted[(int) (sorted.length * 0.99)], sorted[sorted.length - 1]);
+    }
+
+    private static String codeSource(Class<?> type) throws Exception {
+        return new File(type.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+    }
+
+    /**
+     * 模拟繁忙的界面线程：不断分配短命和中等寿命的对象并做排序计算，制造GC压力
+     */
+    private static class UiLoad {
+        private final AtomicBoolean running = new AtomicBoolean();
+        private final List<Thread> threads = new ArrayList<>();
+
+        void start() {
+            running.set(true);
+            for (int t = 0; t < LOAD_THREADS; t++) {
+                Thread thread = new Thread(this::run, "ui-load-" + t);
+                thread.setDaemon(true);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+
+        void stop() throws InterruptedException {
+            running.set(false);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        private void run() {
+            Random random = new Random();
+            Object[] retained = new Object[256];
+            long checksum = 0;
+            while (running.get()) {
+                float[] points = new float[16 * 1024];
+                for (int i = 0; i < points.length; i++) {
+                    points[i] = random.nextFloat();
+                }
+                Arrays.sort(points);
+                retained[random.nextInt(retained.length)] = points;
+                checksum += (long) points[points.length / 2];
+            }
+            if (checksum == Long.MIN_VALUE) {
+                System.out.println(checksum); // 防止计算被优化掉
+            }
+        }
+    }
+
+    /**
+     * 采集循环，也是子进程入口：连接父进程创建的环形缓冲区文件并运行采集循环。
+     * 子进程的类路径上没有JUnit，这里不能引用外部类
+     */
+    public static class IngestProcess {
+        private static final long SAMPLE_INTERVAL_NANOS = 20_000_000L; // 50Hz
+
+        // 按固定节拍追加采样，数值为相对预定时刻的延迟（微秒），时间为采样序号
+        static void runIngestLoop(SampleRing ring, int count) {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                long deadline = start + i * SAMPLE_INTERVAL_NANOS;
+                long now;
+                while ((now = System.nanoTime()) < deadline) {
+                    LockSupport.parkNanos(deadline - now);
+                }
+                ring.append(DataPoint.TYPE_PERCENTAGE, i, (now - deadline) / 1000f);
+            }
+        }
+
+        public static void main(String[] args) throws IOException {
+            File file = new File(args[0]);
+            int count = Integer.parseInt(args[1]);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                 FileChannel channel = raf.getChannel()) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                runIngestLoop(SampleRing.attach(buffer), count);
+            }
+        }
+    }
+}
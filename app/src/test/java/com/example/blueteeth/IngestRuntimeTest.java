@@ -0,0 +1,148 @@
+package com.example.blueteeth;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 采集运行时单元测试：线程命名、有界队列、生命周期回调和关闭
+ */
+public class IngestRuntimeTest {
+
+    @Test
+    public void threadsAreNamedPerStage() throws Exception {
+        IngestRuntime runtime = new IngestRuntime("test", false, null);
+        ExecutorService io = runtime.register(new IngestRuntime.Stage("io", 1, 4, -4));
+
+        final String[] name = new String[1];
+        final int[] priority = new int[1];
+        io.submit(() -> {
+            name[0] = Thread.currentThread().getName();
+            priority[0] = Thread.currentThread().getPriority();
+        }).get();
+
+        assertEquals("test-io-1", name[0]);
+        assertTrue(priority[0] > Thread.NORM_PRIORITY); // nice值为负对应更高的优先级
+        runtime.shutdown();
+        assertTrue(runtime.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void fullQueueRejectsAndIsCounted() throws Exception {
+        IngestRuntime runtime = new IngestRuntime("test", false, null);
+        ExecutorService stage = runtime.register(new IngestRuntime.Stage("persist", 1, 1, 10));
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        stage.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        started.await();
+        stage.execute(() -> { }); // 占满队列
+
+        try {
+            stage.execute(() -> { });
+            fail("队列已满时应拒绝任务");
+        } catch (RejectedExecutionException expected) {
+        }
+
+        IngestRuntime.Stats stats = runtime.getStats().get(0);
+        assertEquals("persist", stats.stage);
+        assertEquals(1, stats.rejectedTasks);
+        assertEquals(1, stats.queuedTasks);
+
+        release.countDown();
+        runtime.shutdown();
+        assertTrue(runtime.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(2, runtime.getStats().get(0).completedTasks);
+    }
+
+    @Test
+    public void lifecycleIsObservableAndShutdownIsClean() throws Exception {
+        IngestRuntime runtime = new IngestRuntime("test", false, null);
+        List<String> events = new CopyOnWriteArrayList<>();
+        runtime.setListener(new IngestRuntime.Listener() {
+            @Override
+            public void onThreadStarted(IngestRuntime.Stage stage, String threadName) {
+                events.add("start " + threadName);
+            }
+
+            @Override
+            public void onThreadFinished(IngestRuntime.Stage stage, String threadName) {
+                events.add("finish " + threadName);
+            }
+        });
+        ExecutorService control = runtime.register(new IngestRuntime.Stage("control", 1, 16, 0));
+        ExecutorService persist = runtime.register(new IngestRuntime.Stage("persist", 1, 16, 10));
+
+        AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            control.execute(done::incrementAndGet);
+            persist.execute(done::incrementAndGet);
+        }
+        runtime.shutdown();
+        assertTrue(runtime.awaitTermination(5, TimeUnit.SECONDS));
+
+        // 关闭前提交的任务全部执行，关闭后提交的任务被拒绝
+        assertEquals(20, done.get());
+        try {
+            control.execute(done::incrementAndGet);
+            fail("关闭后应拒绝任务");
+        } catch (RejectedExecutionException expected) {
+        }
+
+        assertTrue(events.contains("start test-control-1"));
+        assertTrue(events.contains("finish test-control-1"));
+        assertTrue(events.contains("finish test-persist-1"));
+        for (IngestRuntime.Stats stats : runtime.getStats()) {
+            assertEquals(0, stats.liveThreads);
+        }
+    }
+
+    @Test
+    public void virtualThreadsWhenAvailable() throws Exception {
+        IngestRuntime runtime = new IngestRuntime("vt", true, null);
+        ExecutorService io = runtime.register(new IngestRuntime.Stage("io", 4, 64, -4));
+
+        AtomicInteger virtualCount = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(32);
+        for (int i = 0; i < 32; i++) {
+            io.execute(() -> {
+                if (isVirtual(Thread.currentThread())) {
+                    virtualCount.incrementAndGet();
+                }
+                latch.countDown();
+            });
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        // JDK 21以下没有虚拟线程，运行时自动退回平台线程
+        if (runtime.isUsingVirtualThreads()) {
+            assertEquals(32, virtualCount.get());
+        } else {
+            assertEquals(0, virtualCount.get());
+        }
+        runtime.shutdown();
+        assertTrue(runtime.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
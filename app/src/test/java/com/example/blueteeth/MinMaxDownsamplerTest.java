@@ -0,0 +1,87 @@
+package com.example.blueteeth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MinMaxDownsamplerTest {
+
+    @Test
+    public void keepsExtremesWhenDownsampling() {
+        // 100Hz采样100秒，其中各有一个尖峰和低谷
+        ChannelWindow window = new ChannelWindow(Long.MAX_VALUE / 2, 20_000);
+        for (int i = 0; i < 10_000; i++) {
+            float value = i == 5000 ? 25f : i == 7000 ? 15f : 20.9f;
+            window.add(i * 10L, value);
+        }
+        MinMaxDownsampler downsampler = new MinMaxDownsampler(100);
+        window.newView().read(downsampler);
+
+        assertTrue(downsampler.size() <= 200);
+        assertEquals(15f, downsampler.getMinValue(), 0f);
+        assertEquals(25f, downsampler.getMaxValue(), 0f);
+        assertEquals(1, downsampler.getSegmentCount());
+
+        boolean spike = false;
+        boolean dip = false;
+        for (int i = 0; i < downsampler.size(); i++) {
+            if (i > 0) {
+                assertTrue(downsampler.timeAt(i) > downsampler.timeAt(i - 1));
+            }
+            if (downsampler.valueAt(i) == 25f) {
+                spike = true;
+                assertEquals(50_000, downsampler.timeAt(i));
+            }
+            if (downsampler.valueAt(i) == 15f) {
+                dip = true;
+                assertEquals(70_000, downsampler.timeAt(i));
+            }
+        }
+        assertTrue("尖峰被保留", spike);
+        assertTrue("低谷被保留", dip);
+    }
+
+    @Test
+    public void splitsSegmentsAtGaps() {
+        ChannelWindow window = new ChannelWindow(Long.MAX_VALUE / 2, 20_000);
+        for (int i = 0; i < 3000; i++) {
+            window.add(i * 10L, 20f);
+        }
+        // 断连一分钟后继续采样
+        for (int i = 0; i < 3000; i++) {
+            window.add(90_000 + i * 10L, 21f);
+        }
+        MinMaxDownsampler downsampler = new MinMaxDownsampler(50);
+        window.newView().read(downsampler);
+
+        assertEquals(2, downsampler.getSegmentCount());
+        assertEquals(0, downsampler.segmentStart(0));
+        assertEquals(downsampler.segmentEnd(0), downsampler.segmentStart(1));
+        assertEquals(downsampler.size(), downsampler.segmentEnd(1));
+        for (int i = downsampler.segmentStart(0); i < downsampler.segmentEnd(0); i++) {
+            assertTrue(downsampler.timeAt(i) < 30_000);
+        }
+        for (int i = downsampler.segmentStart(1); i < downsampler.segmentEnd(1); i++) {
+            assertTrue(downsampler.timeAt(i) >= 90_000);
+        }
+    }
+
+    @Test
+    public void smallWindowPassesThrough() {
+        ChannelWindow window = new ChannelWindow(Long.MAX_VALUE / 2, 100);
+        for (int i = 0; i < 10; i++) {
+            window.add(i * 1000L, i);
+        }
+        MinMaxDownsampler downsampler = new MinMaxDownsampler(50);
+        window.newView().read(downsampler);
+        assertEquals(10, downsampler.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i * 1000L, downsampler.timeAt(i));
+            assertEquals(i, downsampler.valueAt(i), 0f);
+        }
+
+        window.clear();
+        window.newView().read(downsampler);
+        assertTrue(downsampler.isEmpty());
+    }
+}
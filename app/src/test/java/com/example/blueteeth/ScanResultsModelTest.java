@@ -0,0 +1,81 @@
+package com.example.blueteeth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScanResultsModelTest {
+
+    // 设备对象传null，模型只按调用方传入的地址去重和排序
+    private static boolean update(ScanResultsModel model, String address, String name, int rssi, long now) {
+        return model.update(null, address, name, rssi, now);
+    }
+
+    @Test
+    public void keepsEntriesSortedByRssi() {
+        ScanResultsModel model = new ScanResultsModel();
+        assertTrue(update(model, "A", "a", -70, 1));
+        assertTrue(update(model, "B", "b", -40, 2));
+        assertTrue(update(model, "C", "c", -90, 3));
+        // 相同强度时新加入的排在后面
+        assertTrue(update(model, "D", "d", -40, 4));
+        // 未知强度排在最后
+        assertTrue(update(model, "E", "e", ScanResultsModel.RSSI_UNKNOWN, 5));
+
+        assertEquals(5, model.size());
+        String[] expected = {"B", "D", "A", "C", "E"};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], model.get(i).address);
+        }
+    }
+
+    @Test
+    public void deduplicatesByAddress() {
+        ScanResultsModel model = new ScanResultsModel();
+        update(model, "A", "a", -70, 1);
+        update(model, "B", "b", -60, 2);
+
+        // 同一设备再次发现：信号强度和名称不变时列表不变，只更新发现时间
+        assertFalse(update(model, "A", "a", -70, 10));
+        assertEquals(2, model.size());
+        assertEquals(10, model.get(1).getLastSeenMillis());
+        assertTrue(model.contains("A"));
+        assertFalse(model.contains("C"));
+    }
+
+    @Test
+    public void rssiChangeMovesEntry() {
+        ScanResultsModel model = new ScanResultsModel();
+        update(model, "A", "a", -50, 1);
+        update(model, "B", "b", -50, 2);
+        update(model, "C", "c", -50, 3);
+
+        assertTrue(update(model, "C", null, -30, 4));
+        assertEquals("C", model.get(0).address);
+        assertEquals(-30, model.get(0).getRssi());
+        // 名称为null时保留之前的名称
+        assertEquals("c", model.get(0).getName());
+
+        assertTrue(update(model, "C", null, -80, 5));
+        assertEquals("A", model.get(0).address);
+        assertEquals("B", model.get(1).address);
+        assertEquals("C", model.get(2).address);
+    }
+
+    @Test
+    public void unknownRssiKeepsPositionAndNameUpdates() {
+        ScanResultsModel model = new ScanResultsModel();
+        update(model, "A", null, -50, 1);
+        update(model, "B", "b", -60, 2);
+
+        // 已配对设备未扫描到时强度未知，不改变位置；新名称仍然生效
+        assertTrue(update(model, "A", "a", ScanResultsModel.RSSI_UNKNOWN, 3));
+        assertEquals("A", model.get(0).address);
+        assertEquals(-50, model.get(0).getRssi());
+        assertEquals("a", model.get(0).getName());
+
+        model.clear();
+        assertEquals(0, model.size());
+        assertFalse(model.contains("A"));
+    }
+}
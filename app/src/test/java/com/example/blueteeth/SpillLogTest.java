@@ -0,0 +1,115 @@
+package com.example.blueteeth;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SpillLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recoversPendingRecordsAfterWraparound() throws IOException {
+        File path = folder.newFile("spill.log");
+        SpillLog log = new SpillLog(path, 4);
+        for (int i = 1; i <= 3; i++) {
+            log.append(i * 100L, DataPoint.TYPE_PERCENTAGE, 7, i);
+        }
+        log.markDrained(2, 2);
+        // 后三条写入槽位3、0、1，越过文件末尾回到开头
+        for (int i = 4; i <= 6; i++) {
+            assertEquals(i, log.append(i * 100L, DataPoint.TYPE_PERCENTAGE, 7, i));
+        }
+        assertEquals(4, log.getPendingCount());
+        // 模拟进程被杀：不再落库，直接重新打开同一个文件
+        log.close();
+
+        SpillLog reopened = new SpillLog(path, 4);
+        assertEquals(2, reopened.getDrainedSeq());
+        assertEquals(4, reopened.getPendingCount());
+        List<SpillLog.Record> records = reopened.peekPending(10);
+        assertEquals(4, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            SpillLog.Record record = records.get(i);
+            assertEquals(i + 3, record.seq);
+            assertEquals((i + 3) * 100L, record.timeMillis);
+            assertEquals(DataPoint.TYPE_PERCENTAGE, record.type);
+            assertEquals(7, record.deviceId);
+            assertEquals(i + 3, record.value, 0f);
+        }
+
+        // 序号从恢复出的最大序号继续
+        reopened.markDrained(records.get(0).seq, 1);
+        assertEquals(7, reopened.append(700, DataPoint.TYPE_PERCENTAGE, 7, 7));
+        reopened.close();
+    }
+
+    @Test
+    public void replaysRecordsNotMarkedDrained() throws IOException {
+        File path = folder.newFile("spill.log");
+        SpillLog log = new SpillLog(path, 8);
+        for (int i = 1; i <= 5; i++) {
+            log.append(i, DataPoint.TYPE_PERCENTAGE, 0, i);
+        }
+        // 读出但写入数据库前进程退出：重启后全部重新回放（至少一次）
+        assertEquals(5, log.peekPending(5).size());
+        log.close();
+
+        log = new SpillLog(path, 8);
+        List<SpillLog.Record> records = log.peekPending(5);
+        assertEquals(5, records.size());
+        assertEquals(1, records.get(0).seq);
+
+        // 前三条已落库，只回放剩下的两条
+        log.markDrained(records.get(2).seq, 3);
+        log.close();
+
+        log = new SpillLog(path, 8);
+        assertEquals(3, log.getDrainedSeq());
+        records = log.peekPending(10);
+        assertEquals(2, records.size());
+        assertEquals(4, records.get(0).seq);
+        assertEquals(5, records.get(1).seq);
+        log.close();
+    }
+
+    @Test
+    public void markDrainedReleasesSlots() throws IOException {
+        SpillLog log = new SpillLog(folder.newFile("spill.log"), 8);
+        for (int i = 1; i <= 6; i++) {
+            log.append(i, DataPoint.TYPE_PERCENTAGE, 0, i);
+        }
+        log.markDrained(4, 4);
+        assertEquals(2, log.getPendingCount());
+        assertEquals(4, log.getDrainedSeq());
+        assertEquals(5, log.peekPending(10).get(0).seq);
+
+        log.markDrained(6, 2);
+        assertEquals(0, log.getPendingCount());
+        assertTrue(log.peekPending(10).isEmpty());
+        log.close();
+    }
+
+    @Test
+    public void fullLogRejectsAppend() throws IOException {
+        SpillLog log = new SpillLog(folder.newFile("spill.log"), 3);
+        for (int i = 1; i <= 3; i++) {
+            assertEquals(i, log.append(i, DataPoint.TYPE_PERCENTAGE, 0, i));
+        }
+        // 日志已满时返回-1，调用方改为直接写数据库；被拒绝的记录不占用序号
+        assertEquals(-1, log.append(4, DataPoint.TYPE_PERCENTAGE, 0, 4));
+        assertEquals(3, log.getPendingCount());
+
+        log.markDrained(1, 1);
+        assertEquals(4, log.append(4, DataPoint.TYPE_PERCENTAGE, 0, 4));
+        assertEquals(-1, log.append(5, DataPoint.TYPE_PERCENTAGE, 0, 5));
+        log.close();
+    }
+}
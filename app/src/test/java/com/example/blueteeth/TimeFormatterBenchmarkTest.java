@@ -0,0 +1,156 @@
+package com.example.blueteeth;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 时间格式化测试：结果与SimpleDateFormat一致、多线程共用安全，
+ * 以及按50Hz采样流对比旧方式（每个采样new SimpleDateFormat + new Date）的分配量。
+ * 分配量依赖HotSpot的线程分配计数，不支持时跳过该项。
+ */
+public class TimeFormatterBenchmarkTest {
+    private static final String[] ZONES = {"UTC", "Asia/Shanghai", "America/New_York", "Asia/Kolkata", "Pacific/Chatham"};
+    private static final long SAMPLE_INTERVAL_MILLIS = 20; // 50Hz
+    private static final int SAMPLE_COUNT = 100_000;
+
+    @Test
+    public void matchesSimpleDateFormat() {
+        Random random = new Random(41);
+        for (String zoneId : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(zoneId);
+            TimeFormatter formatter = new TimeFormatter(zone);
+            SimpleDateFormat time = legacyFormat("HH:mm:ss", zone);
+            SimpleDateFormat dateTime = legacyFormat("yyyy-MM-dd HH:mm:ss", zone);
+            for (int i = 0; i < 20000; i++) {
+                // 1970年到2100年之间，包括夏令时切换前后
+                long millis = (long) (random.nextDouble() * 4_102_444_800_000L);
+                assertEquals(zoneId, time.format(new Date(millis)), formatter.formatTime(millis));
+                assertEquals(zoneId, dateTime.format(new Date(millis)), formatter.formatDateTime(millis));
+            }
+        }
+    }
+
+    @Test
+    public void dstTransitionAndDayBoundaries() {
+        TimeZone zone = TimeZone.getTimeZone("America/New_York");
+        TimeFormatter formatter = new TimeFormatter(zone);
+        SimpleDateFormat dateTime = legacyFormat("yyyy-MM-dd HH:mm:ss", zone);
+        // 2024-03-10 夏令时开始前后两小时，逐秒比较
+        long start = 1710050400_000L;
+        for (long millis = start; millis < start + 4 * 3600_000L; millis += 999) {
+            assertEquals(dateTime.format(new Date(millis)), formatter.formatDateTime(millis));
+        }
+        // 闰日和年末
+        TimeFormatter utc = new TimeFormatter(TimeZone.getTimeZone("UTC"));
+        assertEquals("2024-02-29 23:59:59", utc.formatDateTime(1709251199_000L));
+        assertEquals("2024-03-01 00:00:00", utc.formatDateTime(1709251200_000L));
+        assertEquals("1999-12-31 23:59:59", utc.formatDateTime(946684799_999L));
+        assertEquals("2000-01-01 00:00:00", utc.formatDateTime(946684800_000L));
+        assertEquals("1969-12-31 23:59:59", utc.formatDateTime(-1));
+    }
+
+    @Test
+    public void sameSecondSharesString() {
+        TimeFormatter formatter = new TimeFormatter(TimeZone.getTimeZone("UTC"));
+        String first = formatter.formatTime(1_000_000_000_000L);
+        assertSame(first, formatter.formatTime(1_000_000_000_999L));
+        assertNotSame(first, formatter.formatTime(1_000_000_001_000L));
+        assertEquals("01:46:41", formatter.formatTime(1_000_000_001_000L));
+    }
+
+    @Test
+    public void concurrentUseIsSafe() throws InterruptedException {
+        TimeZone zone = TimeZone.getTimeZone("Asia/Shanghai");
+        TimeFormatter formatter = new TimeFormatter(zone);
+        AtomicInteger mismatches = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final long base = 1_700_000_000_000L + t * 86_400_000L * 37;
+            threads.add(new Thread(() -> {
+                SimpleDateFormat expected = legacyFormat("yyyy-MM-dd HH:mm:ss", zone);
+                // 各线程交替格式化不同的秒，缓存不断被其他线程替换
+                for (int i = 0; i < 50_000; i++) {
+                    long millis = base + i * 333L;
+                    if (!expected.format(new Date(millis)).equals(formatter.formatDateTime(millis))) {
+                        mismatches.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, mismatches.get());
+    }
+
+    @Test
+    public void allocationPerSample() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        long start = 1_700_000_000_000L;
+
+        // 预热，避免把类加载和JIT的分配计入
+        legacyStream(start, SAMPLE_COUNT / 10);
+        currentStream(new TimeFormatter(TimeZone.getDefault()), start, SAMPLE_COUNT / 10);
+
+        long b0 = allocationBean.getThreadAllocatedBytes(threadId);
+        int legacyChecksum = legacyStream(start, SAMPLE_COUNT);
+        long b1 = allocationBean.getThreadAllocatedBytes(threadId);
+        int currentChecksum = currentStream(new TimeFormatter(TimeZone.getDefault()), start, SAMPLE_COUNT);
+        long b2 = allocationBean.getThreadAllocatedBytes(threadId);
+
+        assertEquals(legacyChecksum, currentChecksum);
+        double legacyPerSample = (b1 - b0) / (double) SAMPLE_COUNT;
+        double currentPerSample = (b2 - b1) / (double) SAMPLE_COUNT;
+        System.out.println(String.format("每采样分配: 旧方式 %.1f 字节, 新方式 %.1f 字节（%d 个采样，50Hz）",
+                legacyPerSample, currentPerSample, SAMPLE_COUNT));
+        // 50Hz下每秒只格式化一次，分配量应小于旧方式的百分之一
+        assertTrue(currentPerSample * 100 < legacyPerSample);
+    }
+
+    // 旧方式：每个采样新建SimpleDateFormat和Date
+    private static int legacyStream(long start, int count) {
+        int checksum = 0;
+        for (int i = 0; i < count; i++) {
+            long millis = start + i * SAMPLE_INTERVAL_MILLIS;
+            String text = new SimpleDateFormat("HH:mm:ss", Locale.getDefault()).format(new Date(millis));
+            checksum += text.charAt(7);
+        }
+        return checksum;
+    }
+
+    private static int currentStream(TimeFormatter formatter, long start, int count) {
+        int checksum = 0;
+        for (int i = 0; i < count; i++) {
+            long millis = start + i * SAMPLE_INTERVAL_MILLIS;
+            checksum += formatter.formatTime(millis).charAt(7);
+        }
+        return checksum;
+    }
+
+    private static SimpleDateFormat legacyFormat(String pattern, TimeZone zone) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+        format.setTimeZone(zone);
+        return format;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.blueteeth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VisibilityBudgetTest {
+
+    @Test
+    public void uiVisibleOnlyWithSubscriberAndScreenOn() {
+        VisibilityBudget budget = new VisibilityBudget(0);
+        assertFalse(budget.isUiVisible());
+
+        budget.addVisible();
+        assertTrue(budget.isUiVisible());
+        assertFalse(budget.isBatchMode());
+
+        budget.setScreenOn(false, 1000);
+        assertFalse(budget.isUiVisible());
+        assertTrue(budget.isBatchMode());
+
+        budget.setScreenOn(true, 2000);
+        assertTrue(budget.isUiVisible());
+
+        budget.removeVisible();
+        budget.removeVisible(); // 多余的取消订阅不会使计数变为负数
+        assertFalse(budget.isUiVisible());
+        budget.addVisible();
+        assertTrue(budget.isUiVisible());
+    }
+
+    @Test
+    public void screenChangeEndsWakeupPeriod() {
+        VisibilityBudget budget = new VisibilityBudget(0);
+        for (int i = 0; i < 120; i++) {
+            budget.countWakeup(VisibilityBudget.WAKEUP_UI_FRAME);
+        }
+        budget.countWakeup(VisibilityBudget.WAKEUP_DB_FLUSH);
+
+        VisibilityBudget.Stats screenOn = budget.setScreenOn(false, 60_000);
+        assertNotNull(screenOn);
+        assertTrue(screenOn.screenOn);
+        assertEquals(60_000, screenOn.durationMillis);
+        assertEquals(120, screenOn.getCount(VisibilityBudget.WAKEUP_UI_FRAME));
+        assertEquals(121, screenOn.getTotal());
+        assertEquals(120.0, screenOn.perMinute(VisibilityBudget.WAKEUP_UI_FRAME), 1e-9);
+
+        // 状态没有变化时周期继续
+        assertNull(budget.setScreenOn(false, 90_000));
+        budget.countWakeup(VisibilityBudget.WAKEUP_DB_FLUSH);
+
+        VisibilityBudget.Stats screenOff = budget.setScreenOn(true, 180_000);
+        assertFalse(screenOff.screenOn);
+        assertEquals(120_000, screenOff.durationMillis);
+        assertEquals(0, screenOff.getCount(VisibilityBudget.WAKEUP_UI_FRAME));
+        assertEquals(1, screenOff.getCount(VisibilityBudget.WAKEUP_DB_FLUSH));
+        assertEquals(0.5, screenOff.perMinute(VisibilityBudget.WAKEUP_DB_FLUSH), 1e-9);
+
+        assertEquals(0, budget.peek(200_000).getTotal());
+    }
+}